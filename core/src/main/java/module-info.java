@@ -4,6 +4,7 @@
  */
 module cobra.core {
     requires java.desktop;
+    requires java.net.http;
     requires java.xml;
     requires jdk.xml.dom;
 
@@ -1,7 +1,5 @@
 package org.cobraparser.html.domimpl;
 
-import java.util.ArrayList;
-
 import org.cobraparser.js.HideFromJS;
 import org.cobraparser.util.NotImplementedYetException;
 import org.w3c.dom.DOMException;
@@ -46,9 +44,9 @@ public class AnonymousNodeImpl extends NodeImpl {
   @HideFromJS
   public void appendChildSilently(NodeImpl c) {
     synchronized (this.treeLock) {
-      ArrayList<Node> nl = this.nodeList;
+      ChildList nl = this.nodeList;
       if (nl == null) {
-        nl = new ArrayList<>(3);
+        nl = new ChildList(3);
         this.nodeList = nl;
       }
       nl.add(c);
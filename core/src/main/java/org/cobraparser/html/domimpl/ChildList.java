@@ -0,0 +1,155 @@
+package org.cobraparser.html.domimpl;
+
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The list of children of a node. It is only modified with the tree lock held,
+ * like a plain <code>ArrayList</code>, but it also keeps an immutable array
+ * copy of its contents, so that readers can get at the children without taking
+ * the tree lock.
+ * <p>
+ * A modification only drops the copy, so that appending children one at a
+ * time, as the parser does, doesn't copy the list each time. The copy is made
+ * again by the next reader. Modifications and that copy synchronize on the
+ * list itself, never on the tree lock, so readers don't wait for the tree
+ * lock, not even while a thread holding it waits for them.
+ */
+final class ChildList extends ArrayList<Node> {
+  private static final long serialVersionUID = 1L;
+  private static final Node[] EMPTY_ARRAY = new Node[0];
+
+  private transient volatile Node[] snapshot = EMPTY_ARRAY;
+
+  ChildList() {
+    super();
+  }
+
+  ChildList(final int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  /**
+   * Gets the children as an array that must not be modified. The array doesn't
+   * reflect later changes to the list. It never takes the tree lock.
+   */
+  Node[] snapshot() {
+    final Node[] snapshot = this.snapshot;
+    return snapshot != null ? snapshot : this.copy();
+  }
+
+  private synchronized Node[] copy() {
+    Node[] snapshot = this.snapshot;
+    if (snapshot == null) {
+      snapshot = this.isEmpty() ? EMPTY_ARRAY : this.toArray(EMPTY_ARRAY);
+      this.snapshot = snapshot;
+    }
+    return snapshot;
+  }
+
+  /**
+   * Drops the copy of the contents. Called by every modifying method, with the
+   * tree lock and the lock of the list held.
+   */
+  private void invalidate() {
+    this.snapshot = null;
+  }
+
+  @Override
+  public synchronized boolean add(final Node e) {
+    final boolean changed = super.add(e);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized void add(final int index, final Node element) {
+    super.add(index, element);
+    this.invalidate();
+  }
+
+  @Override
+  public synchronized boolean addAll(final Collection<? extends Node> c) {
+    final boolean changed = super.addAll(c);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean addAll(final int index, final Collection<? extends Node> c) {
+    final boolean changed = super.addAll(index, c);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized Node set(final int index, final Node element) {
+    final Node old = super.set(index, element);
+    this.invalidate();
+    return old;
+  }
+
+  @Override
+  public synchronized Node remove(final int index) {
+    final Node old = super.remove(index);
+    this.invalidate();
+    return old;
+  }
+
+  @Override
+  public synchronized boolean remove(final Object o) {
+    final boolean changed = super.remove(o);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean removeAll(final Collection<?> c) {
+    final boolean changed = super.removeAll(c);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean retainAll(final Collection<?> c) {
+    final boolean changed = super.retainAll(c);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  public synchronized boolean removeIf(final Predicate<? super Node> filter) {
+    final boolean changed = super.removeIf(filter);
+    this.invalidate();
+    return changed;
+  }
+
+  @Override
+  protected synchronized void removeRange(final int fromIndex, final int toIndex) {
+    super.removeRange(fromIndex, toIndex);
+    this.invalidate();
+  }
+
+  @Override
+  public synchronized void replaceAll(final UnaryOperator<Node> operator) {
+    super.replaceAll(operator);
+    this.invalidate();
+  }
+
+  @Override
+  public synchronized void sort(final Comparator<? super Node> c) {
+    super.sort(c);
+    this.invalidate();
+  }
+
+  @Override
+  public synchronized void clear() {
+    super.clear();
+    this.invalidate();
+  }
+}
@@ -0,0 +1,559 @@
+package org.cobraparser.html.domimpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CombinedSelector;
+import cz.vutbr.web.css.RuleSet;
+import cz.vutbr.web.css.Selector;
+import cz.vutbr.web.css.Selector.Combinator;
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * A selector prepared for repeated matching against the DOM. It backs
+ * <code>querySelector()</code>, <code>querySelectorAll()</code>,
+ * <code>getElementsByClassName()</code> and
+ * <code>getElementsByTagName()</code>.
+ * <p>
+ * Selector queries are parsed once and kept in a bounded cache keyed by the
+ * query string. Compound selectors are matched right to left, starting from the
+ * candidate element and walking up to its ancestors or back to its siblings
+ * according to the combinators. While the subtree is walked, the tags, ids and
+ * classes of the current ancestors are kept in a counting bloom filter, so that
+ * candidates whose ancestors cannot possibly match are rejected without walking
+ * up the tree. Queries on a document start from the candidates in its
+ * {@link ElementIndex} instead, when the subject of the selector has an id,
+ * class or tag name.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+abstract class CompiledSelector {
+  private static final int CACHE_SIZE = 256;
+
+  private static final Map<String, CompiledSelector> queryCache = new LinkedHashMap<String, CompiledSelector>(CACHE_SIZE, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, CompiledSelector> eldest) {
+      return this.size() > CACHE_SIZE;
+    }
+  };
+
+  /**
+   * Gets the compiled form of a selector query, parsing it only if it is not
+   * in the cache already.
+   *
+   * @throws DOMException
+   *           with code <code>SYNTAX_ERR</code> if the query can't be parsed.
+   */
+  static CompiledSelector forQuery(final String query) throws DOMException {
+    synchronized (queryCache) {
+      final CompiledSelector cached = queryCache.get(query);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    final CompiledSelector compiled = compile(query);
+    synchronized (queryCache) {
+      queryCache.put(query, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Gets a selector matching elements with the given tag name, ignoring case.
+   * An asterisk matches all elements.
+   */
+  static CompiledSelector forTagName(final String name) {
+    return "*".equals(name) ? AnyElement.INSTANCE : new TagName(name);
+  }
+
+  /**
+   * Gets a selector matching elements that have all of the given
+   * space-separated classes.
+   */
+  static CompiledSelector forClassNames(final String classNames) {
+    final String[] names = classNames.trim().split("\\s+");
+    return new ClassNames(names.length == 1 && names[0].length() == 0 ? new String[0] : names);
+  }
+
+  private static CompiledSelector compile(final String query) throws DOMException {
+    final CombinedSelector[] selectors;
+    try {
+      // this is quick way to parse the selectors. TODO: check if jStyleParser supports a better option.
+      final StyleSheet styleSheet = CSSFactory.parseString(query + " { display: none}", null);
+      if (styleSheet.isEmpty() || !(styleSheet.get(0) instanceof RuleSet)) {
+        throw new DOMException(DOMException.SYNTAX_ERR, "Couldn't parse selector: " + query);
+      }
+      selectors = ((RuleSet) styleSheet.get(0)).getSelectors();
+    } catch (final IOException | CSSException e) {
+      throw new DOMException(DOMException.SYNTAX_ERR, "Couldn't parse selector: " + query);
+    }
+    if (selectors.length == 1) {
+      return new Compound(selectors[0]);
+    }
+    final Compound[] compounds = new Compound[selectors.length];
+    for (int i = 0; i < selectors.length; i++) {
+      compounds[i] = new Compound(selectors[i]);
+    }
+    return new Group(compounds);
+  }
+
+  /**
+   * Checks whether the element matches.
+   *
+   * @param ancestors
+   *          The ancestors of the element, or <code>null</code> if they have
+   *          not been tracked.
+   */
+  abstract boolean matches(ElementImpl element, AncestorFilter ancestors);
+
+  /**
+   * Whether {@link #matches(ElementImpl, AncestorFilter)} makes use of an
+   * ancestor filter.
+   */
+  boolean usesAncestors() {
+    return false;
+  }
+
+  /**
+   * Gets the first matching descendant of <code>root</code> in document order,
+   * or <code>null</code>.
+   */
+  final Element findFirst(final NodeImpl root) {
+    final ArrayList<Node> matches = new ArrayList<>(1);
+    this.collect(root, matches, true);
+    return matches.isEmpty() ? null : (Element) matches.get(0);
+  }
+
+  /**
+   * Gets all matching descendants of <code>root</code> in document order.
+   */
+  final NodeListImpl findAll(final NodeImpl root) {
+    final ArrayList<Node> matches = new ArrayList<>();
+    this.collect(root, matches, false);
+    return new NodeListImpl(matches);
+  }
+
+  /**
+   * Gets the elements of a document that may match, in document order, or
+   * <code>null</code> if the element index of the document can't narrow them
+   * down.
+   */
+  List<ElementImpl> getCandidates(final ElementIndex index) {
+    return null;
+  }
+
+  private void collect(final NodeImpl root, final ArrayList<Node> matches, final boolean firstOnly) {
+    if (root instanceof HTMLDocumentImpl) {
+      final List<ElementImpl> candidates = this.getCandidates(((HTMLDocumentImpl) root).getElementIndex());
+      if (candidates != null) {
+        synchronized (root.treeLock) {
+          for (final ElementImpl candidate : candidates) {
+            if (this.matches(candidate, null)) {
+              matches.add(candidate);
+              if (firstOnly) {
+                return;
+              }
+            }
+          }
+        }
+        return;
+      }
+    }
+    final AncestorFilter ancestors;
+    if (this.usesAncestors()) {
+      ancestors = new AncestorFilter();
+      for (Node n = root; n instanceof ElementImpl; n = n.getParentNode()) {
+        ancestors.push((ElementImpl) n);
+      }
+    } else {
+      ancestors = null;
+    }
+    synchronized (root.treeLock) {
+      this.collect(root, ancestors, matches, firstOnly);
+    }
+  }
+
+  /**
+   * @return Whether the search is done.
+   */
+  private boolean collect(final NodeImpl parent, final AncestorFilter ancestors, final ArrayList<Node> matches, final boolean firstOnly) {
+    final ArrayList<Node> nl = parent.nodeList;
+    if (nl == null) {
+      return false;
+    }
+    final int size = nl.size();
+    for (int i = 0; i < size; i++) {
+      final Node child = nl.get(i);
+      if (child instanceof ElementImpl) {
+        final ElementImpl element = (ElementImpl) child;
+        if (this.matches(element, ancestors)) {
+          matches.add(element);
+          if (firstOnly) {
+            return true;
+          }
+        }
+        final ArrayList<Node> grandChildren = element.nodeList;
+        if ((grandChildren != null) && !grandChildren.isEmpty()) {
+          if (ancestors != null) {
+            ancestors.push(element);
+          }
+          final boolean done = this.collect(element, ancestors, matches, firstOnly);
+          if (ancestors != null) {
+            ancestors.pop();
+          }
+          if (done) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Element getParentElement(final Element element) {
+    final Node parent = element.getParentNode();
+    return parent instanceof Element ? (Element) parent : null;
+  }
+
+  private static Element getPreviousElementSibling(final Element element) {
+    for (Node n = element.getPreviousSibling(); n != null; n = n.getPreviousSibling()) {
+      if (n instanceof Element) {
+        return (Element) n;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A compound selector such as <code>div.a &gt; p span</code>.
+   */
+  private static final class Compound extends CompiledSelector {
+    private final Selector[] parts;
+
+    /** The combinator that relates part <code>i - 1</code> to part <code>i</code>. */
+    private final Combinator[] combinators;
+
+    /** Keys that must all be present among the ancestors of a match. */
+    private final int[] ancestorKeys;
+
+    Compound(final CombinedSelector selector) {
+      final int size = selector.size();
+      this.parts = selector.toArray(new Selector[size]);
+      this.combinators = new Combinator[size];
+      for (int i = 1; i < size; i++) {
+        final Combinator combinator = this.parts[i].getCombinator();
+        this.combinators[i] = combinator == null ? Combinator.DESCENDANT : combinator;
+      }
+      // Part i - 1 is an ancestor of a match only if it is related to part i as
+      // an ancestor; a part left of a sibling combinator matches a sibling of
+      // an ancestor, which may be outside of the ancestor chain.
+      final ArrayList<String> keys = new ArrayList<>();
+      for (int i = size - 1; i > 0; i--) {
+        if ((this.combinators[i] == Combinator.DESCENDANT) || (this.combinators[i] == Combinator.CHILD)) {
+          final Selector part = this.parts[i - 1];
+          final String elementName = part.getElementName();
+          if ((elementName != null) && !"*".equals(elementName)) {
+            keys.add(AncestorFilter.tagKey(elementName));
+          }
+          final String id = part.getIDName();
+          if (id != null) {
+            keys.add(AncestorFilter.idKey(id));
+          }
+          final String className = part.getClassName();
+          if (className != null) {
+            keys.add(AncestorFilter.classKey(className));
+          }
+        }
+      }
+      this.ancestorKeys = new int[keys.size()];
+      for (int i = 0; i < this.ancestorKeys.length; i++) {
+        this.ancestorKeys[i] = AncestorFilter.hash(keys.get(i));
+      }
+    }
+
+    @Override
+    boolean usesAncestors() {
+      return this.ancestorKeys.length > 0;
+    }
+
+    @Override
+    List<ElementImpl> getCandidates(final ElementIndex index) {
+      final Selector subject = this.parts[this.parts.length - 1];
+      final String id = subject.getIDName();
+      if (id != null) {
+        return index.getElementsById(id);
+      }
+      final String className = subject.getClassName();
+      if (className != null) {
+        return index.getElementsByClassName(className);
+      }
+      final String elementName = subject.getElementName();
+      if ((elementName != null) && !"*".equals(elementName)) {
+        return index.getElementsByTagName(elementName.toLowerCase());
+      }
+      return null;
+    }
+
+    @Override
+    boolean matches(final ElementImpl element, final AncestorFilter ancestors) {
+      final int last = this.parts.length - 1;
+      if (!this.parts[last].matches(element)) {
+        return false;
+      }
+      if (last == 0) {
+        return true;
+      }
+      if ((ancestors != null) && !ancestors.mightContainAll(this.ancestorKeys)) {
+        return false;
+      }
+      return this.matchesLeftOf(last, element);
+    }
+
+    /**
+     * Checks the parts to the left of <code>index</code>, given that
+     * <code>element</code> matches part <code>index</code>.
+     */
+    private boolean matchesLeftOf(final int index, final Element element) {
+      final Selector part = this.parts[index - 1];
+      switch (this.combinators[index]) {
+      case CHILD: {
+        final Element parent = getParentElement(element);
+        return (parent != null) && part.matches(parent) && ((index == 1) || this.matchesLeftOf(index - 1, parent));
+      }
+      case ADJACENT: {
+        final Element sibling = getPreviousElementSibling(element);
+        return (sibling != null) && part.matches(sibling) && ((index == 1) || this.matchesLeftOf(index - 1, sibling));
+      }
+      case PRECEDING:
+        for (Element sibling = getPreviousElementSibling(element); sibling != null; sibling = getPreviousElementSibling(sibling)) {
+          if (part.matches(sibling) && ((index == 1) || this.matchesLeftOf(index - 1, sibling))) {
+            return true;
+          }
+        }
+        return false;
+      default:
+        for (Element ancestor = getParentElement(element); ancestor != null; ancestor = getParentElement(ancestor)) {
+          if (part.matches(ancestor) && ((index == 1) || this.matchesLeftOf(index - 1, ancestor))) {
+            return true;
+          }
+        }
+        return false;
+      }
+    }
+  }
+
+  /**
+   * A comma-separated group of compound selectors.
+   */
+  private static final class Group extends CompiledSelector {
+    private final Compound[] compounds;
+    private final boolean usesAncestors;
+
+    Group(final Compound[] compounds) {
+      this.compounds = compounds;
+      boolean usesAncestors = false;
+      for (final Compound compound : compounds) {
+        usesAncestors |= compound.usesAncestors();
+      }
+      this.usesAncestors = usesAncestors;
+    }
+
+    @Override
+    boolean usesAncestors() {
+      return this.usesAncestors;
+    }
+
+    @Override
+    boolean matches(final ElementImpl element, final AncestorFilter ancestors) {
+      for (final Compound compound : this.compounds) {
+        if (compound.matches(element, ancestors)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class AnyElement extends CompiledSelector {
+    static final AnyElement INSTANCE = new AnyElement();
+
+    @Override
+    boolean matches(final ElementImpl element, final AncestorFilter ancestors) {
+      return true;
+    }
+  }
+
+  private static final class TagName extends CompiledSelector {
+    private final String name;
+
+    TagName(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    boolean matches(final ElementImpl element, final AncestorFilter ancestors) {
+      return this.name.equalsIgnoreCase(element.getNodeName());
+    }
+
+    @Override
+    List<ElementImpl> getCandidates(final ElementIndex index) {
+      return index.getElementsByTagName(this.name.toLowerCase());
+    }
+  }
+
+  private static final class ClassNames extends CompiledSelector {
+    private final String[] names;
+
+    ClassNames(final String[] names) {
+      this.names = names;
+    }
+
+    @Override
+    boolean matches(final ElementImpl element, final AncestorFilter ancestors) {
+      if (this.names.length == 0) {
+        return false;
+      }
+      final String classAttr = element.getAttribute("class");
+      if (classAttr == null) {
+        return false;
+      }
+      for (final String name : this.names) {
+        if (!containsClass(classAttr, name)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    List<ElementImpl> getCandidates(final ElementIndex index) {
+      if (this.names.length == 0) {
+        return Collections.emptyList();
+      }
+      String rarest = this.names[0];
+      int rarestCount = index.countByClassName(rarest);
+      for (int i = 1; i < this.names.length; i++) {
+        final int count = index.countByClassName(this.names[i]);
+        if (count < rarestCount) {
+          rarest = this.names[i];
+          rarestCount = count;
+        }
+      }
+      return index.getElementsByClassName(rarest);
+    }
+
+    private static boolean containsClass(final String classAttr, final String name) {
+      final int length = classAttr.length();
+      final int nameLength = name.length();
+      int from = 0;
+      int index;
+      while ((index = classAttr.indexOf(name, from)) != -1) {
+        final int end = index + nameLength;
+        if (((index == 0) || Character.isWhitespace(classAttr.charAt(index - 1)))
+            && ((end == length) || Character.isWhitespace(classAttr.charAt(end)))) {
+          return true;
+        }
+        from = index + 1;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A counting bloom filter over the tags, ids and classes of the elements on
+   * the current path from the root. Keys are compared case-insensitively so
+   * that the filter never rejects an element the full match would accept.
+   */
+  static final class AncestorFilter {
+    private static final int BITS = 12;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final short[] counters = new short[1 << BITS];
+    private int[] keys = new int[64];
+    private int keyCount = 0;
+    private int[] frames = new int[16];
+    private int depth = 0;
+
+    static String tagKey(final String name) {
+      return "<" + name.toLowerCase();
+    }
+
+    static String idKey(final String id) {
+      return "#" + id.toLowerCase();
+    }
+
+    static String classKey(final String className) {
+      return "." + className.toLowerCase();
+    }
+
+    static int hash(final String key) {
+      return key.hashCode();
+    }
+
+    void push(final ElementImpl element) {
+      if (this.depth == this.frames.length) {
+        this.frames = Arrays.copyOf(this.frames, this.depth * 2);
+      }
+      this.frames[this.depth++] = this.keyCount;
+      this.add(hash(tagKey(element.getNodeName())));
+      final String id = element.getAttribute("id");
+      if ((id != null) && (id.length() > 0)) {
+        this.add(hash(idKey(id)));
+      }
+      final String classAttr = element.getAttribute("class");
+      if (classAttr != null) {
+        for (final String className : classAttr.split("\\s+")) {
+          if (className.length() > 0) {
+            this.add(hash(classKey(className)));
+          }
+        }
+      }
+    }
+
+    void pop() {
+      final int start = this.frames[--this.depth];
+      for (int i = start; i < this.keyCount; i++) {
+        final int h = this.keys[i];
+        this.counters[h & MASK]--;
+        this.counters[secondIndex(h)]--;
+      }
+      this.keyCount = start;
+    }
+
+    boolean mightContainAll(final int[] hashes) {
+      final short[] counters = this.counters;
+      for (final int h : hashes) {
+        if ((counters[h & MASK] == 0) || (counters[secondIndex(h)] == 0)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void add(final int h) {
+      if (this.keyCount == this.keys.length) {
+        this.keys = Arrays.copyOf(this.keys, this.keyCount * 2);
+      }
+      this.keys[this.keyCount++] = h;
+      this.counters[h & MASK]++;
+      this.counters[secondIndex(h)]++;
+    }
+
+    private static int secondIndex(final int h) {
+      return (h * 0x9E3779B9) >>> (32 - BITS);
+    }
+  }
+}
@@ -27,14 +27,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 import org.cobraparser.util.Strings;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Comment;
 import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -174,32 +173,6 @@ public class ElementImpl extends NodeImpl implements Element, EventTarget {
     return node.getNodeName().equalsIgnoreCase(name);
   }
 
-  public NodeList getElementsByTagName(final String name) {
-    final boolean matchesAll = "*".equals(name);
-    final List<Node> descendents = new LinkedList<>();
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      if (nl != null) {
-        final Iterator<Node> i = nl.iterator();
-        while (i.hasNext()) {
-          final Node child = i.next();
-          if (child instanceof Element) {
-            final Element childElement = (Element) child;
-            if (matchesAll || isTagName(childElement, name)) {
-              descendents.add(child);
-            }
-            final NodeList sublist = childElement.getElementsByTagName(name);
-            final int length = sublist.getLength();
-            for (int idx = 0; idx < length; idx++) {
-              descendents.add(sublist.item(idx));
-            }
-          }
-        }
-      }
-    }
-    return new NodeListImpl(descendents);
-  }
-
   public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) throws DOMException {
     throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "Namespaces not supported");
   }
@@ -475,15 +448,6 @@ public class ElementImpl extends NodeImpl implements Element, EventTarget {
    *          null, if the attribute is now removed
    */
   protected void handleAttributeChanged(final String name, final String oldValue, final String newValue) {
-    // TODO: Need to move this to a separate function, similar to updateIdMap()
-    // TODO: Need to update the name map, whenever attachment changes
-      final HTMLDocumentImpl document = (HTMLDocumentImpl) this.document;
-      if ("name".equals(name)) {
-        if (oldValue != null) {
-          document.removeNamedItem(oldValue);
-        }
-        document.setNamedItem(newValue, this);
-      }
   }
 
   /**
@@ -510,37 +474,37 @@ public class ElementImpl extends NodeImpl implements Element, EventTarget {
       }
     }
 
-    if ("id".equals(normalName)) {
-      updateIdMap(oldValue, newValue);
-    }
-
     if (isAttachedToDocument()) {
+      if (!java.util.Objects.equals(oldValue, newValue)) {
+        final ElementIndex index = getElementIndex();
+        if (index != null) {
+          index.attributeChanged(this, normalName, oldValue, newValue);
+        }
+      }
       handleAttributeChanged(normalName, oldValue, newValue);
     }
 
     return oldValue;
   }
 
-  protected void updateIdMap(final boolean isAttached) {
-    if (hasAttribute("id")) {
-      final String id = getId();
+  /**
+   * Adds this element to, or removes it from, the element index of its
+   * document.
+   */
+  void updateElementIndex(final boolean isAttached) {
+    final ElementIndex index = getElementIndex();
+    if (index != null) {
       if (isAttached) {
-        ((HTMLDocumentImpl) document).setElementById(id, this);
+        index.add(this);
       } else {
-        ((HTMLDocumentImpl) document).removeElementById(getId());
+        index.remove(this);
       }
     }
   }
 
-  private void updateIdMap(final String oldIdValue, final String newIdValue) {
-    if (isAttachedToDocument() && !java.util.Objects.equals(oldIdValue, newIdValue)) {
-      if (oldIdValue != null) {
-        ((HTMLDocumentImpl) document).removeElementById(oldIdValue);
-      }
-      if (newIdValue != null) {
-        ((HTMLDocumentImpl) document).setElementById(newIdValue, this);
-      }
-    }
+  private ElementIndex getElementIndex() {
+    final Document doc = this.document;
+    return doc instanceof HTMLDocumentImpl ? ((HTMLDocumentImpl) doc).getElementIndex() : null;
   }
 
   // TODO: GH #88 Need to implement these for Document and DocumentFragment as part of ParentNode API
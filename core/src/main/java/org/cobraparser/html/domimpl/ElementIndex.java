@@ -0,0 +1,384 @@
+package org.cobraparser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Node;
+
+/**
+ * Indexes the elements attached to a document by id, class, tag name and
+ * <code>name</code> attribute. The index is updated incrementally as elements
+ * are attached, detached or have their attributes changed, so lookups don't
+ * need to walk the tree.
+ * <p>
+ * Every key maps to a list of elements. Adding an element appends to the list
+ * and removing one only counts it as stale, so both are O(1). Elements are
+ * normally attached in document order (e.g. by the parser), in which case the
+ * list stays ordered as it is built. Stale entries are dropped when the list is
+ * next looked up, or once they make up half of it. When an element is attached
+ * anywhere other than at the end of the document, or is moved, the list is
+ * marked unsorted and rebuilt in document order with a single tree walk the
+ * next time it is looked up.
+ * <p>
+ * Lock order: the document's tree lock, then the index. Mutations already hold
+ * the tree lock when they reach the index, except for attribute changes, which
+ * only need the index.
+ */
+final class ElementIndex {
+  private final HTMLDocumentImpl document;
+  private final Map<String, Bucket> byId = new HashMap<>();
+  private final Map<String, Bucket> byClass = new HashMap<>();
+  private final Map<String, Bucket> byTag = new HashMap<>();
+  private final Map<String, Bucket> byName = new HashMap<>();
+
+  /** The element being added and, once needed, whether it is at the end of the document. */
+  private ElementImpl adding;
+  private Boolean addingAtEnd;
+
+  ElementIndex(final HTMLDocumentImpl document) {
+    this.document = document;
+  }
+
+  /**
+   * Called when an element is attached to the document.
+   */
+  synchronized void add(final ElementImpl element) {
+    this.adding = element;
+    this.addingAtEnd = null;
+    this.add(this.byTag, KeyKind.TAG, element.getNodeName().toLowerCase(), element);
+    final String id = element.getAttribute("id");
+    if ((id != null) && (id.length() > 0)) {
+      this.add(this.byId, KeyKind.ID, id, element);
+    }
+    final String name = element.getAttribute("name");
+    if ((name != null) && (name.length() > 0)) {
+      this.add(this.byName, KeyKind.NAME, name, element);
+    }
+    final String classAttr = element.getAttribute("class");
+    if (classAttr != null) {
+      for (final String className : splitClasses(classAttr)) {
+        this.add(this.byClass, KeyKind.CLASS, className, element);
+      }
+    }
+    this.adding = null;
+  }
+
+  /**
+   * Called when an element is detached from the document.
+   */
+  synchronized void remove(final ElementImpl element) {
+    remove(this.byTag, element.getNodeName().toLowerCase());
+    final String id = element.getAttribute("id");
+    if ((id != null) && (id.length() > 0)) {
+      remove(this.byId, id);
+    }
+    final String name = element.getAttribute("name");
+    if ((name != null) && (name.length() > 0)) {
+      remove(this.byName, name);
+    }
+    final String classAttr = element.getAttribute("class");
+    if (classAttr != null) {
+      for (final String className : splitClasses(classAttr)) {
+        remove(this.byClass, className);
+      }
+    }
+  }
+
+  /**
+   * Called when an attribute of an attached element changes.
+   *
+   * @param name
+   *          normalized name
+   */
+  synchronized void attributeChanged(final ElementImpl element, final String name, final String oldValue, final String newValue) {
+    this.adding = null;
+    this.addingAtEnd = Boolean.FALSE;
+    if ("class".equals(name)) {
+      if (oldValue != null) {
+        for (final String className : splitClasses(oldValue)) {
+          remove(this.byClass, className);
+        }
+      }
+      if (newValue != null) {
+        for (final String className : splitClasses(newValue)) {
+          this.add(this.byClass, KeyKind.CLASS, className, element);
+        }
+      }
+      return;
+    }
+    final Map<String, Bucket> map;
+    final KeyKind kind;
+    if ("id".equals(name)) {
+      map = this.byId;
+      kind = KeyKind.ID;
+    } else if ("name".equals(name)) {
+      map = this.byName;
+      kind = KeyKind.NAME;
+    } else {
+      return;
+    }
+    if ((oldValue != null) && (oldValue.length() > 0)) {
+      remove(map, oldValue);
+    }
+    if ((newValue != null) && (newValue.length() > 0)) {
+      this.add(map, kind, newValue, element);
+    }
+  }
+
+  /**
+   * Called when an attached element is moved within the document.
+   */
+  synchronized void invalidateOrder() {
+    invalidateOrder(this.byId);
+    invalidateOrder(this.byClass);
+    invalidateOrder(this.byTag);
+    invalidateOrder(this.byName);
+  }
+
+  ElementImpl getElementById(final String id) {
+    final List<ElementImpl> elements = this.get(this.byId, id);
+    return elements.isEmpty() ? null : elements.get(0);
+  }
+
+  List<ElementImpl> getElementsById(final String id) {
+    return this.get(this.byId, id);
+  }
+
+  List<ElementImpl> getElementsByClassName(final String className) {
+    return this.get(this.byClass, className);
+  }
+
+  /**
+   * @param tagName
+   *          the tag name in lower case
+   */
+  List<ElementImpl> getElementsByTagName(final String tagName) {
+    return this.get(this.byTag, tagName);
+  }
+
+  List<ElementImpl> getElementsByName(final String name) {
+    return this.get(this.byName, name);
+  }
+
+  /**
+   * Gets an estimate of the number of attached elements with the given class,
+   * so that the smallest of several class lists can be picked.
+   */
+  synchronized int countByClassName(final String className) {
+    final Bucket bucket = this.byClass.get(className);
+    return bucket == null ? 0 : Math.max(0, bucket.elements.size() - bucket.staleCount);
+  }
+
+  /**
+   * Gets the elements with the given key, in document order.
+   */
+  private List<ElementImpl> get(final Map<String, Bucket> map, final String key) {
+    synchronized (this.document.treeLock) {
+      synchronized (this) {
+        final Bucket bucket = map.get(key);
+        if (bucket == null) {
+          return Collections.emptyList();
+        }
+        if (bucket.snapshot == null) {
+          if (!bucket.sorted) {
+            bucket.rebuild(this.document);
+          } else if (bucket.staleCount > 0) {
+            bucket.compact();
+          }
+          if (bucket.elements.isEmpty()) {
+            map.remove(key);
+            return Collections.emptyList();
+          }
+          bucket.snapshot = Collections.unmodifiableList(new ArrayList<>(bucket.elements));
+        }
+        return bucket.snapshot;
+      }
+    }
+  }
+
+  /**
+   * Checks whether the element is being attached after every element that is
+   * already attached. While a subtree is attached, its nodes are marked
+   * attached in document order, so any following sibling that is not attached
+   * yet belongs to the same subtree and comes later.
+   */
+  private static boolean isAtDocumentEnd(final NodeImpl node) {
+    for (NodeImpl n = node; ; ) {
+      final Node parent = n.getParentNode();
+      if (!(parent instanceof NodeImpl)) {
+        return true;
+      }
+      final NodeImpl parentImpl = (NodeImpl) parent;
+      final ArrayList<Node> nl = parentImpl.nodeList;
+      if ((nl != null) && !nl.isEmpty()) {
+        final Node last = nl.get(nl.size() - 1);
+        if ((last != n) && (last instanceof NodeImpl) && ((NodeImpl) last).isAttachedToDocument()) {
+          return false;
+        }
+      }
+      n = parentImpl;
+    }
+  }
+
+  /**
+   * Checks whether the element being added is at the end of the document, but
+   * only once per element and only if some ordered list needs to know.
+   */
+  private boolean isAddingAtEnd() {
+    Boolean atEnd = this.addingAtEnd;
+    if (atEnd == null) {
+      atEnd = isAtDocumentEnd(this.adding);
+      this.addingAtEnd = atEnd;
+    }
+    return atEnd;
+  }
+
+  private void add(final Map<String, Bucket> map, final KeyKind kind, final String key, final ElementImpl element) {
+    Bucket bucket = map.get(key);
+    if (bucket == null) {
+      bucket = new Bucket(kind, key);
+      map.put(key, bucket);
+    }
+    if (bucket.sorted && !bucket.elements.isEmpty() && ((bucket.staleCount > 0) || !this.isAddingAtEnd())) {
+      // Besides being out of order, the element may still have a stale entry
+      // further up the list.
+      bucket.sorted = false;
+    }
+    bucket.elements.add(element);
+    bucket.snapshot = null;
+  }
+
+  private static void remove(final Map<String, Bucket> map, final String key) {
+    final Bucket bucket = map.get(key);
+    if (bucket != null) {
+      bucket.staleCount++;
+      bucket.snapshot = null;
+      if (bucket.staleCount > (bucket.elements.size() >> 1)) {
+        bucket.compact();
+        if (bucket.elements.isEmpty()) {
+          map.remove(key);
+        }
+      }
+    }
+  }
+
+  private static void invalidateOrder(final Map<String, Bucket> map) {
+    for (final Bucket bucket : map.values()) {
+      if (bucket.elements.size() > 1) {
+        bucket.sorted = false;
+        bucket.snapshot = null;
+      }
+    }
+  }
+
+  private static List<String> splitClasses(final String classAttr) {
+    final ArrayList<String> classes = new ArrayList<>(2);
+    final int length = classAttr.length();
+    int start = -1;
+    for (int i = 0; i <= length; i++) {
+      if ((i == length) || Character.isWhitespace(classAttr.charAt(i))) {
+        if (start != -1) {
+          classes.add(classAttr.substring(start, i));
+          start = -1;
+        }
+      } else if (start == -1) {
+        start = i;
+      }
+    }
+    return classes;
+  }
+
+  private enum KeyKind {
+    TAG {
+      @Override
+      boolean hasKey(final ElementImpl element, final String key) {
+        return key.equalsIgnoreCase(element.getNodeName());
+      }
+    },
+    ID {
+      @Override
+      boolean hasKey(final ElementImpl element, final String key) {
+        return key.equals(element.getAttribute("id"));
+      }
+    },
+    NAME {
+      @Override
+      boolean hasKey(final ElementImpl element, final String key) {
+        return key.equals(element.getAttribute("name"));
+      }
+    },
+    CLASS {
+      @Override
+      boolean hasKey(final ElementImpl element, final String key) {
+        final String classAttr = element.getAttribute("class");
+        return (classAttr != null) && splitClasses(classAttr).contains(key);
+      }
+    };
+
+    abstract boolean hasKey(ElementImpl element, String key);
+  }
+
+  /**
+   * The elements for one key. Entries for elements that have been detached or
+   * no longer have the key are left in place until the list is compacted.
+   */
+  private static final class Bucket {
+    private final KeyKind kind;
+    private final String key;
+    ArrayList<ElementImpl> elements = new ArrayList<>(1);
+    int staleCount = 0;
+    boolean sorted = true;
+    List<ElementImpl> snapshot = null;
+
+    Bucket(final KeyKind kind, final String key) {
+      this.kind = kind;
+      this.key = key;
+    }
+
+    /**
+     * Drops stale and duplicate entries, keeping the order of the rest.
+     */
+    void compact() {
+      final ArrayList<ElementImpl> members = new ArrayList<>(Math.max(1, this.elements.size() - this.staleCount));
+      final Set<ElementImpl> seen = Collections.newSetFromMap(new IdentityHashMap<ElementImpl, Boolean>());
+      for (final ElementImpl element : this.elements) {
+        if (element.isAttachedToDocument() && this.kind.hasKey(element, this.key) && seen.add(element)) {
+          members.add(element);
+        }
+      }
+      this.elements = members;
+      this.staleCount = 0;
+    }
+
+    /**
+     * Collects the members again by walking the document.
+     */
+    void rebuild(final NodeImpl document) {
+      final ArrayList<ElementImpl> members = new ArrayList<>(Math.max(1, this.elements.size() - this.staleCount));
+      this.collect(document, members);
+      this.elements = members;
+      this.staleCount = 0;
+      this.sorted = true;
+    }
+
+    private void collect(final NodeImpl parent, final ArrayList<ElementImpl> members) {
+      final ArrayList<Node> nl = parent.nodeList;
+      if (nl != null) {
+        for (final Node child : nl) {
+          if (child instanceof ElementImpl) {
+            final ElementImpl element = (ElementImpl) child;
+            if (this.kind.hasKey(element, this.key)) {
+              members.add(element);
+            }
+            this.collect(element, members);
+          }
+        }
+      }
+    }
+  }
+}
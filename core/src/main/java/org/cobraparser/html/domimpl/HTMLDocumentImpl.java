@@ -51,7 +51,6 @@ import org.cobraparser.ua.UserAgentContext.Request;
 import org.cobraparser.ua.UserAgentContext.RequestKind;
 import org.cobraparser.util.SecurityUtil;
 import org.cobraparser.util.Urls;
-import org.cobraparser.util.WeakValueHashMap;
 import org.cobraparser.util.io.EmptyReader;
 import org.cobraparser.validation.DomainValidation;
 import org.w3c.dom.*;
@@ -75,6 +74,7 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -87,7 +87,10 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     private final HtmlRendererContext rcontext;
     private final UserAgentContext ucontext;
     private final org.cobraparser.html.js.Window window;
-    private final Map<String, Element> elementsById = new WeakValueHashMap<>();
+    private final ElementIndex elementIndex = new ElementIndex(this);
+    private final StyleSharingCache styleSharingCache = new StyleSharingCache();
+    private final LayoutCacheStats layoutCacheStats = new LayoutCacheStats();
+    private final ResourcePreloader resourcePreloader;
     private String documentURI;
     private URL documentURL;
     protected final StyleSheetManager styleSheetManager = new StyleSheetManager();
@@ -108,6 +111,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         this.factory = ElementFactory.getInstance();
         this.rcontext = rcontext;
         this.ucontext = ucontext;
+        this.resourcePreloader = new ResourcePreloader(ucontext);
         this.reader = reader;
         this.documentURI = documentURI;
         this.contentType = contentType;
@@ -170,23 +174,49 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         return this.documentURL;
     }
 
+    ElementIndex getElementIndex() {
+        return this.elementIndex;
+    }
+
+    StyleSharingCache getStyleSharingCache() {
+        return this.styleSharingCache;
+    }
+
     /**
-     * Caller should synchronize on document.
+     * Gets the counters of the layout caches of the blocks rendering this
+     * document.
      */
-    void setElementById(final String id, final Element element) {
-        synchronized (this) {
-            // TODO: Need to take care of document order. The following check is crude and only takes
-            //       care of document order for elements in static HTML.
-            if (!elementsById.containsKey(id)) {
-                this.elementsById.put(id, element);
-            }
-        }
+    @HideFromJS
+    public LayoutCacheStats getLayoutCacheStats() {
+        return this.layoutCacheStats;
     }
 
-    void removeElementById(final String id) {
-        synchronized (this) {
-            this.elementsById.remove(id);
-        }
+    /**
+     * Starts fetching an external script or style sheet ahead of the job that
+     * will process it.
+     */
+    void preloadResource(final URL url, final RequestKind kind) {
+        this.resourcePreloader.preload(url, kind);
+    }
+
+    /**
+     * Takes the response that was preloaded for the given resource, waiting for
+     * it if it is still being fetched.
+     *
+     * @return the completed request, or <code>null</code> if the resource has to
+     *         be fetched by the caller
+     */
+    @HideFromJS
+    public NetworkRequest takePreloadedResource(final URL url, final RequestKind kind) {
+        return this.resourcePreloader.take(url, kind);
+    }
+
+    /**
+     * Discards the response preloaded for a resource that won't be processed,
+     * e.g. because its element was detached.
+     */
+    void discardPreloadedResource(final URL url, final RequestKind kind) {
+        this.resourcePreloader.discard(url, kind);
     }
 
     private volatile String baseURI;
@@ -542,7 +572,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
      */
     @Override
     public NodeList getElementsByName(final String elementName) {
-        return this.getNodeList(new ElementNameFilter(elementName));
+        return new NodeListImpl(new ArrayList<Node>(this.elementIndex.getElementsByName(elementName)));
     }
 
     private DocumentType doctype;
@@ -639,22 +669,6 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "HTML document");
     }
 
-    /**
-     * Gets all elements that match the given tag name.
-     *
-     * @param tagname The element tag name or an asterisk character (*) to match all
-     *                elements.
-     */
-    @Override
-    public NodeList getElementsByTagName(final String tagname) {
-        if ("*".equals(tagname)) {
-            return this.getNodeList(new ElementFilter());
-        }
-        else {
-            return this.getNodeList(new TagNameFilter(tagname));
-        }
-    }
-
     @Override
     public Node importNode(final Node importedNode, final boolean deep) throws DOMException {
         throw new DOMException(DOMException.NOT_SUPPORTED_ERR, "Not implemented");
@@ -688,35 +702,16 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
     @Override
     public Element getElementById(final String elementId) {
         if ((elementId != null) && (elementId.length() > 0)) {
-            synchronized (this) {
-                return this.elementsById.get(elementId);
-            }
+            return this.elementIndex.getElementById(elementId);
         }
         else {
             return null;
         }
     }
 
-    private final Map<String, Element> elementsByName = new HashMap<>(0);
-
     public Element namedItem(final String name) {
-        Element element;
-        synchronized (this) {
-            element = this.elementsByName.get(name);
-        }
-        return element;
-    }
-
-    void setNamedItem(final String name, final Element element) {
-        synchronized (this) {
-            this.elementsByName.put(name, element);
-        }
-    }
-
-    void removeNamedItem(final String name) {
-        synchronized (this) {
-            this.elementsByName.remove(name);
-        }
+        final List<ElementImpl> elements = this.elementIndex.getElementsByName(name);
+        return elements.isEmpty() ? null : elements.get(0);
     }
 
     private String inputEncoding;
@@ -1478,7 +1473,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         doneAllJobs.release();
     }
 
-    private Holder classifiedRules = null;
+    private volatile Holder classifiedRules = null;
     private static final StyleSheet recommendedStyle = parseStyle(CSSNorm.stdStyleSheet(), StyleSheet.Origin.AGENT, false);
     private static final StyleSheet userAgentStyle = parseStyle(CSSNorm.userStyleSheet(), StyleSheet.Origin.AGENT, false);
     private static final StyleSheet recommendedStyleXML = parseStyle(CSSNorm.stdStyleSheet(), StyleSheet.Origin.AGENT, true);
@@ -1515,7 +1510,33 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
         });
     }
 
+    /**
+     * Like {@link #primeNodeData()}, but computes the styles of sibling
+     * subtrees concurrently in the given pool. An element's style is always
+     * computed before its children's. The tree lock is held by the calling
+     * thread until the pass completes, so the tree can't change meanwhile. The
+     * workers read the tree without ever taking the lock, see
+     * {@link StylePassTask}.
+     */
+    @HideFromJS
+    public void primeNodeData(final ForkJoinPool pool) {
+        synchronized (treeLock) {
+            getClassifiedRules();
+            pool.invoke(new StylePassTask(this, null));
+        }
+    }
+
+    /**
+     * Gets the rules of the document's style sheets, classified for matching.
+     * Once built, the rules are only read, so they can be matched against from
+     * several threads. They are replaced, not modified, when the style sheets
+     * change.
+     */
     Holder getClassifiedRules() {
+        final Holder rules = classifiedRules;
+        if (rules != null) {
+            return rules;
+        }
         synchronized (treeLock) {
             if (classifiedRules == null) {
                 updateStyleRules();
@@ -1554,6 +1575,8 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
             throw new IllegalStateException("More jobs over than registered!");
         }
         else if (curr == 0) {
+            // Jobs that would have taken the remaining preloads were skipped or dropped.
+            this.resourcePreloader.discardAll();
             if (!stopRequested.get() && !loadOver.get()) {
                 loadOver.set(true);
                 dispatchLoadEvent();
@@ -1695,6 +1718,7 @@ public class HTMLDocumentImpl extends NodeImpl implements HTMLDocument, Document
             }
             synchronized (treeLock) {
                 HTMLDocumentImpl.this.classifiedRules = null;
+                HTMLDocumentImpl.this.styleSharingCache.clear();
             }
             // System.out.println("Stylesheets set to null");
             allInvalidated(true);
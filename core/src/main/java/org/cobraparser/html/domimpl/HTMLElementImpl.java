@@ -33,6 +33,7 @@ import org.cobraparser.js.HideFromJS;
 import org.cobraparser.util.Strings;
 import org.w3c.css.sac.InputSource;
 import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.html.HTMLElement;
@@ -62,6 +63,7 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
 
       this.currentStyle = null;
       this.cachedNodeData = null;
+      this.matchedRules = null;
       //TODO to be removed during code cleanup
       /*
       this.currentStyleDeclarationState = null;
@@ -86,6 +88,7 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
       this.currentStyle = null;
       this.cachedRules = null;
       this.cachedNodeData = null;
+      this.matchedRules = null;
       if (deep) {
         final ArrayList<Node> nl = this.nodeList;
         if (nl != null) {
@@ -126,6 +129,17 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
    *  This is a very crude measure, but highly effective with most web-sites.
    */
   private boolean cachedHasHoverRule = false;
+
+  /** True if {@link #cachedRules} came from the document's style sheets alone,
+   *  without any rules derived from this element's own attributes.
+   */
+  private boolean cachedRulesFromSheetsOnly = false;
+
+  /** Which of {@link #cachedRules} match this element, as they did when
+   *  {@link #cachedNodeData} was computed. Used to decide whether the style can
+   *  be shared, see {@link #canShareStyleWith(HTMLElementImpl, NodeData)}.
+   */
+  private volatile boolean[] matchedRules = null;
   private GeneratedElement beforeNode;
   private GeneratedElement afterNode;
 
@@ -137,43 +151,220 @@ public class HTMLElementImpl extends ElementImpl implements HTMLElement, CSS2Pro
         if (cachedNodeData != null) {
           return cachedNodeData;
         }
+        final Node parent = this.parentNode;
+        final NodeData parentNodeData = parent instanceof HTMLElementImpl ? ((HTMLElementImpl) parent).getNodeData(psuedoElement) : null;
+        return computeNodeData(psuedoElement, parentNodeData);
+      }
+    }
+  }
 
-        final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+  /**
+   * Gets the style of this element as part of a parallel style pass. The
+   * thread that started the pass holds the tree lock for its whole duration, so
+   * the tree can't change, but this method must not try to take it.
+   *
+   * @param parentNodeData
+   *          the style of the parent element, already resolved by the pass, or
+   *          <code>null</code> if the parent is not an HTML element
+   */
+  NodeData getNodeDataInStylePass(final NodeData parentNodeData) {
+    synchronized (this) {
+      if (cachedNodeData != null) {
+        return cachedNodeData;
+      }
+      return computeNodeData(null, parentNodeData);
+    }
+  }
 
-        if (cachedRules == null) {
-          final ArrayList<RuleSet> jSheets = new ArrayList<>(2);
-          final StyleSheet attributeStyle = StyleElements.convertAttributesToStyles(this);
-          if (attributeStyle != null && attributeStyle.size() > 0) {
-            jSheets.add((RuleSet) attributeStyle.get(0));
-          }
+  // Called with the element lock held, and with the tree lock held or by a parallel style pass.
+  private NodeData computeNodeData(final Selector.PseudoElementType psuedoElement, final NodeData parentNodeData) {
+    final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
 
-          final StyleSheet inlineStyle = this.getInlineJStyle();
-          if (inlineStyle != null && inlineStyle.size() > 0 ) {
-            jSheets.add((RuleSet) inlineStyle.get(0));
-          }
+    if (cachedRules == null) {
+      final ArrayList<RuleSet> jSheets = new ArrayList<>(2);
+      final StyleSheet attributeStyle = StyleElements.convertAttributesToStyles(this);
+      if (attributeStyle != null && attributeStyle.size() > 0) {
+        jSheets.add((RuleSet) attributeStyle.get(0));
+      }
 
-          cachedRules = AnalyzerUtil.getApplicableRules(this, doc.getClassifiedRules(), jSheets.size() > 0 ? jSheets.toArray(new RuleSet[jSheets.size()]) : null);
-          cachedHasHoverRule = hasHoverRule(cachedRules);
+      final StyleSheet inlineStyle = this.getInlineJStyle();
+      if (inlineStyle != null && inlineStyle.size() > 0 ) {
+        jSheets.add((RuleSet) inlineStyle.get(0));
+      }
 
-        }
+      cachedRules = AnalyzerUtil.getApplicableRules(this, doc.getClassifiedRules(), jSheets.size() > 0 ? jSheets.toArray(new RuleSet[jSheets.size()]) : null);
+      cachedHasHoverRule = hasHoverRule(cachedRules);
+      cachedRulesFromSheetsOnly = jSheets.isEmpty();
+    }
+    this.matchedRules = null;
 
-        final NodeData nodeData = AnalyzerUtil.getElementStyle(this, psuedoElement, doc.getMatcher(), elementMatchCondition, cachedRules);
-        final Node parent = this.parentNode;
-        if ((parent != null) && (parent instanceof HTMLElementImpl)) {
-          final HTMLElementImpl parentElement = (HTMLElementImpl) parent;
-          nodeData.inheritFrom(parentElement.getNodeData(psuedoElement));
-          nodeData.concretize();
-        }
+    if (psuedoElement == null && parentNodeData != null) {
+      final NodeData sharedNodeData = findSharedNodeData(doc, parentNodeData);
+      if (sharedNodeData != null) {
+        return sharedNodeData;
+      }
+    }
 
-        this.beforeNode = setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.BEFORE, cachedRules, this);
-        this.afterNode = setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.AFTER, cachedRules, this);
+    final NodeData nodeData = AnalyzerUtil.getElementStyle(this, psuedoElement, doc.getMatcher(), elementMatchCondition, cachedRules);
+    if (parentNodeData != null) {
+      nodeData.inheritFrom(parentNodeData);
+      nodeData.concretize();
+    }
 
-        cachedNodeData = nodeData;
-        // System.out.println("In " + this);
-        // System.out.println("  Node data: " + nodeData);
-        return nodeData;
+    this.beforeNode = setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.BEFORE, cachedRules, this);
+    this.afterNode = setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.AFTER, cachedRules, this);
+
+    cachedNodeData = nodeData;
+    if (psuedoElement == null && cachedRulesFromSheetsOnly && !cachedHasHoverRule) {
+      this.getMatchedRules(doc.getMatcher());
+      doc.getStyleSharingCache().add(this);
+    }
+    // System.out.println("In " + this);
+    // System.out.println("  Node data: " + nodeData);
+    return nodeData;
+  }
+
+  /**
+   * Reuses the style of a recently styled sibling or cousin, if there is one
+   * that is style-equivalent to this element. The node data is shared, not
+   * copied, since it isn't modified once computed; anything that needs to
+   * change it has to work on a copy.
+   * <p>
+   * Must be called with the tree lock held, or by a parallel style pass, after
+   * the applicable rules have been computed.
+   */
+  private NodeData findSharedNodeData(final HTMLDocumentImpl doc, final NodeData parentNodeData) {
+    if (!cachedRulesFromSheetsOnly || this.isMouseOver || cachedHasHoverRule) {
+      return null;
+    }
+    final HTMLElementImpl candidate = doc.getStyleSharingCache().find(this, parentNodeData);
+    if (candidate == null) {
+      return null;
+    }
+    final NodeData nodeData = candidate.cachedNodeData;
+    this.beforeNode = candidate.beforeNode == null ? null : setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.BEFORE, cachedRules, this);
+    this.afterNode = candidate.afterNode == null ? null : setupGeneratedNode(doc, nodeData, Selector.PseudoElementType.AFTER, cachedRules, this);
+    cachedNodeData = nodeData;
+    return nodeData;
+  }
+
+  /**
+   * Checks whether this element can use the style computed for the given
+   * element. That is the case when both have the same candidate rules, the
+   * same of those rules actually match both, neither is affected by hovering,
+   * and both inherit from the same parent style.
+   * <p>
+   * The candidate rules are only narrowed down by tag name, id and class, so
+   * whether they match is checked here, with their combinators, pseudo-classes
+   * and attribute conditions. The matches of the given element are those it
+   * had when its style was computed, so its style is right for them even if
+   * the tree changed since.
+   * <p>
+   * Must be called with the tree lock held, or by a parallel style pass.
+   *
+   * @param parentNodeData
+   *          the style this element inherits from
+   */
+  boolean canShareStyleWith(final HTMLElementImpl candidate, final NodeData parentNodeData) {
+    if ((candidate.getClass() != this.getClass()) || (candidate.cachedNodeData == null) || !candidate.cachedRulesFromSheetsOnly
+        || candidate.isMouseOver || candidate.cachedHasHoverRule) {
+      return false;
+    }
+    final Node candidateParent = candidate.parentNode;
+    if (!(candidateParent instanceof HTMLElementImpl) || (((HTMLElementImpl) candidateParent).cachedNodeData != parentNodeData)) {
+      return false;
+    }
+    final OrderedRule[] rules = this.cachedRules;
+    final OrderedRule[] candidateRules = candidate.cachedRules;
+    if ((rules == null) || (candidateRules == null) || (rules.length != candidateRules.length)) {
+      return false;
+    }
+    for (int i = 0; i < rules.length; i++) {
+      if (rules[i].getRule() != candidateRules[i].getRule()) {
+        return false;
       }
     }
+    final boolean[] candidateMatches = candidate.matchedRules;
+    if ((candidateMatches == null) || (candidateMatches.length != rules.length)) {
+      return false;
+    }
+    final ElementMatcher matcher = ((HTMLDocumentImpl) this.document).getMatcher();
+    return Arrays.equals(this.getMatchedRules(matcher), candidateMatches);
+  }
+
+  /**
+   * Gets which of the candidate rules match this element, working them out if
+   * that hasn't been done since the rules were last looked up.
+   * <p>
+   * Must be called with the element lock held, after the candidate rules have
+   * been computed.
+   */
+  private boolean[] getMatchedRules(final ElementMatcher matcher) {
+    boolean[] matched = this.matchedRules;
+    if (matched == null) {
+      final OrderedRule[] rules = this.cachedRules;
+      matched = new boolean[rules.length];
+      for (int i = 0; i < rules.length; i++) {
+        matched[i] = matchesRule(rules[i].getRule(), this, matcher);
+      }
+      this.matchedRules = matched;
+    }
+    return matched;
+  }
+
+  private static boolean matchesRule(final RuleSet rule, final Element element, final ElementMatcher matcher) {
+    for (final CombinedSelector cs : rule.getSelectors()) {
+      if (matchesSelector(cs, cs.size() - 1, element, matcher)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the element matches part <code>index</code> of the
+   * selector and, through the combinators, the parts to the left of it. The
+   * tree is walked without taking the tree lock.
+   */
+  private static boolean matchesSelector(final CombinedSelector cs, final int index, final Element element, final ElementMatcher matcher) {
+    final Selector part = cs.get(index);
+    if (!part.matches(element, matcher, elementMatchCondition)) {
+      return false;
+    }
+    if (index == 0) {
+      return true;
+    }
+    final Selector.Combinator combinator = part.getCombinator();
+    if (combinator == Selector.Combinator.CHILD) {
+      final Node parent = element.getParentNode();
+      return (parent instanceof Element) && matchesSelector(cs, index - 1, (Element) parent, matcher);
+    } else if (combinator == Selector.Combinator.ADJACENT) {
+      final Element sibling = previousElementSibling(element);
+      return (sibling != null) && matchesSelector(cs, index - 1, sibling, matcher);
+    } else if (combinator == Selector.Combinator.PRECEDING) {
+      for (Element sibling = previousElementSibling(element); sibling != null; sibling = previousElementSibling(sibling)) {
+        if (matchesSelector(cs, index - 1, sibling, matcher)) {
+          return true;
+        }
+      }
+      return false;
+    } else {
+      for (Node ancestor = element.getParentNode(); ancestor instanceof Element; ancestor = ancestor.getParentNode()) {
+        if (matchesSelector(cs, index - 1, (Element) ancestor, matcher)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static Element previousElementSibling(final Element element) {
+    for (Node n = element.getPreviousSibling(); n != null; n = n.getPreviousSibling()) {
+      if (n instanceof Element) {
+        return (Element) n;
+      }
+    }
+    return null;
   }
 
   private static GeneratedElement setupGeneratedNode(final HTMLDocumentImpl doc, final NodeData nodeData, final Selector.PseudoElementType decl, final OrderedRule[] rules, final HTMLElementImpl elem) {
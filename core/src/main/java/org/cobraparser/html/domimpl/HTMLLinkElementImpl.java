@@ -27,6 +27,7 @@ import org.cobraparser.html.js.Window;
 import org.cobraparser.html.style.CSSUtilities;
 import org.cobraparser.js.HideFromJS;
 import org.cobraparser.ua.UserAgentContext;
+import org.cobraparser.ua.UserAgentContext.RequestKind;
 import org.cobraparser.util.Urls;
 import org.w3c.dom.css.CSSStyleSheet;
 import org.w3c.dom.html.HTMLLinkElement;
@@ -347,6 +348,7 @@ public class HTMLLinkElementImpl extends HTMLAbstractUIElement implements HTMLLi
       if (defer) {
         this.styleSheet = this.getEmptyStyleSheet();
         doc.styleSheetManager.invalidateStyles();
+        this.preloadStyleSheet(doc);
         //TODO need to think how to schedule this. refer issue #69
         doc.addJob(() -> this.processLinkHelper(false), true);
       } else {
@@ -354,12 +356,46 @@ public class HTMLLinkElementImpl extends HTMLAbstractUIElement implements HTMLLi
       }
     } else {
       this.detachStyleSheet();
+      if (!isAttachedToDocument()) {
+        this.discardPreloadedStyleSheet(doc);
+      }
       if (!defer) {
         doc.markJobsFinished(1, true);
       }
     }
   }
 
+  /**
+   * Starts fetching the style sheet, so that it downloads while the document
+   * is parsed. It is still parsed and applied when its job comes up.
+   */
+  private void preloadStyleSheet(final HTMLDocumentImpl doc) {
+    final UserAgentContext uacontext = this.getUserAgentContext();
+    if ((uacontext != null) && uacontext.isExternalCSSEnabled()) {
+      try {
+        // Resolved the same way as in CSSUtilities.jParse()
+        doc.preloadResource(Urls.createURL(new URL(doc.getBaseURI()), this.getHref()), RequestKind.CSS);
+      } catch (final MalformedURLException mfe) {
+        // processLink() reports it
+      }
+    }
+  }
+
+  /**
+   * Discards the preloaded style sheet, for when the element was detached
+   * before its job took it.
+   */
+  private void discardPreloadedStyleSheet(final HTMLDocumentImpl doc) {
+    final String href = this.getHref();
+    if ((doc != null) && (href != null)) {
+      try {
+        doc.discardPreloadedResource(Urls.createURL(new URL(doc.getBaseURI()), href), RequestKind.CSS);
+      } catch (final MalformedURLException mfe) {
+        // Nothing was preloaded
+      }
+    }
+  }
+
   private JStyleSheetWrapper getEmptyStyleSheet() {
     final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.getOwnerDocument();
     return new JStyleSheetWrapper(null, this.getMedia(), this.getHref(), this.getType(), this.getTitle(), this,
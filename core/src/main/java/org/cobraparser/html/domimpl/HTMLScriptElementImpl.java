@@ -134,14 +134,51 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
         "text/x-javascript"
     };
 
-    protected final void processScript() {
+    private boolean isJavaScriptType() {
         final String scriptType = getType();
-        if (scriptType != null) {
-            if (Arrays.stream(jsTypes).noneMatch(e -> e.equals(scriptType))) {
-                ((HTMLDocumentImpl) HTMLScriptElementImpl.this.document).markJobsFinished(1, false);
-                return;
+        return (scriptType == null) || Arrays.stream(jsTypes).anyMatch(e -> e.equals(scriptType));
+    }
+
+    /**
+     * Starts fetching the external script, so that it downloads while the
+     * document is parsed. It is still run when its job comes up.
+     */
+    private void preloadScript() {
+        final String src = this.getSrc();
+        final UserAgentContext bcontext = this.getUserAgentContext();
+        if ((src != null) && (bcontext != null) && bcontext.isScriptingEnabled() && isJavaScriptType()) {
+            final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+            try {
+                doc.preloadResource(doc.getFullURL(src), RequestKind.JavaScript);
+            }
+            catch (final MalformedURLException mfe) {
+                // processScript() reports it
             }
         }
+    }
+
+    /**
+     * Discards the preloaded script, for when it won't be run.
+     */
+    private void discardPreloadedScript() {
+        final String src = this.getSrc();
+        if (src != null && this.document instanceof HTMLDocumentImpl) {
+            final HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
+            try {
+                doc.discardPreloadedResource(doc.getFullURL(src), RequestKind.JavaScript);
+            }
+            catch (final MalformedURLException mfe) {
+                // Nothing was preloaded
+            }
+        }
+    }
+
+    protected final void processScript() {
+        if (!isJavaScriptType()) {
+            discardPreloadedScript();
+            ((HTMLDocumentImpl) HTMLScriptElementImpl.this.document).markJobsFinished(1, false);
+            return;
+        }
         final UserAgentContext bcontext = this.getUserAgentContext();
         if (bcontext == null) {
             throw new IllegalStateException("No user agent context.");
@@ -174,20 +211,24 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
                 try {
                     final URL scriptURL = doc.getFullURL(src);
                     scriptURI = scriptURL.toExternalForm();
-                    // Perform a synchronous request
-                    final NetworkRequest request = bcontext.createHttpRequest();
-                    SecurityUtil.doPrivileged(() -> {
-                        // Code might have restrictions on accessing
-                        // items from elsewhere.
-                        try {
-                            request.open("GET", scriptURI, false);
-                            request.send(null, new Request(scriptURL, RequestKind.JavaScript));
-                        }
-                        catch (final java.io.IOException thrown) {
-                            logger.warn("processScript()", thrown);
-                        }
-                        return null;
-                    });
+                    NetworkRequest request = doc.takePreloadedResource(scriptURL, RequestKind.JavaScript);
+                    if (request == null) {
+                        // Perform a synchronous request
+                        final NetworkRequest syncRequest = bcontext.createHttpRequest();
+                        SecurityUtil.doPrivileged(() -> {
+                            // Code might have restrictions on accessing
+                            // items from elsewhere.
+                            try {
+                                syncRequest.open("GET", scriptURI, false);
+                                syncRequest.send(null, new Request(scriptURL, RequestKind.JavaScript));
+                            }
+                            catch (final java.io.IOException thrown) {
+                                logger.warn("processScript()", thrown);
+                            }
+                            return null;
+                        });
+                        request = syncRequest;
+                    }
                     final int status = request.getStatus();
                     if ((status != 200) && (status != 0)) {
                         this.warn("Script at [" + scriptURI + "] failed to load; HTTP status: " + status + ".");
@@ -216,10 +257,12 @@ public class HTMLScriptElementImpl extends HTMLElementImpl implements HTMLScript
     @Override
     protected void handleDocumentAttachmentChanged() {
         if (isAttachedToDocument()) {
+            preloadScript();
             ((HTMLDocumentImpl) document).addJob(() -> processScript(), false);
         }
         else {
             // TODO What does script element do when detached?
+            discardPreloadedScript();
         }
         super.handleDocumentAttachmentChanged();
     }
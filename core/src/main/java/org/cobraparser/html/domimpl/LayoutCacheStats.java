@@ -0,0 +1,50 @@
+package org.cobraparser.html.domimpl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the layout caches of the blocks rendering a document. A hit is
+ * a block layout that was answered from a previous layout of the same block,
+ * a miss one that had to be computed, and an eviction a cached layout dropped
+ * to make room for another one of the same block.
+ */
+public final class LayoutCacheStats {
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public void hit() {
+    this.hits.incrementAndGet();
+  }
+
+  public void miss() {
+    this.misses.incrementAndGet();
+  }
+
+  public void evicted() {
+    this.evictions.incrementAndGet();
+  }
+
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  public long getEvictionCount() {
+    return this.evictions.get();
+  }
+
+  public void reset() {
+    this.hits.set(0);
+    this.misses.set(0);
+    this.evictions.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "LayoutCacheStats[hits=" + this.getHitCount() + ",misses=" + this.getMissCount() + ",evictions=" + this.getEvictionCount() + "]";
+  }
+}
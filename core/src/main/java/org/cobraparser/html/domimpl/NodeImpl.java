@@ -23,9 +23,9 @@
  */
 package org.cobraparser.html.domimpl;
 
-import cz.vutbr.web.css.*;
 import org.cobraparser.html.HtmlRendererContext;
 import org.cobraparser.html.js.Event;
+import org.cobraparser.html.js.NodeEventListeners;
 import org.cobraparser.html.style.RenderState;
 import org.cobraparser.html.style.StyleSheetRenderState;
 import org.cobraparser.js.AbstractScriptableDelegate;
@@ -39,19 +39,22 @@ import org.w3c.dom.*;
 import org.w3c.dom.html.HTMLCollection;
 import org.w3c.dom.html.HTMLDocument;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
-import java.util.stream.Collectors;
 
 // TODO: Implement org.w3c.dom.events.EventTarget ?
 public abstract class NodeImpl extends AbstractScriptableDelegate implements Node, ModelNode {
-  private static final NodeImpl[] EMPTY_ARRAY = new NodeImpl[0];
+  private static final Node[] NO_CHILDREN = new Node[0];
   private static final RenderState BLANK_RENDER_STATE = new StyleSheetRenderState(null);
   protected static final Logger logger = LoggerFactory.getLogger(NodeImpl.class.getName());
   protected UINode uiNode;
-  protected ArrayList<Node> nodeList;
+  /**
+   * The children of this node. It is modified only with the tree lock held.
+   * Readers that don't need a consistent view of more than this node's
+   * children use {@link #getChildSnapshot()} and don't take the lock.
+   */
+  protected volatile ChildList nodeList;
   protected volatile Document document;
 
   /**
@@ -104,9 +107,9 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
           throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, "Trying to append an ancestor element.");
         }
 
-        ArrayList<Node> nl = this.nodeList;
+        ChildList nl = this.nodeList;
         if (nl == null) {
-          nl = new ArrayList<>(3);
+          nl = new ChildList(3);
           this.nodeList = nl;
         }
         nl.add(newChild);
@@ -160,17 +163,25 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    * this method.
    */
   public NodeImpl[] getChildrenArray() {
-    final ArrayList<Node> nl = this.nodeList;
-    synchronized (this.treeLock) {
-      return nl == null ? null : nl.toArray(NodeImpl.EMPTY_ARRAY);
+    final ChildList nl = this.nodeList;
+    if (nl == null) {
+      return null;
     }
+    final Node[] children = nl.snapshot();
+    return Arrays.copyOf(children, children.length, NodeImpl[].class);
+  }
+
+  /**
+   * Gets the children of this node without taking the tree lock. The returned
+   * array must not be modified, and doesn't reflect later changes.
+   */
+  Node[] getChildSnapshot() {
+    final ChildList nl = this.nodeList;
+    return nl == null ? NO_CHILDREN : nl.snapshot();
   }
 
   int getChildCount() {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return nl == null ? 0 : nl.size();
-    }
+    return this.getChildSnapshot().length;
   }
 
   // TODO: This is needed to be implemented only by Element, Document and DocumentFragment as per https://developer.mozilla.org/en-US/docs/Web/API/ParentNode
@@ -184,9 +195,7 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    */
   public ArrayList<NodeImpl> getDescendents(final NodeFilter filter, final boolean nestIntoMatchingNodes) {
     final ArrayList<NodeImpl> al = new ArrayList<>();
-    synchronized (this.treeLock) {
-      this.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
-    }
+    this.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
     return al;
   }
 
@@ -198,19 +207,18 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    * @param al
    */
   private void extractDescendentsArrayImpl(final NodeFilter filter, final ArrayList<NodeImpl> al, final boolean nestIntoMatchingNodes) {
-    final ArrayList<Node> nl = this.nodeList;
-    if (nl != null) {
-      final Iterator<Node> i = nl.iterator();
-      while (i.hasNext()) {
-        final NodeImpl n = (NodeImpl) i.next();
-        if (filter.accept(n)) {
-          al.add(n);
-          if (nestIntoMatchingNodes) {
-            n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
-          }
-        } else if (n.getNodeType() == Node.ELEMENT_NODE) {
+    // Reads each child list without the tree lock. Every list is seen as a
+    // whole, but changes made to other parts of the tree during the walk may
+    // or may not be seen.
+    for (final Node child : this.getChildSnapshot()) {
+      final NodeImpl n = (NodeImpl) child;
+      if (filter.accept(n)) {
+        al.add(n);
+        if (nestIntoMatchingNodes) {
           n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
         }
+      } else if (n.getNodeType() == Node.ELEMENT_NODE) {
+        n.extractDescendentsArrayImpl(filter, al, nestIntoMatchingNodes);
       }
     }
   }
@@ -276,22 +284,25 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   int getChildIndex(final Node child) {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return nl == null ? -1 : nl.indexOf(child);
+    return indexOf(this.getChildSnapshot(), child);
+  }
+
+  private static int indexOf(final Node[] children, final Node child) {
+    for (int i = 0; i < children.length; i++) {
+      if (children[i] == child) {
+        return i;
+      }
     }
+    return -1;
   }
 
   Node getChildAtIndex(final int index) {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(index);
-      } catch (final IndexOutOfBoundsException iob) {
-        this.warn("getChildAtIndex(): Bad index=" + index + " for node=" + this + ".");
-        return null;
-      }
+    final Node[] children = this.getChildSnapshot();
+    if ((index < 0) || (index >= children.length)) {
+      this.warn("getChildAtIndex(): Bad index=" + index + " for node=" + this + ".");
+      return null;
     }
+    return children[index];
   }
 
   private boolean isAncestorOf(final Node other) {
@@ -461,9 +472,9 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
 
   // TODO: Use this wherever nodeList needs to be non empty
   private ArrayList<Node> getNonEmptyNodeList() {
-    ArrayList<Node> nl = this.nodeList;
+    ChildList nl = this.nodeList;
     if (nl == null) {
-      nl = new ArrayList<>();
+      nl = new ChildList();
       this.nodeList = nl;
     }
     return nl;
@@ -552,10 +563,7 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   public boolean hasChildNodes() {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return (nl != null) && !nl.isEmpty();
-    }
+    return this.getChildSnapshot().length != 0;
   }
 
   public String getBaseURI() {
@@ -564,62 +572,35 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }
 
   public NodeList getChildNodes() {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      return new NodeListImpl(nl == null ? Collections.emptyList() : nl);
-    }
+    return new NodeListImpl(this.getChildSnapshot());
   }
 
   public Node getFirstChild() {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(0);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
-    }
+    final Node[] children = this.getChildSnapshot();
+    return children.length == 0 ? null : children[0];
   }
 
   public Node getLastChild() {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      try {
-        return nl == null ? null : nl.get(nl.size() - 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
-    }
+    final Node[] children = this.getChildSnapshot();
+    return children.length == 0 ? null : children[children.length - 1];
   }
 
   private Node getPreviousTo(final Node node) {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(node);
-      if (idx == -1) {
-        throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
-      }
-      try {
-        return nl.get(idx - 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
+    final Node[] children = this.getChildSnapshot();
+    final int idx = indexOf(children, node);
+    if (idx == -1) {
+      throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
     }
+    return idx == 0 ? null : children[idx - 1];
   }
 
   private Node getNextTo(final Node node) {
-    synchronized (this.treeLock) {
-      final ArrayList<Node> nl = this.nodeList;
-      final int idx = nl == null ? -1 : nl.indexOf(node);
-      if (idx == -1) {
-        throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
-      }
-      try {
-        return nl.get(idx + 1);
-      } catch (final IndexOutOfBoundsException iob) {
-        return null;
-      }
+    final Node[] children = this.getChildSnapshot();
+    final int idx = indexOf(children, node);
+    if (idx == -1) {
+      throw new DOMException(DOMException.NOT_FOUND_ERR, "node not found");
     }
+    return idx + 1 == children.length ? null : children[idx + 1];
   }
 
   public Node getPreviousSibling() {
@@ -780,9 +761,9 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
         final TextImpl t = new TextImpl(textContent);
         t.setOwnerDocument(this.document);
         t.setParentImpl(this);
-        ArrayList<Node> nl = this.nodeList;
+        ChildList nl = this.nodeList;
         if (nl == null) {
-          nl = new ArrayList<>();
+          nl = new ChildList();
           this.nodeList = nl;
         }
         nl.add(t);
@@ -1384,8 +1365,12 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
    * locked, and hence these methods are also being tree locked
    */
   private void handleAddedToParent(final NodeImpl parent) {
+    final boolean moved = this.attachedToDocument && parent.isAttachedToDocument();
     this.setParentImpl(parent);
     changeDocumentAttachment(parent.isAttachedToDocument());
+    if (moved && (this.document instanceof HTMLDocumentImpl)) {
+      ((HTMLDocumentImpl) this.document).getElementIndex().invalidateOrder();
+    }
   }
 
   /**
@@ -1414,7 +1399,7 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
       handleDocumentAttachmentChanged();
       if (this instanceof ElementImpl) {
         final ElementImpl elementImpl = (ElementImpl) this;
-        elementImpl.updateIdMap(attached);
+        elementImpl.updateElementIndex(attached);
       }
     }
     if (nodeList != null) {
@@ -1475,6 +1460,22 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
     ((HTMLDocumentImpl) getOwnerDocument()).getEventTargetManager().removeEventListener(this, type, listener, useCapture);
   }
 
+  private volatile NodeEventListeners eventListeners;
+
+  /**
+   * Gets the listeners registered on this node by the event target manager,
+   * or <code>null</code> if none were.
+   */
+  @HideFromJS
+  public NodeEventListeners getEventListeners() {
+    return this.eventListeners;
+  }
+
+  @HideFromJS
+  public void setEventListeners(final NodeEventListeners eventListeners) {
+    this.eventListeners = eventListeners;
+  }
+
   public boolean dispatchEvent(final Event evt) {
     if (logger.isDebugEnabled()) logger.debug("Dispatching event: " + evt);
     // dispatchEventToHandlers(evt, onEventHandlers.get(evt.getType()));
@@ -1504,98 +1505,19 @@ public abstract class NodeImpl extends AbstractScriptableDelegate implements Nod
   }*/
 
   public Element querySelector(final String query) {
-    // TODO: Optimize: Avoid getting all matches. Only first match is sufficient.
-    final NodeList matchingElements = querySelectorAll(query);
-    if (matchingElements.getLength() > 0) {
-      return (Element) matchingElements.item(0);
-    } else {
-      return null;
-    }
-  }
-
-  private static CombinedSelector[] makeSelectors(final String query) throws IOException, CSSException {
-    // this is quick way to parse the selectors. TODO: check if jStyleParser supports a better option.
-    final String tempBlock = query + " { display: none}";
-    final StyleSheet styleSheet = CSSFactory.parseString(tempBlock, null);
-    final RuleSet firstRuleBlock = (RuleSet) styleSheet.get(0);
-    final CombinedSelector[] selectors = firstRuleBlock.getSelectors();
-    return selectors;
-  }
-
-  /*
-  protected Collection<Node> getMatchingChildren(CombinedSelector selectors) {
-    final Collection<Node> matchingElements = new LinkedList<>();
-    final NodeImpl[] childrenArray = getChildrenArray();
-    if (childrenArray != null) {
-      for (final NodeImpl n : childrenArray) {
-        if (n instanceof ElementImpl) {
-          final ElementImpl element = (ElementImpl) n;
-          if (selectors.stream().anyMatch(selector -> selector.matches(element))) {
-            System.out.println("Found match: " + element + " of class: " + element.getClass());
-            matchingElements.add(element);
-          }
-          matchingElements.addAll(element.getMatchingChildren(selectors));
-        }
-      }
-    }
-    return matchingElements;
-  }*/
-
-  protected Collection<Node> getMatchingChildren(final List<Selector> selectors) {
-    final Collection<Node> matchingElements = new LinkedList<>();
-    final int numSelectors = selectors.size();
-    if (numSelectors > 0) {
-      final Selector firstSelector = selectors.get(0);
-      final NodeImpl[] childrenArray = getChildrenArray();
-      if (childrenArray != null) {
-        for (final NodeImpl n : childrenArray) {
-          if (n instanceof ElementImpl) {
-            final ElementImpl element = (ElementImpl) n;
-            if (firstSelector.matches(element)) {
-              if (numSelectors > 1) {
-                 final List<Selector> tailSelectors = selectors.subList(1, numSelectors);
-                 matchingElements.addAll(element.getMatchingChildren(tailSelectors));
-              } else {
-                matchingElements.add(element);
-              }
-            }
-            matchingElements.addAll(element.getMatchingChildren(selectors));
-          }
-        }
-      }
-    }
-    return matchingElements;
+    return CompiledSelector.forQuery(query).findFirst(this);
   }
 
   public NodeList querySelectorAll(final String query) {
-    try {
-      final CombinedSelector[] selectors = makeSelectors(query);
-      final LinkedList<Node> matches = new LinkedList<>();
-      for (final CombinedSelector selector : selectors) {
-        matches.addAll(getMatchingChildren(selector));
-      }
-      return new NodeListImpl(matches);
-    } catch (final IOException | CSSException e) {
-      e.printStackTrace();
-      throw new DOMException(DOMException.SYNTAX_ERR, "Couldn't parse selector: " + query);
-    }
+    return CompiledSelector.forQuery(query).findAll(this);
   }
 
   public NodeList getElementsByClassName(final String classNames) {
-    final String[] classNamesArray = classNames.split("\\s");
-    // TODO: escape commas in class-names
-    final String query = Arrays.stream(classNamesArray)
-        .filter(cn -> cn.length() > 0)
-        .map(cn -> "." + cn)
-        .collect(Collectors.joining(","));
-    return querySelectorAll(query);
-  }
-
-  public NodeList getElementsByTagName(final String classNames) {
-    final String[] classNamesArray = classNames.split("\\s");
-    // TODO: escape commas in class-names
-    final String query = Arrays.stream(classNamesArray).collect(Collectors.joining(","));
-    return querySelectorAll(query);
+    return CompiledSelector.forClassNames(classNames).findAll(this);
+  }
+
+  public NodeList getElementsByTagName(final String name) {
+    return CompiledSelector.forTagName(name).findAll(this);
   }
 
   // TODO: This is a plug
@@ -31,19 +31,29 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 // TODO: This needs to be live (dynamic) not a static store of nodes.
 public class NodeListImpl extends AbstractScriptableDelegate implements NodeList {
     // Note: class must be public for reflection to work.
-    private final ArrayList<Node> nodeList;
+    private final List<Node> nodeList;
 
-    // TODO: Add more constructors that take arrays for example
     public NodeListImpl(final Collection<Node> collection) {
         super();
         nodeList = new ArrayList<>(collection);
     }
 
+    /**
+     * Wraps the given array without copying it. The array must not be modified
+     * afterwards.
+     */
+    NodeListImpl(final Node[] nodes) {
+        super();
+        nodeList = Arrays.asList(nodes);
+    }
+
     public int getLength() {
         return this.nodeList.size();
     }
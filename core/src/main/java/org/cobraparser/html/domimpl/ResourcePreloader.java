@@ -0,0 +1,144 @@
+package org.cobraparser.html.domimpl;
+
+import org.cobraparser.ua.NetworkRequest;
+import org.cobraparser.ua.UserAgentContext;
+import org.cobraparser.ua.UserAgentContext.Request;
+import org.cobraparser.ua.UserAgentContext.RequestKind;
+import org.cobraparser.util.SecurityUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts fetching the external scripts and style sheets of a document as soon
+ * as their elements are attached, so that they download concurrently while the
+ * document is still being parsed. The elements are still processed one at a
+ * time, in document order, by the document's jobs; each job then takes the
+ * response that was fetched for it, waiting for it if it hasn't arrived yet.
+ * <p>
+ * A preloaded response is handed out once. A job that finds none, e.g.
+ * because the preload failed or a second element refers to the same URL,
+ * fetches the resource itself as before.
+ * <p>
+ * Preloads that no job takes, e.g. because the element was detached or its
+ * script type changed, are discarded when the element is detached or, at the
+ * latest, when the document has finished loading, so that their responses
+ * aren't kept for the lifetime of the document.
+ */
+final class ResourcePreloader {
+  private static final Logger logger = LoggerFactory.getLogger(ResourcePreloader.class);
+  private static final long MAX_WAIT_MILLIS = 60000;
+
+  private final UserAgentContext ucontext;
+  private final Map<String, Preload> preloads = new HashMap<>();
+
+  ResourcePreloader(final UserAgentContext ucontext) {
+    this.ucontext = ucontext;
+  }
+
+  void preload(final URL url, final RequestKind kind) {
+    final String key = getKey(url, kind);
+    final Preload preload;
+    synchronized (this.preloads) {
+      if (this.preloads.containsKey(key)) {
+        return;
+      }
+      preload = new Preload(this.ucontext.createHttpRequest());
+      this.preloads.put(key, preload);
+    }
+    final NetworkRequest request = preload.request;
+    request.addNetworkRequestListener(event -> {
+      final int readyState = request.getReadyState();
+      if ((readyState == NetworkRequest.STATE_COMPLETE) || (readyState == NetworkRequest.STATE_ABORTED)) {
+        preload.done.countDown();
+      }
+    });
+    SecurityUtil.doPrivileged(() -> {
+      try {
+        request.open("GET", url, true);
+        request.send(null, new Request(url, kind));
+      } catch (final IOException thrown) {
+        logger.warn("preload(): Unable to fetch " + url, thrown);
+        preload.done.countDown();
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Takes the preloaded response for the given resource, waiting for it to
+   * complete if needed.
+   *
+   * @return the completed request, or <code>null</code> if the resource wasn't
+   *         preloaded or the preload failed
+   */
+  NetworkRequest take(final URL url, final RequestKind kind) {
+    final Preload preload;
+    synchronized (this.preloads) {
+      preload = this.preloads.remove(getKey(url, kind));
+    }
+    if (preload == null) {
+      return null;
+    }
+    final NetworkRequest request = preload.request;
+    try {
+      if (!preload.done.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+        logger.warn("take(): Gave up waiting for preload of " + url);
+        request.abort();
+        return null;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      request.abort();
+      return null;
+    }
+    return request.getReadyState() == NetworkRequest.STATE_COMPLETE ? request : null;
+  }
+
+  /**
+   * Discards the preload of the given resource, if it hasn't been taken,
+   * aborting it if it is still being fetched.
+   */
+  void discard(final URL url, final RequestKind kind) {
+    final Preload preload;
+    synchronized (this.preloads) {
+      preload = this.preloads.remove(getKey(url, kind));
+    }
+    if (preload != null) {
+      preload.request.abort();
+    }
+  }
+
+  /**
+   * Discards all preloads that haven't been taken.
+   */
+  void discardAll() {
+    final Preload[] discarded;
+    synchronized (this.preloads) {
+      discarded = this.preloads.values().toArray(new Preload[0]);
+      this.preloads.clear();
+    }
+    for (final Preload preload : discarded) {
+      preload.request.abort();
+    }
+  }
+
+  private static String getKey(final URL url, final RequestKind kind) {
+    return kind + " " + url.toExternalForm();
+  }
+
+  private static final class Preload {
+    private final NetworkRequest request;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Preload(final NetworkRequest request) {
+      this.request = request;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package org.cobraparser.html.domimpl;
+
+import cz.vutbr.web.css.NodeData;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the styles of the elements below a node, as part of a parallel
+ * style pass started by {@link HTMLDocumentImpl#primeNodeData(java.util.concurrent.ForkJoinPool)}.
+ * The styles of the node's child elements are computed first, then the
+ * subtrees below them are processed concurrently, each by its own task.
+ * <p>
+ * The thread that started the pass holds the tree lock until all tasks are
+ * done, so the tasks can walk the tree without locking it. They must not take
+ * the tree lock either, as that thread is waiting for them: everything they
+ * read of the tree, including the siblings and children that selectors look
+ * at, is read through the child snapshots, which never take the lock.
+ */
+final class StylePassTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+
+  private final NodeImpl node;
+  private final NodeData nodeData;
+
+  /**
+   * @param nodeData
+   *          the style of the node, or <code>null</code> if it is not an HTML
+   *          element
+   */
+  StylePassTask(final NodeImpl node, final NodeData nodeData) {
+    this.node = node;
+    this.nodeData = nodeData;
+  }
+
+  @Override
+  protected void compute() {
+    final List<StylePassTask> subtasks = new ArrayList<>();
+    for (final Node child : this.node.getChildSnapshot()) {
+      if (child instanceof NodeImpl) {
+        final NodeImpl childImpl = (NodeImpl) child;
+        final boolean hasChildren = childImpl.getChildCount() != 0;
+        if (child instanceof HTMLElementImpl) {
+          final NodeData childNodeData = ((HTMLElementImpl) child).getNodeDataInStylePass(this.nodeData);
+          if (hasChildren) {
+            subtasks.add(new StylePassTask(childImpl, childNodeData));
+          }
+        } else if (hasChildren) {
+          subtasks.add(new StylePassTask(childImpl, null));
+        }
+      }
+    }
+    invokeAll(subtasks);
+  }
+}
@@ -0,0 +1,51 @@
+package org.cobraparser.html.domimpl;
+
+import cz.vutbr.web.css.NodeData;
+
+/**
+ * Remembers the elements whose style was computed most recently, so that an
+ * element can reuse the style of a style-equivalent sibling or cousin instead
+ * of computing its own. Rows of table cells and list items are typically styled
+ * one after the other, so a handful of entries catches most of them.
+ * <p>
+ * The entries are only candidates; whether one can really be shared is decided
+ * by {@link HTMLElementImpl#canShareStyleWith(HTMLElementImpl, NodeData)}.
+ */
+final class StyleSharingCache {
+  private static final int SIZE = 16;
+
+  private final HTMLElementImpl[] entries = new HTMLElementImpl[SIZE];
+  private int next = 0;
+
+  /**
+   * Finds a recently styled element whose style can be shared by the given
+   * element, trying the most recent ones first.
+   *
+   * @param parentNodeData
+   *          the style the element inherits from
+   */
+  synchronized HTMLElementImpl find(final HTMLElementImpl element, final NodeData parentNodeData) {
+    for (int i = 1; i <= SIZE; i++) {
+      final HTMLElementImpl candidate = this.entries[(this.next - i) & (SIZE - 1)];
+      if (candidate == null) {
+        break;
+      }
+      if ((candidate != element) && element.canShareStyleWith(candidate, parentNodeData)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  synchronized void add(final HTMLElementImpl element) {
+    this.entries[this.next] = element;
+    this.next = (this.next + 1) & (SIZE - 1);
+  }
+
+  synchronized void clear() {
+    for (int i = 0; i < SIZE; i++) {
+      this.entries[i] = null;
+    }
+    this.next = 0;
+  }
+}
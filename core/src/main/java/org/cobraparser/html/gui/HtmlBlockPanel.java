@@ -41,6 +41,7 @@ import java.awt.datatransfer.ClipboardOwner;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.*;
+import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -69,6 +70,12 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
   protected int defaultOverflowX = RenderState.OVERFLOW_AUTO;
   protected int defaultOverflowY = RenderState.OVERFLOW_SCROLL;
   private volatile boolean scrollCompleted = false;
+  private volatile TiledBackingStore backingStore = null;
+  private volatile boolean virtualizedLayout = Boolean.getBoolean("cobra.virtualizedLayout");
+  private LayoutWindow layoutWindow = null;
+  private boolean relayoutScheduled = false;
+  // Cleared by the collector when memory gets short.
+  private SoftReference<Object> memorySentinel = new SoftReference<>(new Object());
 
   public HtmlBlockPanel(final UserAgentContext pcontext, final HtmlRendererContext rcontext, final FrameContext frameContext) {
     this(ColorFactory.TRANSPARENT, false, pcontext, rcontext, frameContext);
@@ -83,6 +90,9 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     this.rcontext = rcontext;
     this.setOpaque(opaque);
     this.setBackground(background);
+    if (Boolean.getBoolean("cobra.tiledRendering")) {
+      this.backingStore = new TiledBackingStore(opaque);
+    }
     final ActionListener actionListener = new ActionListener() {
       public void actionPerformed(final ActionEvent e) {
         final String command = e.getActionCommand();
@@ -618,6 +628,23 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     // paint() instead of paintComponent(). Scrollbars
     // do not repaint correctly if we use
     // paintComponent.
+    this.checkLayoutWindow();
+    final TiledBackingStore store = this.backingStore;
+    if (store == null) {
+      this.paintContent(g);
+    } else {
+      // Widgets repaint themselves through this method without invalidating
+      // anything here, so the tiles under them are always rendered again.
+      final int count = this.getComponentCount();
+      for (int i = 0; i < count; i++) {
+        final Rectangle bounds = this.getComponent(i).getBounds();
+        store.invalidate(bounds.x, bounds.y, bounds.width, bounds.height);
+      }
+      store.paint(g, this.getWidth(), this.getHeight(), this::paintContent);
+    }
+  }
+
+  private void paintContent(final Graphics g) {
     if (this.isOpaque()) {
       // Background not painted by default in JComponent.
       final Rectangle clipBounds = g.getClipBounds();
@@ -693,6 +720,7 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
       this.clearComponents();
       final RBlock block = this.rblock;
       if (block != null) {
+        this.layoutWindow = this.virtualizedLayout ? this.createLayoutWindow(block, size.height) : null;
         block.layout(size.width, size.height, true, true, null, false);
         // Only set origin
         block.setOrigin(0, 0);
@@ -720,6 +748,96 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
     }
   }
 
+  /**
+   * Sets whether the panel keeps what it paints in a tiled raster cache, so
+   * that only the parts of the document that changed are painted again, and
+   * scrolling moves what was already painted. The default is taken from the
+   * system property <code>cobra.tiledRendering</code>.
+   */
+  public void setTiledRendering(final boolean enabled) {
+    if (enabled != (this.backingStore != null)) {
+      this.backingStore = enabled ? new TiledBackingStore(this.isOpaque()) : null;
+      this.repaint();
+    }
+  }
+
+  /**
+   * Sets whether only the blocks around the visible area are laid out, so
+   * that long documents made of many blocks take less time and memory to lay
+   * out. Blocks further down are given an estimated height until they are
+   * scrolled to. Only whole blocks are left out: all the lines of a block that
+   * is laid out are built, so a single long block, such as a
+   * <code>pre</code> element with many lines, still takes time and memory in
+   * proportion to its length. The default is taken from the system property
+   * <code>cobra.virtualizedLayout</code>.
+   */
+  public void setVirtualizedLayout(final boolean enabled) {
+    if (enabled != this.virtualizedLayout) {
+      this.virtualizedLayout = enabled;
+      this.revalidatePanel();
+    }
+  }
+
+  @Override
+  public LayoutWindow getLayoutWindow() {
+    return this.layoutWindow;
+  }
+
+  /**
+   * Lays out the content of a screen above and a screen below the visible
+   * area, so that small scrolls don't need another layout.
+   */
+  private LayoutWindow createLayoutWindow(final RBlock block, final int height) {
+    final int top = block.getVisibleContentTop();
+    final boolean memoryShort = this.memorySentinel.get() == null;
+    if (memoryShort) {
+      this.memorySentinel = new SoftReference<>(new Object());
+    }
+    return new LayoutWindow(top - height, top + (2 * height), memoryShort);
+  }
+
+  /**
+   * Lays out the document again if it was scrolled out of the part that was
+   * laid out.
+   */
+  private void checkLayoutWindow() {
+    final LayoutWindow window = this.layoutWindow;
+    final RBlock block = this.rblock;
+    if ((window != null) && (block != null) && !this.relayoutScheduled) {
+      final int top = block.getVisibleContentTop();
+      if (!window.contains(top, top + this.getHeight())) {
+        this.relayoutScheduled = true;
+        SwingUtilities.invokeLater(() -> {
+          this.relayoutScheduled = false;
+          this.revalidatePanel();
+        });
+      }
+    }
+  }
+
+  @Override
+  public void repaint(final long tm, final int x, final int y, final int width, final int height) {
+    final TiledBackingStore store = this.backingStore;
+    if (store != null) {
+      store.invalidate(x, y, width, height);
+    }
+    super.repaint(tm, x, y, width, height);
+  }
+
+  @Override
+  public void repaintScrolled(final int x, final int y, final int width, final int height, final Rectangle scrolledArea,
+      final int dx, final int dy) {
+    final TiledBackingStore store = this.backingStore;
+    if (store == null) {
+      this.repaint(x, y, width, height);
+    } else {
+      store.scroll(scrolledArea, dx, dy);
+      // Whatever surrounds the scrolled area, e.g. the scroll bars.
+      store.invalidateAround(new Rectangle(x, y, width, height), scrolledArea);
+      super.repaint(0, x, y, width, height);
+    }
+  }
+
   /**
    * Implementation of UINode.repaint().
    */
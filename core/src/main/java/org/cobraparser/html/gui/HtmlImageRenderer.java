@@ -0,0 +1,247 @@
+package org.cobraparser.html.gui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import javax.imageio.ImageIO;
+
+import org.cobraparser.html.HtmlRendererContext;
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.domimpl.NodeImpl;
+import org.cobraparser.html.domimpl.UINode;
+import org.cobraparser.html.renderer.BoundableRenderable;
+import org.cobraparser.html.renderer.DelayedPair;
+import org.cobraparser.html.renderer.FrameContext;
+import org.cobraparser.html.renderer.RBlock;
+import org.cobraparser.html.renderer.RCollection;
+import org.cobraparser.html.renderer.RElement;
+import org.cobraparser.html.renderer.RenderableContainer;
+import org.cobraparser.html.renderer.RenderableSpot;
+import org.cobraparser.html.style.RenderState;
+import org.cobraparser.ua.UserAgentContext;
+
+/**
+ * Renders a document to images, without a GUI component. This is the
+ * counterpart of {@link HtmlBlockPanel} for batch rendering: the document is
+ * laid out at a given width and painted into a <code>BufferedImage</code> in
+ * the calling thread, not in the GUI dispatch thread.
+ * <p>
+ * A renderer only keeps state for its own document, so documents can be
+ * rendered concurrently, each by its own renderer. A renderer lays out and
+ * paints one image at a time, and the document shouldn't be modified while it
+ * does. The document is expected to be loaded before it is rendered, as
+ * nothing is laid out again when resources arrive later.
+ */
+public class HtmlImageRenderer implements RenderableContainer, FrameContext {
+  private final HTMLDocumentImpl document;
+  private final RBlock rblock;
+  private Color background = Color.WHITE;
+  private int width = 0;
+  private int height = 0;
+
+  public HtmlImageRenderer(final HTMLDocumentImpl document, final UserAgentContext ucontext, final HtmlRendererContext rcontext) {
+    this.document = document;
+    final RBlock block = new RBlock(document, 0, ucontext, rcontext, this, this);
+    document.setUINode(block);
+    this.rblock = block;
+  }
+
+  /**
+   * Sets the color the images are filled with before the document is painted.
+   * Use <code>null</code> to get transparent images. The default is white.
+   */
+  public synchronized void setBackground(final Color background) {
+    this.background = background;
+  }
+
+  /**
+   * Lays out the whole document at the given width.
+   *
+   * @return The size of the document, which is the size of the image
+   *         {@link #render(int)} produces.
+   */
+  public synchronized Dimension layout(final int width) {
+    this.layout(width, 0, false, RenderState.OVERFLOW_VISIBLE);
+    return new Dimension(this.width, this.height);
+  }
+
+  /**
+   * Renders the whole document, laid out at the given width.
+   */
+  public synchronized BufferedImage render(final int width) {
+    this.layout(width, 0, false, RenderState.OVERFLOW_VISIBLE);
+    return this.paint();
+  }
+
+  /**
+   * Renders the top of the document, laid out in a viewport of the given size.
+   * Content that doesn't fit in the viewport is cut out rather than scrolled.
+   */
+  public synchronized BufferedImage render(final int width, final int height) {
+    this.layout(width, height, true, RenderState.OVERFLOW_HIDDEN);
+    return this.paint();
+  }
+
+  /**
+   * Renders the whole document, laid out at the given width, and writes the
+   * image in PNG format.
+   */
+  public void writePNG(final int width, final OutputStream out) throws IOException {
+    ImageIO.write(this.render(width), "png", out);
+  }
+
+  private void layout(final int width, final int height, final boolean expandHeight, final int overflowY) {
+    this.document.primeNodeData();
+    final RBlock block = this.rblock;
+    block.setDefaultOverflowX(RenderState.OVERFLOW_HIDDEN);
+    block.setDefaultOverflowY(overflowY);
+    block.layout(width, height, true, expandHeight, null, false);
+    block.setOrigin(0, 0);
+    block.updateWidgetBounds(0, 0);
+    this.width = Math.max(1, expandHeight ? width : block.width);
+    this.height = Math.max(1, expandHeight ? height : block.height);
+  }
+
+  private BufferedImage paint() {
+    final Color background = this.background;
+    final BufferedImage image = new BufferedImage(this.width, this.height, background == null ? BufferedImage.TYPE_INT_ARGB
+        : BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    try {
+      if (background != null) {
+        g.setColor(background);
+        g.fillRect(0, 0, this.width, this.height);
+      }
+      g.setClip(0, 0, this.width, this.height);
+      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      this.rblock.paint(g);
+    } finally {
+      g.dispose();
+    }
+    return image;
+  }
+
+  public void resetSelection(final RenderableSpot rpoint) {
+    // There's no selection in images.
+  }
+
+  public void expandSelection(final RenderableSpot rpoint) {
+    // There's no selection in images.
+  }
+
+  public void delayedRelayout(final NodeImpl node) {
+    // Laid out again when the next image is rendered.
+    final UINode uiNode = node.findUINode();
+    if (uiNode != null) {
+      final RElement relement = (RElement) uiNode;
+      relement.invalidateLayoutUpTree();
+      relement.invalidateLayoutDeep();
+    }
+  }
+
+  public Component addComponent(final Component component) {
+    // Widgets are painted by their renderables, they don't need a parent.
+    return component;
+  }
+
+  public void invalidateLayoutUpTree() {
+  }
+
+  public void repaint(final int x, final int y, final int width, final int height) {
+    // Each image is painted from scratch.
+  }
+
+  public void relayout() {
+    // Laid out again when the next image is rendered.
+  }
+
+  public void updateAllWidgetBounds() {
+    this.rblock.updateWidgetBounds(0, 0);
+  }
+
+  public Color getPaintedBackgroundColor() {
+    return this.background;
+  }
+
+  public Point getGUIPoint(final int clientX, final int clientY) {
+    return new Point(clientX, clientY);
+  }
+
+  public void focus() {
+  }
+
+  public void addDelayedPair(final DelayedPair pair) {
+    throw new UnsupportedOperationException("Delayed pairs are not being handled at this level.");
+  }
+
+  public Collection<DelayedPair> getDelayedPairs() {
+    throw new UnsupportedOperationException("Delayed pairs are not being handled at this level.");
+  }
+
+  public RenderableContainer getParentContainer() {
+    return null;
+  }
+
+  public void clearDelayedPairs() {
+    throw new UnsupportedOperationException("Delayed pairs are not being handled at this level.");
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getX() {
+    return 0;
+  }
+
+  public int getY() {
+    return 0;
+  }
+
+  public Insets getInsets(final boolean hscroll, final boolean vscroll) {
+    return new Insets(0, 0, 0, 0);
+  }
+
+  public Insets getInsetsMarginBorder(final boolean hscroll, final boolean vscroll) {
+    return new Insets(0, 0, 0, 0);
+  }
+
+  public Rectangle getVisualBounds() {
+    return new Rectangle(0, 0, this.getVisualWidth(), this.getVisualHeight());
+  }
+
+  public int getVisualWidth() {
+    return this.rblock.getVisualWidth();
+  }
+
+  public int getVisualHeight() {
+    return this.rblock.getVisualHeight();
+  }
+
+  public Point translateDescendentPoint(final BoundableRenderable descendent, final int x, final int y) {
+    return this.rblock.translateDescendentPoint(descendent, x, y);
+  }
+
+  public Point getOriginRelativeTo(final RCollection bodyLayout) {
+    return new Point(0, 0);
+  }
+
+  public Point getOriginRelativeToAbs(final RCollection bodyLayout) {
+    return new Point(0, 0);
+  }
+}
@@ -0,0 +1,275 @@
+package org.cobraparser.html.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A raster cache for a panel, split in fixed-size tiles. Painting the panel
+ * draws the tiles, and only tiles that were invalidated since they were last
+ * rendered are rendered again. When content is scrolled, the tiles it covers
+ * are moved instead of rendered again, as long as the pixels they need are
+ * still valid.
+ * <p>
+ * Tiles are kept at the resolution of the device, so the cache is dropped
+ * whenever the scale of the graphics it is painted to changes.
+ * <p>
+ * Tiles can be invalidated from any thread. Painting and scrolling are
+ * expected to happen in the GUI thread.
+ */
+final class TiledBackingStore {
+  private static final int TILE_SIZE = 256;
+
+  private final boolean opaque;
+  private int columns = 0;
+  private int rows = 0;
+  private double scale = 0;
+  private GraphicsConfiguration configuration = null;
+  private BufferedImage[] tiles = new BufferedImage[0];
+  private BufferedImage[] spareTiles = new BufferedImage[0];
+  // Guarded by this
+  private boolean[] valid = new boolean[0];
+
+  TiledBackingStore(final boolean opaque) {
+    this.opaque = opaque;
+  }
+
+  synchronized void invalidateAll() {
+    Arrays.fill(this.valid, false);
+  }
+
+  synchronized void invalidate(final int x, final int y, final int width, final int height) {
+    if ((width <= 0) || (height <= 0)) {
+      return;
+    }
+    final int firstColumn = Math.max(0, Math.floorDiv(x, TILE_SIZE));
+    final int lastColumn = Math.min(this.columns - 1, Math.floorDiv((x + width) - 1, TILE_SIZE));
+    final int firstRow = Math.max(0, Math.floorDiv(y, TILE_SIZE));
+    final int lastRow = Math.min(this.rows - 1, Math.floorDiv((y + height) - 1, TILE_SIZE));
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        this.valid[(row * this.columns) + column] = false;
+      }
+    }
+  }
+
+  /**
+   * Invalidates the part of <code>outer</code> that is not in
+   * <code>inner</code>.
+   */
+  void invalidateAround(final Rectangle outer, final Rectangle inner) {
+    final Rectangle in = outer.intersection(inner);
+    if (in.isEmpty()) {
+      this.invalidate(outer.x, outer.y, outer.width, outer.height);
+      return;
+    }
+    this.invalidate(outer.x, outer.y, outer.width, in.y - outer.y);
+    this.invalidate(outer.x, in.y + in.height, outer.width, (outer.y + outer.height) - (in.y + in.height));
+    this.invalidate(outer.x, in.y, in.x - outer.x, in.height);
+    this.invalidate(in.x + in.width, in.y, (outer.x + outer.width) - (in.x + in.width), in.height);
+  }
+
+  /**
+   * Moves the pixels in the given area by the given offset. Tiles for which
+   * some of the pixels are not available are invalidated instead.
+   */
+  void scroll(final Rectangle area, final int dx, final int dy) {
+    final double scale = this.scale;
+    final double deviceDx = dx * scale;
+    final double deviceDy = dy * scale;
+    if ((scale == 0) || (deviceDx != Math.rint(deviceDx)) || (deviceDy != Math.rint(deviceDy))) {
+      // Fractional device offsets would blur the moved pixels.
+      this.invalidate(area.x, area.y, area.width, area.height);
+      return;
+    }
+    final boolean[] validBefore;
+    synchronized (this) {
+      validBefore = this.valid.clone();
+    }
+    final int columns = this.columns;
+    final int rows = this.rows;
+    final boolean[] moved = new boolean[validBefore.length];
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        final int index = (row * columns) + column;
+        final Rectangle tileBounds = new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        final Rectangle target = tileBounds.intersection(area);
+        if (target.isEmpty()) {
+          continue;
+        }
+        final Rectangle source = new Rectangle(target.x - dx, target.y - dy, target.width, target.height);
+        final boolean keepsOutside = area.contains(tileBounds) || validBefore[index];
+        if (keepsOutside && area.contains(source) && this.isValid(validBefore, source)) {
+          this.moveInto(index, tileBounds, target, dx, dy);
+          moved[index] = true;
+        }
+      }
+    }
+    synchronized (this) {
+      for (int row = 0; row < rows; row++) {
+        for (int column = 0; column < columns; column++) {
+          final int index = (row * columns) + column;
+          if (moved[index]) {
+            final BufferedImage image = this.tiles[index];
+            this.tiles[index] = this.spareTiles[index];
+            this.spareTiles[index] = image;
+            // Unless it was invalidated while it was being moved.
+            this.valid[index] = this.valid[index] == validBefore[index];
+          } else if (area.intersects(new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE))) {
+            this.valid[index] = false;
+          }
+        }
+      }
+    }
+  }
+
+  private boolean isValid(final boolean[] validBefore, final Rectangle bounds) {
+    final int firstColumn = Math.max(0, Math.floorDiv(bounds.x, TILE_SIZE));
+    final int lastColumn = Math.floorDiv((bounds.x + bounds.width) - 1, TILE_SIZE);
+    final int firstRow = Math.max(0, Math.floorDiv(bounds.y, TILE_SIZE));
+    final int lastRow = Math.floorDiv((bounds.y + bounds.height) - 1, TILE_SIZE);
+    if ((lastColumn >= this.columns) || (lastRow >= this.rows)) {
+      return false;
+    }
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        final int index = (row * this.columns) + column;
+        if (!validBefore[index] || (this.tiles[index] == null)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Composes the moved tile in the spare image of the tile, from the current
+   * tiles, which are left untouched until all moved tiles are composed.
+   */
+  private void moveInto(final int index, final Rectangle tileBounds, final Rectangle target, final int dx, final int dy) {
+    final BufferedImage current = this.tiles[index];
+    BufferedImage spare = this.spareTiles[index];
+    if (spare == null) {
+      spare = this.createTile();
+      this.spareTiles[index] = spare;
+    }
+    final Graphics2D g = spare.createGraphics();
+    try {
+      g.setComposite(AlphaComposite.Src);
+      if (current != null) {
+        g.drawImage(current, 0, 0, null);
+      }
+      g.scale(this.scale, this.scale);
+      g.translate(-tileBounds.x, -tileBounds.y);
+      g.clip(target);
+      final Rectangle source = new Rectangle(target.x - dx, target.y - dy, target.width, target.height);
+      final int firstColumn = Math.floorDiv(source.x, TILE_SIZE);
+      final int lastColumn = Math.floorDiv((source.x + source.width) - 1, TILE_SIZE);
+      final int firstRow = Math.floorDiv(source.y, TILE_SIZE);
+      final int lastRow = Math.floorDiv((source.y + source.height) - 1, TILE_SIZE);
+      for (int row = firstRow; row <= lastRow; row++) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+          final BufferedImage sourceTile = this.tiles[(row * this.columns) + column];
+          g.drawImage(sourceTile, (column * TILE_SIZE) + dx, (row * TILE_SIZE) + dy, TILE_SIZE, TILE_SIZE, null);
+        }
+      }
+    } finally {
+      g.dispose();
+    }
+  }
+
+  /**
+   * Paints the panel from the tiles, rendering the invalid tiles with the
+   * given painter first.
+   */
+  void paint(final Graphics g, final int width, final int height, final Consumer<Graphics> painter) {
+    if (!(g instanceof Graphics2D)) {
+      painter.accept(g);
+      return;
+    }
+    final Graphics2D g2 = (Graphics2D) g;
+    final AffineTransform transform = g2.getTransform();
+    if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+      // Tiles can't be kept for rotated or skewed output, e.g. printing.
+      painter.accept(g);
+      return;
+    }
+    this.configuration = g2.getDeviceConfiguration();
+    this.ensureTiles(width, height, transform.getScaleX());
+    final Rectangle clip = g.getClipBounds() == null ? new Rectangle(0, 0, width, height) : g.getClipBounds();
+    final int firstColumn = Math.max(0, Math.floorDiv(clip.x, TILE_SIZE));
+    final int lastColumn = Math.min(this.columns - 1, Math.floorDiv((clip.x + clip.width) - 1, TILE_SIZE));
+    final int firstRow = Math.max(0, Math.floorDiv(clip.y, TILE_SIZE));
+    final int lastRow = Math.min(this.rows - 1, Math.floorDiv((clip.y + clip.height) - 1, TILE_SIZE));
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        final int index = (row * this.columns) + column;
+        final boolean needsRendering;
+        synchronized (this) {
+          // Marked valid before rendering, so that invalidations made while
+          // rendering are kept.
+          needsRendering = !this.valid[index];
+          this.valid[index] = true;
+        }
+        if (needsRendering || (this.tiles[index] == null)) {
+          this.render(index, column * TILE_SIZE, row * TILE_SIZE, painter);
+        }
+        g.drawImage(this.tiles[index], column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE, null);
+      }
+    }
+  }
+
+  private void render(final int index, final int x, final int y, final Consumer<Graphics> painter) {
+    BufferedImage tile = this.tiles[index];
+    if (tile == null) {
+      tile = this.createTile();
+      this.tiles[index] = tile;
+    }
+    final Graphics2D g = tile.createGraphics();
+    try {
+      if (!this.opaque) {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, tile.getWidth(), tile.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+      }
+      g.scale(this.scale, this.scale);
+      g.translate(-x, -y);
+      g.clipRect(x, y, TILE_SIZE, TILE_SIZE);
+      painter.accept(g);
+    } finally {
+      g.dispose();
+    }
+  }
+
+  private BufferedImage createTile() {
+    final int size = (int) Math.ceil(TILE_SIZE * this.scale);
+    final GraphicsConfiguration configuration = this.configuration;
+    if (configuration == null) {
+      return new BufferedImage(size, size, this.opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+    return configuration.createCompatibleImage(size, size, this.opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+  }
+
+  private void ensureTiles(final int width, final int height, final double scale) {
+    final int columns = Math.max(0, (width + TILE_SIZE - 1) / TILE_SIZE);
+    final int rows = Math.max(0, (height + TILE_SIZE - 1) / TILE_SIZE);
+    if ((columns == this.columns) && (rows == this.rows) && (scale == this.scale)) {
+      return;
+    }
+    synchronized (this) {
+      this.columns = columns;
+      this.rows = rows;
+      this.scale = scale;
+      this.tiles = new BufferedImage[columns * rows];
+      this.spareTiles = new BufferedImage[columns * rows];
+      this.valid = new boolean[columns * rows];
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package org.cobraparser.html.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * An unsynchronized reader that scans a reusable <code>char[]</code> window
+ * filled in bulk from a source reader. Like {@link java.io.LineNumberReader},
+ * it converts <code>\r\n</code> and lone <code>\r</code> to <code>\n</code>.
+ * Line numbers are tracked lazily, only when {@link #getLineNumber()} is called
+ * or the window is refilled, so the per-character fast path does no
+ * bookkeeping.
+ * <p>
+ * When the source is a {@link WritableLineReader}, text written to it while
+ * this reader is attached is spliced into the window at the current read
+ * position, which preserves <code>document.write</code> semantics even though
+ * the source has been read ahead.
+ * <p>
+ * A stall handler may be set to find out when the window is exhausted and the
+ * source has no characters ready, i.e. right before a read that would block
+ * waiting for more input to arrive.
+ * <p>
+ * Note: Not thread safe.
+ */
+public final class CharWindowReader extends Reader {
+  private static final int WINDOW_SIZE = 8192;
+
+  private final Reader source;
+  private char[] buf = new char[WINDOW_SIZE];
+  private int pos = 0;
+  private int limit = 0;
+
+  private int lineNumber = 0;
+  private int countedPos = 0;
+  private boolean skipLF = false;
+  private Runnable stallHandler = null;
+
+  public CharWindowReader(final Reader source) {
+    this.source = source;
+    if (source instanceof WritableLineReader) {
+      ((WritableLineReader) source).attachWindow(this);
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if ((this.pos >= this.limit) && !this.fill()) {
+      return -1;
+    }
+    return this.buf[this.pos++];
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if ((this.pos >= this.limit) && !this.fill()) {
+      return -1;
+    }
+    final int n = Math.min(len, this.limit - this.pos);
+    System.arraycopy(this.buf, this.pos, cbuf, off, n);
+    this.pos += n;
+    return n;
+  }
+
+  /**
+   * Appends characters to <code>sb</code> up to the first occurrence of
+   * <code>stop</code>, scanning the window directly. The stop character is
+   * consumed but not appended.
+   *
+   * @return The stop character, or -1 if the end of the stream was reached
+   *         first.
+   */
+  public int readUntil(final char stop, final StringBuilder sb) throws IOException {
+    for (;;) {
+      final char[] buf = this.buf;
+      final int start = this.pos;
+      final int limit = this.limit;
+      for (int i = start; i < limit; i++) {
+        if (buf[i] == stop) {
+          sb.append(buf, start, i - start);
+          this.pos = i + 1;
+          return stop;
+        }
+      }
+      sb.append(buf, start, limit - start);
+      this.pos = limit;
+      if (!this.fill()) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Sets a handler that is run before the source is read while it has no
+   * characters ready.
+   */
+  public void setStallHandler(final Runnable stallHandler) {
+    this.stallHandler = stallHandler;
+  }
+
+  /**
+   * Gets the number of line terminators consumed so far.
+   */
+  public int getLineNumber() {
+    this.countLines(this.pos);
+    return this.lineNumber;
+  }
+
+  /**
+   * Inserts text at the current read position, so that it is returned before
+   * any characters that have already been read ahead from the source.
+   */
+  public void insert(final String text) {
+    final int len = text.length();
+    if (len == 0) {
+      return;
+    }
+    this.countLines(this.pos);
+    if (this.pos >= len) {
+      this.pos -= len;
+      text.getChars(0, len, this.buf, this.pos);
+    } else {
+      final int remaining = this.limit - this.pos;
+      final char[] newBuf = new char[Math.max(WINDOW_SIZE, len + remaining)];
+      text.getChars(0, len, newBuf, 0);
+      System.arraycopy(this.buf, this.pos, newBuf, len, remaining);
+      this.buf = newBuf;
+      this.pos = 0;
+      this.limit = len + remaining;
+    }
+    this.countedPos = this.pos;
+  }
+
+  /**
+   * Detaches this reader from its source. Characters that were read ahead but
+   * not consumed are handed back to a {@link WritableLineReader} source;
+   * otherwise they are discarded. The source is not closed.
+   */
+  public void release() throws IOException {
+    if (this.source instanceof WritableLineReader) {
+      final WritableLineReader wlr = (WritableLineReader) this.source;
+      wlr.detachWindow(this);
+      if (this.pos < this.limit) {
+        wlr.write(new String(this.buf, this.pos, this.limit - this.pos));
+      }
+    }
+    this.pos = 0;
+    this.limit = 0;
+    this.countedPos = 0;
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    return (this.pos < this.limit) || this.source.ready();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.release();
+    this.source.close();
+  }
+
+  private boolean fill() throws IOException {
+    this.countLines(this.limit);
+    final Runnable stallHandler = this.stallHandler;
+    if ((stallHandler != null) && !this.source.ready()) {
+      stallHandler.run();
+    }
+    int n;
+    do {
+      n = this.source.read(this.buf, 0, this.buf.length);
+    } while (n == 0);
+    this.pos = 0;
+    this.countedPos = 0;
+    if (n < 0) {
+      this.limit = 0;
+      return false;
+    }
+    this.limit = this.normalizeLineBreaks(n);
+    if (this.limit == 0) {
+      // The chunk was a single LF following a CR.
+      return this.fill();
+    }
+    return true;
+  }
+
+  private int normalizeLineBreaks(final int n) {
+    final char[] buf = this.buf;
+    boolean skipLF = this.skipLF;
+    int out = 0;
+    for (int i = 0; i < n; i++) {
+      final char ch = buf[i];
+      if (ch == '\r') {
+        buf[out++] = '\n';
+        skipLF = true;
+      } else if (ch == '\n' && skipLF) {
+        skipLF = false;
+      } else {
+        buf[out++] = ch;
+        skipLF = false;
+      }
+    }
+    this.skipLF = skipLF;
+    return out;
+  }
+
+  private void countLines(final int end) {
+    final char[] buf = this.buf;
+    int lines = this.lineNumber;
+    for (int i = this.countedPos; i < end; i++) {
+      if (buf[i] == '\n') {
+        lines++;
+      }
+    }
+    this.lineNumber = lines;
+    this.countedPos = end;
+  }
+}
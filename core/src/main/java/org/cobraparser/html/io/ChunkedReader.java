@@ -0,0 +1,189 @@
+package org.cobraparser.html.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A reader that is fed with chunks of characters or bytes as they arrive, e.g.
+ * from a network listener. Reads block until a chunk is pushed or the input is
+ * finished. This lets a document be loaded progressively: pass the reader to
+ * {@link org.cobraparser.html.parser.DocumentBuilderImpl#createDocument(org.xml.sax.InputSource, String)},
+ * call <code>load()</code> on the document in a parser thread, and push
+ * chunks from the producer thread. The parser publishes what it has built so
+ * far whenever it runs out of input.
+ */
+public class ChunkedReader extends Reader {
+  private final CharsetDecoder decoder;
+  private final StringBuilder pending = new StringBuilder();
+  private int pendingOffset = 0;
+  private ByteBuffer leftoverBytes = null;
+  private boolean finished = false;
+  private IOException failure = null;
+
+  /**
+   * Constructs a reader that accepts character chunks only.
+   */
+  public ChunkedReader() {
+    this.decoder = null;
+  }
+
+  /**
+   * Constructs a reader that accepts both character chunks and byte chunks,
+   * decoding the latter with the given character set.
+   */
+  public ChunkedReader(final Charset charset) {
+    this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  public void push(final String text) {
+    synchronized (this.lock) {
+      this.checkOpen();
+      this.pending.append(text);
+      this.lock.notifyAll();
+    }
+  }
+
+  public void push(final char[] cbuf, final int off, final int len) {
+    synchronized (this.lock) {
+      this.checkOpen();
+      this.pending.append(cbuf, off, len);
+      this.lock.notifyAll();
+    }
+  }
+
+  /**
+   * Pushes a chunk of bytes. A multi-byte sequence split across chunks is
+   * decoded once the rest of it arrives.
+   */
+  public void push(final byte[] bytes, final int off, final int len) {
+    final CharsetDecoder decoder = this.decoder;
+    if (decoder == null) {
+      throw new IllegalStateException("No character set was given for byte chunks.");
+    }
+    synchronized (this.lock) {
+      this.checkOpen();
+      final ByteBuffer leftover = this.leftoverBytes;
+      final ByteBuffer in;
+      if (leftover == null) {
+        in = ByteBuffer.wrap(bytes, off, len);
+      } else {
+        in = ByteBuffer.allocate(leftover.remaining() + len);
+        in.put(leftover).put(bytes, off, len).flip();
+      }
+      this.decode(in, false);
+      this.leftoverBytes = in.hasRemaining() ? ByteBuffer.allocate(in.remaining()).put(in).flip() : null;
+      this.lock.notifyAll();
+    }
+  }
+
+  /**
+   * Marks the end of input. Pending reads return what is left and then -1.
+   */
+  public void finish() {
+    synchronized (this.lock) {
+      if (this.finished) {
+        return;
+      }
+      final CharsetDecoder decoder = this.decoder;
+      if (decoder != null) {
+        final ByteBuffer leftover = this.leftoverBytes;
+        this.decode(leftover == null ? ByteBuffer.allocate(0) : leftover, true);
+        final CharBuffer out = CharBuffer.allocate(16);
+        decoder.flush(out);
+        out.flip();
+        this.pending.append(out);
+        this.leftoverBytes = null;
+      }
+      this.finished = true;
+      this.lock.notifyAll();
+    }
+  }
+
+  /**
+   * Ends the input abnormally. Subsequent reads throw the given exception.
+   */
+  public void abort(final IOException cause) {
+    synchronized (this.lock) {
+      this.failure = cause;
+      this.finished = true;
+      this.lock.notifyAll();
+    }
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    synchronized (this.lock) {
+      for (;;) {
+        if (this.failure != null) {
+          throw this.failure;
+        }
+        final int available = this.pending.length() - this.pendingOffset;
+        if (available > 0) {
+          final int n = Math.min(len, available);
+          this.pending.getChars(this.pendingOffset, this.pendingOffset + n, cbuf, off);
+          this.pendingOffset += n;
+          if (this.pendingOffset == this.pending.length()) {
+            this.pending.setLength(0);
+            this.pendingOffset = 0;
+          } else if (this.pendingOffset > (this.pending.length() >> 1)) {
+            this.pending.delete(0, this.pendingOffset);
+            this.pendingOffset = 0;
+          }
+          return n;
+        }
+        if (this.finished) {
+          return -1;
+        }
+        try {
+          this.lock.wait();
+        } catch (final InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a chunk.");
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if a read would not block.
+   */
+  @Override
+  public boolean ready() {
+    synchronized (this.lock) {
+      return this.finished || (this.pending.length() > this.pendingOffset);
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this.lock) {
+      this.pending.setLength(0);
+      this.pendingOffset = 0;
+      this.leftoverBytes = null;
+      this.finished = true;
+      this.lock.notifyAll();
+    }
+  }
+
+  private void checkOpen() {
+    if (this.finished) {
+      throw new IllegalStateException("Input already finished.");
+    }
+  }
+
+  private void decode(final ByteBuffer in, final boolean endOfInput) {
+    final CharBuffer out = CharBuffer.allocate((int) (in.remaining() * this.decoder.maxCharsPerByte()) + 1);
+    this.decoder.decode(in, out, endOfInput);
+    out.flip();
+    this.pending.append(out);
+  }
+}
@@ -98,6 +98,17 @@ public class WritableLineReader extends LineNumberReader {
   }
 
   private StringBuffer writeBuffer = null;
+  private CharWindowReader window = null;
+
+  void attachWindow(final CharWindowReader window) {
+    this.window = window;
+  }
+
+  void detachWindow(final CharWindowReader window) {
+    if (this.window == window) {
+      this.window = null;
+    }
+  }
 
   /**
    * Note: Not implicitly thread safe.
@@ -107,6 +118,12 @@ public class WritableLineReader extends LineNumberReader {
    */
   public void write(final String text) throws IOException {
     // Document overrides this to know that new data is coming.
+    final CharWindowReader window = this.window;
+    if (window != null) {
+      // The parser has read ahead, so written text goes in front of it.
+      window.insert(text);
+      return;
+    }
     StringBuffer sb = this.writeBuffer;
     if (sb == null) {
       sb = new StringBuffer();
@@ -17,6 +17,13 @@ public interface EventTargetManager {
 
     boolean dispatchEvent(final NodeImpl node, final Event evt) throws EventException;
 
+    /**
+     * Checks whether an event of the given type dispatched to the node would
+     * reach any listener, so that callers can skip creating and dispatching
+     * events nobody listens to.
+     */
+    boolean hasEventListeners(final NodeImpl node, final String type);
+
     void removeEventListener(final NodeImpl node, final String type, final EventListener listener, final boolean useCapture);
 
     void removeEventListener(final NodeImpl node, final String type, final Object listener, final boolean useCapture);
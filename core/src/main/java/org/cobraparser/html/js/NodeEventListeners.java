@@ -0,0 +1,191 @@
+package org.cobraparser.html.js;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.events.EventListener;
+
+/**
+ * The event listeners registered on a node, kept on the node itself by an
+ * {@link EventTargetManager}. Event types are looked up by an interned id, see
+ * {@link #getTypeId(String)}.
+ * <p>
+ * The listener arrays are copied when listeners are added or removed and never
+ * modified afterwards, so dispatch can read and iterate them from any thread
+ * without locking or copying.
+ */
+public final class NodeEventListeners {
+  private static final Map<String, Integer> TYPE_IDS = new ConcurrentHashMap<>();
+  private static final AtomicInteger typeIdCounter = new AtomicInteger();
+
+  private static final Entry[] NO_ENTRIES = new Entry[0];
+  private static final EventListener[] NO_LISTENERS = new EventListener[0];
+  private static final Object[] NO_FUNCTIONS = new Object[0];
+
+  private final Object owner;
+  private volatile Entry[] entries = NO_ENTRIES;
+
+  /**
+   * @param owner Identifies the manager the listeners were registered with.
+   *          Listeners of another owner are not dispatched by a manager.
+   */
+  public NodeEventListeners(final Object owner) {
+    this.owner = owner;
+  }
+
+  public static int getTypeId(final String type) {
+    final Integer id = TYPE_IDS.get(type);
+    if (id != null) {
+      return id;
+    }
+    return TYPE_IDS.computeIfAbsent(type, t -> typeIdCounter.getAndIncrement());
+  }
+
+  /**
+   * Gets the id of the given event type, or -1 if no listener was ever
+   * registered for the type.
+   */
+  public static int findTypeId(final String type) {
+    final Integer id = TYPE_IDS.get(type);
+    return id == null ? -1 : id;
+  }
+
+  public Object getOwner() {
+    return this.owner;
+  }
+
+  public boolean hasListeners(final int typeId) {
+    return (typeId != -1) && (this.getEntry(typeId) != null);
+  }
+
+  /**
+   * Gets the Java listeners of the given type. The array must not be modified.
+   */
+  public EventListener[] getListeners(final int typeId) {
+    final Entry entry = this.getEntry(typeId);
+    return entry == null ? NO_LISTENERS : entry.listeners;
+  }
+
+  /**
+   * Gets the script functions of the given type. The array must not be
+   * modified.
+   */
+  public Object[] getFunctions(final int typeId) {
+    final Entry entry = this.getEntry(typeId);
+    return entry == null ? NO_FUNCTIONS : entry.functions;
+  }
+
+  public boolean containsListener(final int typeId, final EventListener listener) {
+    return indexOf(this.getListeners(typeId), listener) != -1;
+  }
+
+  public boolean containsFunction(final int typeId, final Object function) {
+    return indexOf(this.getFunctions(typeId), function) != -1;
+  }
+
+  public synchronized void addListener(final int typeId, final EventListener listener) {
+    final Entry entry = this.getEntry(typeId);
+    final EventListener[] listeners = entry == null ? NO_LISTENERS : entry.listeners;
+    this.putEntry(typeId, append(listeners, listener), entry == null ? NO_FUNCTIONS : entry.functions);
+  }
+
+  public synchronized void addFunction(final int typeId, final Object function) {
+    final Entry entry = this.getEntry(typeId);
+    final Object[] functions = entry == null ? NO_FUNCTIONS : entry.functions;
+    this.putEntry(typeId, entry == null ? NO_LISTENERS : entry.listeners, append(functions, function));
+  }
+
+  public synchronized void removeListener(final int typeId, final EventListener listener) {
+    final Entry entry = this.getEntry(typeId);
+    if (entry != null) {
+      final int index = indexOf(entry.listeners, listener);
+      if (index != -1) {
+        this.putEntry(typeId, remove(entry.listeners, index), entry.functions);
+      }
+    }
+  }
+
+  public synchronized void removeFunction(final int typeId, final Object function) {
+    final Entry entry = this.getEntry(typeId);
+    if (entry != null) {
+      final int index = indexOf(entry.functions, function);
+      if (index != -1) {
+        this.putEntry(typeId, entry.listeners, remove(entry.functions, index));
+      }
+    }
+  }
+
+  private Entry getEntry(final int typeId) {
+    final Entry[] entries = this.entries;
+    for (final Entry entry : entries) {
+      if (entry.typeId == typeId) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Replaces the entry of the given type, or drops it if it has no listeners
+   * left. Only called while synchronized.
+   */
+  private void putEntry(final int typeId, final EventListener[] listeners, final Object[] functions) {
+    final Entry[] entries = this.entries;
+    int index = -1;
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i].typeId == typeId) {
+        index = i;
+        break;
+      }
+    }
+    if ((listeners.length == 0) && (functions.length == 0)) {
+      if (index != -1) {
+        this.entries = remove(entries, index);
+      }
+    } else {
+      final Entry entry = new Entry(typeId, listeners, functions);
+      if (index == -1) {
+        this.entries = append(entries, entry);
+      } else {
+        final Entry[] newEntries = entries.clone();
+        newEntries[index] = entry;
+        this.entries = newEntries;
+      }
+    }
+  }
+
+  private static int indexOf(final Object[] array, final Object item) {
+    for (int i = 0; i < array.length; i++) {
+      if (java.util.Objects.equals(array[i], item)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static <T> T[] append(final T[] array, final T item) {
+    final T[] newArray = Arrays.copyOf(array, array.length + 1);
+    newArray[array.length] = item;
+    return newArray;
+  }
+
+  private static <T> T[] remove(final T[] array, final int index) {
+    final T[] newArray = Arrays.copyOf(array, array.length - 1);
+    System.arraycopy(array, index + 1, newArray, index, array.length - index - 1);
+    return newArray;
+  }
+
+  private static final class Entry {
+    private final int typeId;
+    private final EventListener[] listeners;
+    private final Object[] functions;
+
+    private Entry(final int typeId, final EventListener[] listeners, final Object[] functions) {
+      this.typeId = typeId;
+      this.listeners = listeners;
+      this.functions = functions;
+    }
+  }
+}
@@ -41,7 +41,8 @@ import java.util.regex.Pattern;
 
 import org.cobraparser.html.domimpl.DocumentTypeImpl;
 import org.cobraparser.html.domimpl.HTMLDocumentImpl;
-import org.cobraparser.html.io.WritableLineReader;
+import org.cobraparser.html.domimpl.NodeImpl;
+import org.cobraparser.html.io.CharWindowReader;
 import org.cobraparser.ua.UserAgentContext;
 import org.cobraparser.util.ArrayUtilities;
 import org.slf4j.Logger;
@@ -537,8 +538,7 @@ public class HtmlParser {
    *           Thrown if the character set is not supported.
    */
   public void parse(final InputStream in, final String charset) throws IOException, SAXException, UnsupportedEncodingException {
-    final WritableLineReader reader = new WritableLineReader(new InputStreamReader(in, charset));
-    this.parse(reader);
+    this.parse(new InputStreamReader(in, charset));
   }
 
   /**
@@ -553,12 +553,11 @@ public class HtmlParser {
    *           Thrown if there are parse errors.
    */
   public void parse(final Reader reader) throws IOException, SAXException {
-    this.parse(new LineNumberReader(reader));
+    this.parseImpl(reader, this.document);
   }
 
   public void parse(final LineNumberReader reader) throws IOException, SAXException {
-    final Document doc = this.document;
-    this.parse(reader, doc);
+    this.parseImpl(reader, this.document);
   }
 
   /**
@@ -573,7 +572,7 @@ public class HtmlParser {
    * @throws SAXException
    */
   public void parse(final Reader reader, final Node parent) throws IOException, SAXException {
-    this.parse(new LineNumberReader(reader), parent);
+    this.parseImpl(reader, parent);
   }
 
   /**
@@ -588,17 +587,28 @@ public class HtmlParser {
    * @throws SAXException
    */
   public void parse(final LineNumberReader reader, final Node parent) throws IOException, SAXException {
+    this.parseImpl(reader, parent);
+  }
+
+  /**
+   * Tokenizes through a {@link CharWindowReader}, which scans text runs in
+   * bulk instead of pulling one character at a time from the given reader.
+   */
+  private void parseImpl(final Reader reader, final Node parent) throws IOException, SAXException {
 
     // Note: Parser does not clear document. It could be used incrementally.
+    final CharWindowReader windowReader = new CharWindowReader(reader);
+    windowReader.setStallHandler(this::publishOpenNode);
     try {
       parent.setUserData(MODIFYING_KEY, Boolean.TRUE, null);
       try {
-        while (this.parseToken(parent, reader, null, new LinkedList<String>()) != TOKEN_EOD) {
+        while (this.parseToken(parent, windowReader, null, new LinkedList<String>()) != TOKEN_EOD) {
         }
       } catch (final StopException se) {
         throw new SAXException("Unexpected flow exception", se);
       }
     } finally {
+      windowReader.release();
       if (QUIRKS_MODE && needRoot) {
         ensureRootElement(parent);
         ensureHeadElement(lastRootElement);
@@ -639,6 +649,34 @@ public class HtmlParser {
   private boolean justReadTagBegin = false;
   private boolean justReadTagEnd = false;
 
+  /**
+   * Reused by {@link #readUpToTagBegin(CharWindowReader)}. Its content is
+   * always consumed before the next token is read.
+   */
+  private final StringBuilder textBuffer = new StringBuilder();
+
+  private final TextPool textPool = new TextPool();
+
+  /**
+   * The innermost node that tokens are currently being appended to. Its
+   * notifications are suspended until it is complete.
+   */
+  private Node openNode = null;
+  private boolean openNodeChanged = false;
+
+  /**
+   * Called when the input has no more characters ready, i.e. before the parser
+   * blocks waiting for the next chunk. Lets listeners lay out what has been
+   * parsed so far, instead of waiting for the open elements to be closed.
+   */
+  private void publishOpenNode() {
+    final Node node = this.openNode;
+    if (this.openNodeChanged && (node instanceof NodeImpl)) {
+      this.openNodeChanged = false;
+      ((NodeImpl) node).informStructureInvalid();
+    }
+  }
+
   /**
    * Only set when readAttribute returns false.
    */
@@ -712,6 +750,7 @@ public class HtmlParser {
     }
 
     ensureBodyAppendChild(newParent, child);
+    this.openNodeChanged = true;
   }
 
   private void ensureRootElement(final Node parent) {
@@ -789,19 +828,20 @@ public class HtmlParser {
    * @throws StopException
    * @throws SAXException
    */
-  private final int parseToken(final Node parent, final LineNumberReader reader, final Set<String> stopTags,
+  private final int parseToken(final Node parent, final CharWindowReader reader, final Set<String> stopTags,
       final LinkedList<String> ancestors)
       throws IOException, StopException, SAXException {
     final Document doc = this.document;
     final HTMLDocumentImpl htmlDoc = (HTMLDocumentImpl) doc;
-    final StringBuffer textSb = this.readUpToTagBegin(reader);
+    this.openNode = parent;
+    final StringBuilder textSb = this.readUpToTagBegin(reader);
     if (textSb == null) {
       return TOKEN_EOD;
     }
     if (textSb.length() != 0) {
       // int textLine = reader.getLineNumber();
-      final StringBuffer decText = entityDecode(textSb);
-      final Node textNode = doc.createTextNode(decText.toString());
+      final StringBuilder decText = entityDecode(textSb);
+      final Node textNode = doc.createTextNode(this.textPool.share(decText));
       try {
         safeAppendChild(parent, textNode);
       } catch (final DOMException de) {
@@ -820,8 +860,8 @@ public class HtmlParser {
         if (tag.startsWith("!")) {
           if ("!--".equals(tag)) {
             // int commentLine = reader.getLineNumber();
-            final StringBuffer comment = this.passEndOfComment(reader);
-            final StringBuffer decText = entityDecode(comment);
+            final StringBuilder comment = this.passEndOfComment(reader);
+            final StringBuilder decText = entityDecode(comment);
 
             safeAppendChild(parent, doc.createComment(decText.toString()));
 
@@ -849,7 +889,7 @@ public class HtmlParser {
           return TOKEN_END_ELEMENT;
         } else if (tag.startsWith("?")) {
           tag = tag.substring(1);
-          final StringBuffer data = readProcessingInstruction(reader);
+          final StringBuilder data = readProcessingInstruction(reader);
 
           safeAppendChild(parent, doc.createProcessingInstruction(tag, data.toString()));
 
@@ -1003,29 +1043,19 @@ public class HtmlParser {
    * Reads text until the beginning of the next tag. Leaves the reader offset
    * past the opening angle bracket. Returns null only on EOF.
    */
-  private final StringBuffer readUpToTagBegin(final LineNumberReader reader) throws IOException, SAXException {
-    StringBuffer sb = null;
-    int intCh;
-    while ((intCh = reader.read()) != -1) {
-      final char ch = (char) intCh;
-      if (ch == '<') {
-        this.justReadTagBegin = true;
-        this.justReadTagEnd = false;
-        this.justReadEmptyElement = false;
-        if (sb == null) {
-          sb = new StringBuffer(0);
-        }
-        return sb;
-      }
-      if (sb == null) {
-        sb = new StringBuffer();
-      }
-      sb.append(ch);
+  private final StringBuilder readUpToTagBegin(final CharWindowReader reader) throws IOException, SAXException {
+    final StringBuilder sb = this.textBuffer;
+    sb.setLength(0);
+    if (reader.readUntil('<', sb) == '<') {
+      this.justReadTagBegin = true;
+      this.justReadTagEnd = false;
+      this.justReadEmptyElement = false;
+      return sb;
     }
     this.justReadTagBegin = false;
     this.justReadTagEnd = false;
     this.justReadEmptyElement = false;
-    return sb;
+    return sb.length() == 0 ? null : sb;
   }
 
   /**
@@ -1038,68 +1068,56 @@ public class HtmlParser {
    * @return
    * @throws IOException
    */
-  private final int parseForEndTag(Node parent, final LineNumberReader reader, final String tagName, final boolean addTextNode,
+  private final int parseForEndTag(Node parent, final CharWindowReader reader, final String tagName, final boolean addTextNode,
       final boolean decodeEntities)
       throws IOException, SAXException {
     final Document doc = this.document;
     int intCh;
-    StringBuffer sb = new StringBuffer();
-    while ((intCh = reader.read()) != -1) {
-      char ch = (char) intCh;
-      if (ch == '<') {
-        intCh = reader.read();
-        if (intCh != -1) {
-          ch = (char) intCh;
-          if (ch == '/') {
-            final StringBuffer tempBuffer = new StringBuffer();
-            INNER: while ((intCh = reader.read()) != -1) {
-              ch = (char) intCh;
-              if (ch == '>') {
-                final String thisTag = tempBuffer.toString().trim();
-                if (thisTag.equalsIgnoreCase(tagName)) {
-                  this.justReadTagBegin = false;
-                  this.justReadTagEnd = true;
-                  this.justReadEmptyElement = false;
-                  this.normalLastTag = thisTag;
-                  if (addTextNode) {
-                    if (decodeEntities) {
-                      sb = entityDecode(sb);
-                    }
-                    final String text = sb.toString();
-                    if (text.length() != 0) {
-                      final Node textNode = doc.createTextNode(text);
-                      safeAppendChild(parent, textNode);
-                    }
-                  }
-                  return TOKEN_END_ELEMENT;
-                } else {
-                  break INNER;
+    StringBuilder sb = new StringBuilder();
+    while (reader.readUntil('<', sb) != -1) {
+      intCh = reader.read();
+      if (intCh != -1) {
+        final char ch = (char) intCh;
+        if (ch == '/') {
+          final int tagStart = sb.length();
+          if (reader.readUntil('>', sb) == '>') {
+            final String thisTag = sb.substring(tagStart).trim();
+            if (thisTag.equalsIgnoreCase(tagName)) {
+              sb.setLength(tagStart);
+              this.justReadTagBegin = false;
+              this.justReadTagEnd = true;
+              this.justReadEmptyElement = false;
+              this.normalLastTag = thisTag;
+              if (addTextNode) {
+                if (decodeEntities) {
+                  sb = entityDecode(sb);
+                }
+                final String text = this.textPool.share(sb);
+                if (text.length() != 0) {
+                  final Node textNode = doc.createTextNode(text);
+                  safeAppendChild(parent, textNode);
                 }
-              } else {
-                tempBuffer.append(ch);
-              }
-            }
-            sb.append("</");
-            sb.append(tempBuffer);
-          } else if (ch == '!') {
-            final String nextSeven = readN(reader, 7);
-            if ("[CDATA[".equals(nextSeven)) {
-              readCData(reader, sb);
-            } else {
-              sb.append('!');
-              if (nextSeven != null) {
-                sb.append(nextSeven);
               }
+              return TOKEN_END_ELEMENT;
             }
+          }
+          sb.insert(tagStart, "</");
+        } else if (ch == '!') {
+          final String nextSeven = readN(reader, 7);
+          if ("[CDATA[".equals(nextSeven)) {
+            readCData(reader, sb);
           } else {
-            sb.append('<');
-            sb.append(ch);
+            sb.append('!');
+            if (nextSeven != null) {
+              sb.append(nextSeven);
+            }
           }
         } else {
           sb.append('<');
+          sb.append(ch);
         }
       } else {
-        sb.append(ch);
+        sb.append('<');
       }
     }
     this.justReadTagBegin = false;
@@ -1109,7 +1127,7 @@ public class HtmlParser {
       if (decodeEntities) {
         sb = entityDecode(sb);
       }
-      final String text = sb.toString();
+      final String text = this.textPool.share(sb);
       if (text.length() != 0) {
         final Node textNode = doc.createTextNode(text);
         safeAppendChild(parent, textNode);
@@ -1118,34 +1136,19 @@ public class HtmlParser {
     return HtmlParser.TOKEN_EOD;
   }
 
-  private static void readCData(LineNumberReader reader, StringBuffer sb) throws IOException {
-
-    int next = reader.read();
-
-    while (next >= 0 ) {
-      final char nextCh = (char) next;
-      if (nextCh == ']') {
-        final String next2 = readN(reader, 2);
-        if (next2 != null) {
-          if ("]>".equals(next2)) {
-            break;
-          } else {
-            sb.append(nextCh);
-            sb.append(next2);
-            next = reader.read();
-          }
-        } else {
-          break;
-        }
-      } else {
-        sb.append(nextCh);
-        next = reader.read();
+  private static void readCData(final CharWindowReader reader, final StringBuilder sb) throws IOException {
+    while (reader.readUntil(']', sb) != -1) {
+      final String next2 = readN(reader, 2);
+      if (next2 == null || "]>".equals(next2)) {
+        break;
       }
+      sb.append(']');
+      sb.append(next2);
     }
   }
 
   // Tries to read at most n characters.
-  private static String readN(final LineNumberReader reader, final int n) {
+  private static String readN(final CharWindowReader reader, final int n) {
     char[] chars = new char[n];
     int i = 0;
     while(i < n) {
@@ -1176,8 +1179,8 @@ public class HtmlParser {
    * @param reader
    * @return
    */
-  private final String readTag(final Node parent, final LineNumberReader reader) throws IOException {
-    final StringBuffer sb = new StringBuffer();
+  private final String readTag(final Node parent, final CharWindowReader reader) throws IOException {
+    final StringBuilder sb = new StringBuilder();
     int chInt;
     chInt = reader.read();
     if (chInt != -1) {
@@ -1218,7 +1221,7 @@ public class HtmlParser {
             cont = false;
           }
         } else if (ch == '<') {
-          final StringBuffer ltText = new StringBuffer(3);
+          final StringBuilder ltText = new StringBuilder(3);
           ltText.append('<');
           while ((chInt = reader.read()) == '<') {
             ltText.append('<');
@@ -1303,11 +1306,11 @@ public class HtmlParser {
     return tag;
   }
 
-  private final StringBuffer passEndOfComment(final LineNumberReader reader) throws IOException {
+  private final StringBuilder passEndOfComment(final CharWindowReader reader) throws IOException {
     if (this.justReadTagEnd) {
-      return new StringBuffer(0);
+      return new StringBuilder(0);
     }
-    final StringBuffer sb = new StringBuffer();
+    final StringBuilder sb = new StringBuilder();
     OUTER: for (;;) {
       int chInt = reader.read();
       if (chInt == -1) {
@@ -1322,12 +1325,12 @@ public class HtmlParser {
         }
         ch = (char) chInt;
         if (ch == '-') {
-          StringBuffer extra = null;
+          StringBuilder extra = null;
           INNER: for (;;) {
             chInt = reader.read();
             if (chInt == -1) {
               if (extra != null) {
-                sb.append(extra.toString());
+                sb.append(extra);
               }
               break OUTER;
             }
@@ -1339,19 +1342,19 @@ public class HtmlParser {
             } else if (ch == '-') {
               // Allow any number of dashes at the end
               if (extra == null) {
-                extra = new StringBuffer();
+                extra = new StringBuilder();
                 extra.append("--");
               }
               extra.append("-");
             } else if (Character.isWhitespace(ch)) {
               if (extra == null) {
-                extra = new StringBuffer();
+                extra = new StringBuilder();
                 extra.append("--");
               }
               extra.append(ch);
             } else {
               if (extra != null) {
-                sb.append(extra.toString());
+                sb.append(extra);
               }
               sb.append(ch);
               break INNER;
@@ -1423,21 +1426,18 @@ public class HtmlParser {
     }
   }
 
-  private final StringBuffer readProcessingInstruction(final LineNumberReader reader) throws IOException {
-    final StringBuffer pidata = new StringBuffer();
+  private final StringBuilder readProcessingInstruction(final CharWindowReader reader) throws IOException {
+    final StringBuilder pidata = new StringBuilder();
     if (this.justReadTagEnd) {
       return pidata;
     }
-    int ch;
-    for (ch = reader.read(); (ch != -1) && (ch != '>'); ch = reader.read()) {
-      pidata.append((char) ch);
-    }
+    final int ch = reader.readUntil('>', pidata);
     this.justReadTagBegin = false;
     this.justReadTagEnd = ch != -1;
     return pidata;
   }
 
-  private final boolean readAttribute(final LineNumberReader reader, final Element element) throws IOException, SAXException {
+  private final boolean readAttribute(final CharWindowReader reader, final Element element) throws IOException, SAXException {
     if (this.justReadTagEnd) {
       return false;
     }
@@ -1445,7 +1445,7 @@ public class HtmlParser {
     // Read attribute name up to '=' character.
     // May read several attribute names without explicit values.
 
-    StringBuffer attributeName = null;
+    StringBuilder attributeName = null;
     boolean blankFound = false;
     boolean lastCharSlash = false;
     for (;;) {
@@ -1492,13 +1492,13 @@ public class HtmlParser {
           }
         }
         if (attributeName == null) {
-          attributeName = new StringBuffer(6);
+          attributeName = new StringBuilder(6);
         }
         attributeName.append(ch);
       }
     }
     // Read blanks up to open quote or first non-blank.
-    StringBuffer attributeValue = null;
+    StringBuilder attributeValue = null;
     int openQuote = -1;
     for (;;) {
       final int chInt = reader.read();
@@ -1526,7 +1526,7 @@ public class HtmlParser {
           openQuote = '\'';
         } else {
           openQuote = -1;
-          attributeValue = new StringBuffer(6);
+          attributeValue = new StringBuilder(6);
           if (lastCharSlash) {
             attributeValue.append('/');
           }
@@ -1555,7 +1555,7 @@ public class HtmlParser {
             // processed by major browsers.
             element.setAttribute(attributeNameStr, "");
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1568,7 +1568,7 @@ public class HtmlParser {
           if (attributeValue == null) {
             element.setAttribute(attributeNameStr, null);
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1583,7 +1583,7 @@ public class HtmlParser {
           if (attributeValue == null) {
             element.setAttribute(attributeNameStr, null);
           } else {
-            final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+            final StringBuilder actualAttributeValue = entityDecode(attributeValue);
             element.setAttribute(attributeNameStr, actualAttributeValue.toString());
           }
         }
@@ -1592,7 +1592,7 @@ public class HtmlParser {
         return true;
       } else {
         if (attributeValue == null) {
-          attributeValue = new StringBuffer(6);
+          attributeValue = new StringBuilder(6);
         }
         if (lastCharSlash) {
           attributeValue.append('/');
@@ -1608,30 +1608,30 @@ public class HtmlParser {
       if (attributeValue == null) {
         element.setAttribute(attributeNameStr, null);
       } else {
-        final StringBuffer actualAttributeValue = entityDecode(attributeValue);
+        final StringBuilder actualAttributeValue = entityDecode(attributeValue);
         element.setAttribute(attributeNameStr, actualAttributeValue.toString());
       }
     }
     return false;
   }
 
-  private final static StringBuffer entityDecode(final StringBuffer rawText) throws SAXException {
+  private final static StringBuilder entityDecode(final StringBuilder rawText) throws SAXException {
     int startIdx = 0;
-    StringBuffer sb = null;
+    StringBuilder sb = null;
     for (;;) {
       final int ampIdx = rawText.indexOf("&", startIdx);
       if (ampIdx == -1) {
         if (sb == null) {
           return rawText;
         } else {
-          sb.append(rawText.substring(startIdx));
+          sb.append(rawText, startIdx, rawText.length());
           return sb;
         }
       }
       if (sb == null) {
-        sb = new StringBuffer();
+        sb = new StringBuilder(rawText.length());
       }
-      sb.append(rawText.substring(startIdx, ampIdx));
+      sb.append(rawText, startIdx, ampIdx);
       final int colonIdx = rawText.indexOf(";", ampIdx);
       if (colonIdx == -1) {
         sb.append('&');
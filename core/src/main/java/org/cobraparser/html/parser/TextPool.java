@@ -0,0 +1,59 @@
+package org.cobraparser.html.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the strings of the text nodes created by a parser. Most text nodes of
+ * indented markup are whitespace runs, such as a line break followed by the
+ * indentation, and those map to strings shared by all documents. Other short
+ * texts, such as entities or repeated cell values, are shared within the
+ * document being parsed. Longer texts seldom repeat and are kept as they are.
+ */
+final class TextPool {
+  private static final int MAX_SHARED_LENGTH = 32;
+  private static final int MAX_WHITESPACE_RUNS = 1024;
+  private static final int MAX_TEXTS = 4096;
+
+  private static final Map<String, String> WHITESPACE_RUNS = new ConcurrentHashMap<>();
+
+  private final Map<String, String> texts = new HashMap<>();
+
+  String share(final CharSequence chars) {
+    final String text = chars.toString();
+    final int length = text.length();
+    if ((length == 0) || (length > MAX_SHARED_LENGTH)) {
+      return text;
+    }
+    return isWhitespaceRun(text) ? intern(WHITESPACE_RUNS, text, MAX_WHITESPACE_RUNS) : intern(this.texts, text, MAX_TEXTS);
+  }
+
+  private static String intern(final Map<String, String> pool, final String text, final int maxSize) {
+    final String shared = pool.get(text);
+    if (shared != null) {
+      return shared;
+    }
+    if (pool.size() < maxSize) {
+      final String previous = pool.putIfAbsent(text, text);
+      return previous == null ? text : previous;
+    }
+    return text;
+  }
+
+  private static boolean isWhitespaceRun(final String text) {
+    final int length = text.length();
+    for (int i = 0; i < length; i++) {
+      switch (text.charAt(i)) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\r':
+        break;
+      default:
+        return false;
+      }
+    }
+    return true;
+  }
+}
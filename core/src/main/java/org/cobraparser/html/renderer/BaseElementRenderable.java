@@ -316,10 +316,11 @@ abstract class BaseElementRenderable extends BaseRCollection implements RElement
    *
    * @see org.xamjwg.html.renderer.RenderableContainer#add(java.awt.Component)
    */
-  public Component addComponent(final Component component) {
+  public synchronized Component addComponent(final Component component) {
     // TODO: This gets called too many times!
 
-    // Expected to be called in GUI thread.
+    // Expected to be called in GUI thread, or by cells of a table laid out
+    // concurrently.
     // Adds only in local collection.
     // Does not remove from parent.
     // Sending components to parent is done by sendGUIComponentsToParent().
@@ -1036,8 +1037,9 @@ abstract class BaseElementRenderable extends BaseRCollection implements RElement
    *
    * @see org.xamjwg.html.renderer.RenderableContainer#add(java.awt.Component)
    */
-  public void addDelayedPair(final DelayedPair pair) {
-    // Expected to be called in GUI thread.
+  public synchronized void addDelayedPair(final DelayedPair pair) {
+    // Expected to be called in GUI thread, or by cells of a table laid out
+    // concurrently.
     // Adds only in local collection.
     // Does not remove from parent.
     // Sending components to parent is done
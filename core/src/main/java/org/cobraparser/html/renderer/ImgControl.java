@@ -33,7 +33,7 @@ import org.cobraparser.ua.ImageResponse;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.awt.geom.AffineTransform;
 import java.awt.image.ImageObserver;
 
 class ImgControl extends BaseControl implements ImageListener {
@@ -63,10 +63,19 @@ class ImgControl extends BaseControl implements ImageListener {
 
       final int imgWidth = image.getWidth(this);
       final int imgHeight = image.getHeight(this);
-      if (width < imgWidth || height < imgHeight) {
-        // down-sampling needs better handling
-        final Image scaledImg = getScaledInstance(image, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g.drawImage(scaledImg, insets.left, insets.top, width, height, this);
+      final AffineTransform transform = g2.getTransform();
+      final int deviceWidth = (int) Math.ceil(width * Math.abs(transform.getScaleX()));
+      final int deviceHeight = (int) Math.ceil(height * Math.abs(transform.getScaleY()));
+      if ((deviceWidth > 0) && (deviceHeight > 0) && (deviceWidth < imgWidth || deviceHeight < imgHeight)) {
+        // down-sampling needs better handling, so it is done once, in device pixels, and cached
+        final Image scaledImg = ScaledImageCache.getInstance().get(image, deviceWidth, deviceHeight, this::repaint);
+        if (scaledImg != null) {
+          g.drawImage(scaledImg, insets.left, insets.top, width, height, this);
+        } else {
+          // Low quality until the scaled image is ready
+          g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+          g.drawImage(image, insets.left, insets.top, width, height, this);
+        }
       } else {
         g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
         g.drawImage(image, insets.left, insets.top, width, height, this);
@@ -171,6 +180,7 @@ class ImgControl extends BaseControl implements ImageListener {
   @Override
   public boolean imageUpdate(final Image img, final int infoflags, final int x, final int y, final int w, final int h) {
     if (((infoflags & ImageObserver.ALLBITS) != 0) || ((infoflags & ImageObserver.FRAMEBITS) != 0)) {
+      ScaledImageCache.getInstance().remove(img);
       SwingUtilities.invokeLater(() -> {
         if (!checkPreferredSizeChange()) {
           repaint();
@@ -224,51 +234,6 @@ class ImgControl extends BaseControl implements ImageListener {
     return "ImgControl[src=" + this.lastSrc + "]";
   }
 
-  // https://today.java.net/pub/a/today/2007/04/03/perils-of-image-getscaledinstance.html
-
-  // Adapted from: https://today.java.net/pub/a/today/2007/04/03/perils-of-image-getscaledinstance.html
-  /**
-   * Convenience method that returns a scaled instance of the provided {@code BufferedImage}.
-   *
-   * @param img the original image to be scaled
-   * @param targetWidth the desired width of the scaled instance, in pixels
-   * @param targetHeight the desired height of the scaled instance, in pixels
-   * @param hint one of the rendering hints that corresponds to {@code RenderingHints.KEY_INTERPOLATION}
-   * @return a scaled version of the original {@code BufferedImage}
-   */
-  private Image getScaledInstance(final Image img, final int targetWidth, final int targetHeight, final Object hint) {
-    final int type = BufferedImage.TYPE_INT_ARGB;
-    Image ret = img;
-    int w = img.getWidth(this);
-    int h = img.getHeight(this);
-
-    while (w != targetWidth || h != targetHeight) {
-      if (w > targetWidth) {
-        w /= 2;
-      }
-      if (w < targetWidth) {
-        w = targetWidth;
-      }
-
-      if (h > targetHeight) {
-        h /= 2;
-      }
-      if (h < targetHeight) {
-        h = targetHeight;
-      }
-
-      BufferedImage tmp = new BufferedImage(w, h, type);
-      Graphics2D g2 = tmp.createGraphics();
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
-      g2.drawImage(ret, 0, 0, w, h, null);
-      g2.dispose();
-
-      ret = tmp;
-    }
-
-    return ret;
-  }
-
   @Override
   public boolean isReadyToPaint() {
     return imageResponse.isReadyToPaint();
@@ -0,0 +1,40 @@
+package org.cobraparser.html.renderer;
+
+/**
+ * The vertical range of a document that has to be laid out in full, in the
+ * content coordinates of the top block. Blocks entirely below the range that
+ * weren't laid out yet are only given a size, and their contents are laid out
+ * when the range reaches them. Blocks outside the range that were laid out
+ * keep their contents, unless memory is short, in which case the contents are
+ * dropped.
+ * <p>
+ * The window only applies to block children. The lines of a block are always
+ * built in full when the block is laid out, however far they extend below the
+ * window.
+ *
+ * @see RenderableContainer#getLayoutWindow()
+ */
+public final class LayoutWindow {
+  public final int top;
+  public final int bottom;
+  public final boolean discardOffscreen;
+
+  public LayoutWindow(final int top, final int bottom, final boolean discardOffscreen) {
+    this.top = top;
+    this.bottom = bottom;
+    this.discardOffscreen = discardOffscreen;
+  }
+
+  /**
+   * Checks whether the given vertical range is laid out in full, edges
+   * included.
+   */
+  public boolean contains(final int top, final int bottom) {
+    return (top >= this.top) && (bottom <= this.bottom);
+  }
+
+  @Override
+  public String toString() {
+    return "LayoutWindow[top=" + this.top + ",bottom=" + this.bottom + ",discardOffscreen=" + this.discardOffscreen + "]";
+  }
+}
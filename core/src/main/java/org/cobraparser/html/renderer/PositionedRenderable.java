@@ -164,6 +164,15 @@ public class PositionedRenderable implements Renderable {
     return bounds;
   }
 
+  /**
+   * Whether the visual bounds only change when the renderable is laid out
+   * again. Fixed renderables move with scrolling, and those positioned in the
+   * root viewport depend on the origin of the root element's viewport.
+   */
+  boolean hasStableVisualBounds() {
+    return !isFixed && !(renderable.getParent().getModelNode() instanceof HTMLDocument);
+  }
+
   public Point getOffset() {
     final Point offset = new Point();
     final int pos = this.renderable.getModelNode().getRenderState().getPosition();
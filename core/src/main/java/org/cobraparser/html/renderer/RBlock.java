@@ -24,6 +24,8 @@
 package org.cobraparser.html.renderer;
 
 import org.cobraparser.html.HtmlRendererContext;
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.domimpl.LayoutCacheStats;
 import org.cobraparser.html.domimpl.ModelNode;
 import org.cobraparser.html.domimpl.NodeImpl;
 import org.cobraparser.html.style.BlockRenderState;
@@ -38,7 +40,10 @@ import java.awt.*;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
 import java.awt.event.MouseEvent;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Represents a HTML block in a rendered document, typically a DIV. The root
@@ -48,7 +53,7 @@ import java.util.Iterator;
  * {@link RBlockViewport}.
  */
 public class RBlock extends BaseBlockyRenderable {
-  // private static final int MAX_CACHE_SIZE = 10;
+  private static final int MAX_CACHE_SIZE = 10;
 
   protected final FrameContext frameContext;
   protected final int listNesting;
@@ -59,7 +64,7 @@ public class RBlock extends BaseBlockyRenderable {
   // private int relativeOffsetX = 0;
   // private int relativeOffsetY = 0;
 
-  // protected final Map<LayoutKey, LayoutValue> cachedLayout = new Hashtable<>(5);
+  private Map<LayoutKey, LayoutValue> cachedLayout = null;
 
   protected RenderableSpot startSelection;
   protected RenderableSpot endSelection;
@@ -74,8 +79,20 @@ public class RBlock extends BaseBlockyRenderable {
   protected int defaultOverflowX = RenderState.OVERFLOW_NONE;
   protected int defaultOverflowY = RenderState.OVERFLOW_NONE;
 
-  // private LayoutValue lastLayoutValue = null;
-  // private LayoutKey lastLayoutKey = null;
+  private LayoutValue lastLayoutValue = null;
+  private LayoutKey lastLayoutKey = null;
+
+  static final int UNKNOWN_TOP = Integer.MIN_VALUE;
+
+  /**
+   * Where the parent viewport placed the block in the last layout, in the
+   * content coordinates of the top block, if the document is laid out lazily.
+   * See {@link LayoutWindow}.
+   */
+  int documentTop = UNKNOWN_TOP;
+
+  // Whether the block was sized without laying out its contents.
+  private boolean contentDeferred = false;
 
   public RBlock(final NodeImpl modelNode, final int listNesting, final UserAgentContext pcontext, final HtmlRendererContext rcontext,
       final FrameContext frameContext,
@@ -107,6 +124,14 @@ public class RBlock extends BaseBlockyRenderable {
     super.finalize();
   }
 
+  /**
+   * Gets the y coordinate, in the coordinates the contents of the block are
+   * laid out in, shown at the top of the block.
+   */
+  public int getVisibleContentTop() {
+    return -this.bodyLayout.y;
+  }
+
   public void ensureVisible(final Point point) {
     final RBlockViewport bodyLayout = this.bodyLayout;
     final boolean hscroll = this.hasHScrollBar;
@@ -346,7 +371,6 @@ public class RBlock extends BaseBlockyRenderable {
       final int defaultOverflowX, final int defaultOverflowY, final boolean sizeOnly, final boolean useCache) {
     // Expected to be invoked in the GUI thread.
     final RenderState renderState = this.modelNode.getRenderState();
-    /*
     final Font font = renderState == null ? null : renderState.getFont();
     final int whiteSpace = renderState == null ? RenderState.WS_NORMAL : renderState.getWhiteSpace();
     // Having whiteSpace == NOWRAP and having a NOWRAP override
@@ -354,47 +378,38 @@ public class RBlock extends BaseBlockyRenderable {
     final boolean overrideNoWrap = RenderThreadState.getState().overrideNoWrap;
     final LayoutKey key = new LayoutKey(availWidth, availHeight, expandWidth, expandHeight, floatBoundsSource, defaultOverflowX,
         defaultOverflowY, whiteSpace, font, overrideNoWrap);
-    final Map<LayoutKey, LayoutValue> cachedLayout = this.cachedLayout;
-    */
-    LayoutValue value;
-    /*
-    if (sizeOnly) {
-      value = useCache ? cachedLayout.get(key) : null;
-    } else {
-      if (Objects.equals(key, this.lastLayoutKey)) {
-        value = this.lastLayoutValue;
-      } else {
-        value = null;
-      }
-    }*/
-    value = null;
-    if (value == null) {
-      value = this.forceLayout(renderState, availWidth, availHeight, expandWidth, expandHeight, floatBoundsSource, defaultOverflowX,
-          defaultOverflowY, sizeOnly);
-      if (sizeOnly) {
-        // this.lastLayoutKey = null;
-        // this.lastLayoutValue = null;
-
-        /*
-        if (cachedLayout.size() > MAX_CACHE_SIZE) {
-          // Unlikely, but we should keep it bounded.
-          cachedLayout.clear();
+    final LayoutCacheStats stats = this.getLayoutCacheStats();
+    if (useCache) {
+      final LayoutValue cached = this.getCachedLayout(key, sizeOnly);
+      if (cached != null) {
+        // Nothing in this subtree has been invalidated since it was last laid
+        // out with the same constraints, so the parent only has to position it.
+        if (stats != null) {
+          stats.hit();
         }
-        cachedLayout.put(key, value);
-        */
-      } else {
-        // this.lastLayoutKey = key;
-        // this.lastLayoutValue = value;
+        this.width = cached.width;
+        this.height = cached.height;
+        this.hasHScrollBar = cached.hasHScrollBar;
+        this.hasVScrollBar = cached.hasVScrollBar;
+        this.sendGUIComponentsToParent();
+        return;
       }
+    }
+    if (stats != null) {
+      stats.miss();
+    }
+    this.contentDeferred = false;
+    final LayoutValue value = this.forceLayout(renderState, availWidth, availHeight, expandWidth, expandHeight, floatBoundsSource,
+        defaultOverflowX, defaultOverflowY, sizeOnly);
+    if (sizeOnly) {
+      this.lastLayoutKey = null;
+      this.lastLayoutValue = null;
     } else {
-      /*
-      System.out.println("Cached layout for " + this);
-      final FloatingInfo finfo = getExportableFloatingInfo();
-      if (finfo != null) {
-        for ( ExportableFloat fi : finfo.floats) {
-          fi.pendingPlacement = true;
-        }
-      }*/
+      this.lastLayoutKey = key;
+      this.lastLayoutValue = value;
+    }
+    if (this.isCacheable()) {
+      this.cacheLayout(key, value, stats);
     }
     this.width = value.width;
     this.height = value.height;
@@ -412,6 +427,127 @@ public class RBlock extends BaseBlockyRenderable {
     this.sendDelayedPairsToParent();
   }
 
+  /**
+   * Gets a previous layout that can be reused as is. That requires the block,
+   * and thus its whole subtree, not to have been invalidated since, and the
+   * layout to have been done with the same constraints. A full layout can only
+   * reuse the last layout, as that is the one the block's contents are
+   * arranged for; a size-only layout can use any cached one.
+   */
+  private LayoutValue getCachedLayout(final LayoutKey key, final boolean sizeOnly) {
+    if (!this.isValid() || !this.isCacheable() || this.hasDeferredContent()) {
+      return null;
+    }
+    if (key.equals(this.lastLayoutKey)) {
+      return this.lastLayoutValue;
+    }
+    final Map<LayoutKey, LayoutValue> cachedLayout = this.cachedLayout;
+    return (sizeOnly && (cachedLayout != null)) ? cachedLayout.get(key) : null;
+  }
+
+  /**
+   * Sizes the block without laying out its contents, dropping them if they were
+   * laid out, for a block far from the visible part of a lazily laid out
+   * document. The size of the last layout is kept if it was done with the same
+   * width, otherwise the given height is used until the block is laid out.
+   */
+  void layoutDeferred(final int availWidth, final int availHeight, final int estimatedHeight) {
+    try {
+      this.applyStyle(availWidth, availHeight);
+      this.clearGUIComponents();
+      this.clearDelayedPairs();
+      this.discardContents();
+      if (this.hasLayoutFor(availWidth)) {
+        final LayoutValue value = this.lastLayoutValue;
+        this.width = value.width;
+        this.height = value.height;
+        this.hasHScrollBar = value.hasHScrollBar;
+        this.hasVScrollBar = value.hasVScrollBar;
+      } else {
+        this.width = availWidth;
+        this.height = estimatedHeight;
+        this.hasHScrollBar = false;
+        this.hasVScrollBar = false;
+      }
+    } finally {
+      this.layoutUpTreeCanBeInvalidated = true;
+      this.layoutDeepCanBeInvalidated = true;
+    }
+  }
+
+  /**
+   * Drops the renderables of the block and of the blocks in it. They are laid
+   * out again the next time the block is.
+   */
+  void discardContents() {
+    this.contentDeferred = true;
+    this.bodyLayout.discardContents();
+  }
+
+  /**
+   * Checks whether the size of the last layout is known and still valid for
+   * the given width.
+   */
+  boolean hasLayoutFor(final int availWidth) {
+    final LayoutKey key = this.lastLayoutKey;
+    return this.isValid() && (key != null) && (key.availWidth == availWidth);
+  }
+
+  boolean isContentDeferred() {
+    return this.contentDeferred;
+  }
+
+  /**
+   * Whether some of the contents of the block were left out of its last
+   * layout. Such blocks are laid out again every time, so that the blocks
+   * left out are reconsidered.
+   */
+  boolean hasDeferredContent() {
+    return this.contentDeferred || this.bodyLayout.hasDeferredBlocks();
+  }
+
+  /**
+   * Blocks with floats or positioned descendants that are placed by an
+   * ancestor are always laid out again, as those have to be handed to the
+   * ancestor again.
+   */
+  private boolean isCacheable() {
+    final Collection<DelayedPair> delayedPairs = this.delayedPairs;
+    if ((delayedPairs != null) && !delayedPairs.isEmpty()) {
+      return false;
+    }
+    return this.bodyLayout.getExportableFloatingInfo() == null;
+  }
+
+  private void cacheLayout(final LayoutKey key, final LayoutValue value, final LayoutCacheStats stats) {
+    Map<LayoutKey, LayoutValue> cachedLayout = this.cachedLayout;
+    if (cachedLayout == null) {
+      // Most blocks are only ever laid out with one set of constraints.
+      cachedLayout = new LinkedHashMap<>(4, 0.75f, true);
+      this.cachedLayout = cachedLayout;
+    }
+    cachedLayout.put(key, value);
+    if (cachedLayout.size() > MAX_CACHE_SIZE) {
+      final Iterator<LayoutKey> i = cachedLayout.keySet().iterator();
+      i.next();
+      i.remove();
+      if (stats != null) {
+        stats.evicted();
+      }
+    }
+  }
+
+  private LayoutCacheStats getLayoutCacheStats() {
+    final ModelNode node = this.modelNode;
+    final Object document = node instanceof NodeImpl ? ((NodeImpl) node).getOwnerDocument() : null;
+    if (document instanceof HTMLDocumentImpl) {
+      return ((HTMLDocumentImpl) document).getLayoutCacheStats();
+    } else if (node instanceof HTMLDocumentImpl) {
+      return ((HTMLDocumentImpl) node).getLayoutCacheStats();
+    }
+    return null;
+  }
+
   private final boolean correctViewportOrigin(final Insets insets, final int blockWidth, final int blockHeight) {
     final RBlockViewport bodyLayout = this.bodyLayout;
     final int viewPortX = bodyLayout.x;
@@ -1268,9 +1404,9 @@ public class RBlock extends BaseBlockyRenderable {
     // Threads.dumpStack(4);
     this.delayedPairs = null;
     super.invalidateLayoutLocal();
-    // this.cachedLayout.clear();
-    // this.lastLayoutKey = null;
-    // this.lastLayoutValue = null;
+    this.cachedLayout = null;
+    this.lastLayoutKey = null;
+    this.lastLayoutValue = null;
     final JScrollBar hScrollBar = this.hScrollBar;
     if (hScrollBar != null) {
       // Necessary
@@ -1500,7 +1636,7 @@ public class RBlock extends BaseBlockyRenderable {
       bodyLayout.scrollX += diff;
       this.resetScrollBars(null);
       this.updateWidgetBounds();
-      this.repaint();
+      this.repaintScrolled(diff, 0);
 
       return diff != 0;
     }
@@ -1526,13 +1662,26 @@ public class RBlock extends BaseBlockyRenderable {
       bodyLayout.scrollY += diff;
       this.resetScrollBars(null);
       this.updateWidgetBounds();
-      this.repaint();
+      this.repaintScrolled(0, diff);
       return diff != 0;
     }
 
     return false;
   }
 
+  private void repaintScrolled(final int dx, final int dy) {
+    // Only the top block is painted directly by its container. Fixed boxes
+    // and the root background don't move with the content.
+    if ((this.parent == null) && ((dx | dy) != 0) && (this.backgroundImage == null) && !this.bodyLayout.hasFixedRenderables()) {
+      final Insets insets = this.getInsetsMarginBorder(this.hasHScrollBar, this.hasVScrollBar);
+      final Rectangle scrolledArea = new Rectangle(insets.left, insets.top, this.width - insets.left - insets.right,
+          this.height - insets.top - insets.bottom);
+      this.container.repaintScrolled(0, 0, this.width, this.height, scrolledArea, dx, dy);
+    } else {
+      this.repaint();
+    }
+  }
+
   public boolean scrollByUnits(final int orientation, final int units) {
     final int offset = orientation == Adjustable.VERTICAL ? getVUnitIncrement(null) * units : units;
     return this.scrollBy(orientation, offset);
@@ -1700,7 +1849,6 @@ public class RBlock extends BaseBlockyRenderable {
     this.defaultOverflowY = defaultOverflowY;
   }
 
-  /*
   private static class LayoutKey {
     public final int availWidth;
     public final int availHeight;
@@ -1753,7 +1901,7 @@ public class RBlock extends BaseBlockyRenderable {
       return ((this.availWidth * 1000) + this.availHeight) ^ (font == null ? 0 : font.hashCode()) ^ (this.expandWidth ? 2 : 0)
           ^ (this.expandHeight ? 1 : 0) ^ (this.whitespace << 2);
     }
-  } */
+  }
 
   private static class LayoutValue {
     public final int width;
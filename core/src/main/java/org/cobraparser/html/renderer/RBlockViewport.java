@@ -29,6 +29,8 @@ import org.cobraparser.html.domimpl.*;
 import org.cobraparser.html.style.HtmlInsets;
 import org.cobraparser.html.style.JStyleProperties;
 import org.cobraparser.html.style.RenderState;
+import org.cobraparser.html.style.WordWidthCache;
+import org.cobraparser.html.style.WordWidthCache.Word;
 import org.cobraparser.ua.UserAgentContext;
 import org.cobraparser.util.ArrayUtilities;
 import org.cobraparser.util.CollectionUtilities;
@@ -86,6 +88,10 @@ public class RBlockViewport extends BaseRCollection {
   private SortedSet<PositionedRenderable> positionedRenderables;
   private ArrayList<BoundableRenderable> seqRenderables = null;
   private ArrayList<ExportableFloat> exportableFloats = null;
+  // Spatial indexes over the renderables, built when first queried.
+  private RenderableIndex<BoundableRenderable> seqIndex = null;
+  private RenderableIndex<PositionedRenderable> positionedPointIndex = null;
+  private RenderableIndex<PositionedRenderable> positionedClipIndex = null;
   // private Collection exportedRenderables;
   private RLine currentLine;
   private int maxX;
@@ -103,6 +109,11 @@ public class RBlockViewport extends BaseRCollection {
   private FloatingBounds floatBounds = null;
   private boolean sizeOnly;
   private BoundableRenderable lastSeqBlock;
+  private LayoutWindow layoutWindow;
+  private int documentTop;
+  private int laidOutBlockHeight;
+  private int laidOutBlockCount;
+  private boolean hasDeferredBlocks = false;
 
   int scrollX = 0, scrollY = 0;
 
@@ -199,6 +210,7 @@ public class RBlockViewport extends BaseRCollection {
       final FloatingBounds floatBounds, final boolean sizeOnly) {
     this.cachedVisualHeight = null;
     this.cachedVisualWidth = null;
+    this.invalidateIndexes();
 
     // final RenderableContainer container = this.container;
     this.paddingInsets = paddingInsets;
@@ -210,6 +222,10 @@ public class RBlockViewport extends BaseRCollection {
     this.pendingFloats = null;
     this.sizeOnly = sizeOnly;
     this.lastSeqBlock = null;
+    this.layoutWindow = sizeOnly ? null : this.findLayoutWindow();
+    this.laidOutBlockHeight = 0;
+    this.laidOutBlockCount = 0;
+    this.hasDeferredBlocks = false;
     // this.currentCollapsibleMargin = this.initCollapsibleMargin();
     this.currentCollapsibleMargin = 0;
 
@@ -280,6 +296,9 @@ public class RBlockViewport extends BaseRCollection {
 
     this.width = paddingInsets.right + this.maxX;
     this.height = paddingInsets.bottom + maxY;
+
+    // Renderables may have moved since the indexes were built.
+    this.invalidateIndexes();
   }
 
   private void layoutPass(final NodeImpl rootNode) {
@@ -374,6 +393,7 @@ public class RBlockViewport extends BaseRCollection {
     if (prevMaxY != this.maxY) {
       this.height += (this.maxY - prevMaxY);
     }
+    this.invalidateIndexes();
   }
 
   /**
@@ -429,6 +449,7 @@ public class RBlockViewport extends BaseRCollection {
     if (prevMaxY != this.maxY) {
       this.height += (this.maxY - prevMaxY);
     }
+    this.invalidateIndexes();
   }
 
   // /**
@@ -666,7 +687,21 @@ public class RBlockViewport extends BaseRCollection {
       }
       */
 
-      renderable.layout(availContentWidth, availContentHeight, true, false, floatBoundsSource, this.sizeOnly);
+      if (this.layoutWindow == null) {
+        renderable.documentTop = RBlock.UNKNOWN_TOP;
+        renderable.layout(availContentWidth, availContentHeight, true, false, floatBoundsSource, this.sizeOnly);
+      } else {
+        renderable.documentTop = this.documentTop + newY;
+        if (this.shouldDefer(markupElement, renderable, availContentWidth)) {
+          renderable.layoutDeferred(availContentWidth, availContentHeight, this.estimateBlockHeight());
+          this.hasDeferredBlocks = true;
+        } else {
+          renderable.layout(availContentWidth, availContentHeight, true, false, floatBoundsSource, this.sizeOnly);
+          this.laidOutBlockHeight += renderable.height;
+          this.laidOutBlockCount++;
+          this.hasDeferredBlocks |= renderable.hasDeferredContent();
+        }
+      }
 
       if (isFirstCollapsibleBlock) {
         final RBlock pBlock = (RBlock) this.parent;
@@ -692,6 +727,96 @@ public class RBlockViewport extends BaseRCollection {
     }
   }
 
+  /**
+   * Gets the layout window of the document, if it is laid out lazily and it is
+   * known where this viewport stands in it.
+   */
+  private LayoutWindow findLayoutWindow() {
+    if (!(this.container instanceof RBlock)) {
+      return null;
+    }
+    final RBlock block = (RBlock) this.container;
+    RenderableContainer outermost = block.getParentContainer();
+    if (outermost == null) {
+      return null;
+    }
+    if (outermost.getParentContainer() == null) {
+      // This is the top block.
+      this.documentTop = 0;
+    } else if (block.documentTop == RBlock.UNKNOWN_TOP) {
+      return null;
+    } else {
+      this.documentTop = block.documentTop;
+      while (outermost.getParentContainer() != null) {
+        outermost = outermost.getParentContainer();
+      }
+    }
+    return outermost.getLayoutWindow();
+  }
+
+  /**
+   * Checks whether a block should be sized without laying out its contents.
+   * Blocks below the layout window are, unless they were already laid out at
+   * this width. Blocks above it keep their contents unless memory is short,
+   * and are only left out once their size is known, so that what is visible
+   * doesn't move. Only static blocks clear of floats can be left out.
+   */
+  private boolean shouldDefer(final HTMLElementImpl element, final RBlock block, final int availWidth) {
+    if ((this.floatBounds != null) || (block.getClass() != RBlock.class) || (getPosition(element) != RenderState.POSITION_STATIC)) {
+      return false;
+    }
+    final LayoutWindow window = this.layoutWindow;
+    final int top = block.documentTop;
+    if (top > window.bottom) {
+      return block.isContentDeferred() || window.discardOffscreen || !block.hasLayoutFor(availWidth);
+    }
+    if ((top + block.height) < window.top) {
+      return block.hasLayoutFor(availWidth) && (block.isContentDeferred() || window.discardOffscreen);
+    }
+    return false;
+  }
+
+  /**
+   * Estimates the height of a block left out of layout from the blocks laid
+   * out so far in this viewport, or as one line if there are none.
+   */
+  private int estimateBlockHeight() {
+    if (this.laidOutBlockCount > 0) {
+      return this.laidOutBlockHeight / this.laidOutBlockCount;
+    }
+    final RenderState rs = this.modelNode.getRenderState();
+    return rs == null ? 0 : rs.getFontMetrics().getHeight();
+  }
+
+  boolean hasDeferredBlocks() {
+    return this.hasDeferredBlocks;
+  }
+
+  /**
+   * Drops the renderables of the viewport, and those of the blocks in it, for
+   * a block that is sized without laying out its contents.
+   */
+  void discardContents() {
+    final ArrayList<BoundableRenderable> sr = this.seqRenderables;
+    if (sr != null) {
+      for (final BoundableRenderable r : sr) {
+        if (r instanceof RBlock) {
+          ((RBlock) r).discardContents();
+        }
+      }
+    }
+    this.seqRenderables = null;
+    this.positionedRenderables = null;
+    this.exportableFloats = null;
+    this.pendingFloats = null;
+    this.currentLine = null;
+    this.lastSeqBlock = null;
+    this.hasDeferredBlocks = false;
+    this.cachedVisualHeight = null;
+    this.cachedVisualWidth = null;
+    this.invalidateIndexes();
+  }
+
   /* This is used to bubble up relative elements (on the z-axis) */
   private boolean bubbleUpIfRelative(final HTMLElementImpl markupElement, final RElement renderable) {
     final int position = getPosition(markupElement);
@@ -1234,8 +1359,10 @@ public class RBlockViewport extends BaseRCollection {
   }
 
   private void layoutText(final NodeImpl textNode) {
-    final String text = textNode.getNodeValue();
-    final int length = text.length();
+    // Words are measured straight from the characters of the text node; only
+    // words not found in the shared cache are copied into strings.
+    final char[] text = textNode.getNodeValue().toCharArray();
+    final int length = text.length;
     final RenderState renderState = textNode.getRenderState();
     final FontMetrics fm = renderState.getFontMetrics();
     final int descent = fm.getDescent();
@@ -1244,90 +1371,78 @@ public class RBlockViewport extends BaseRCollection {
     final int blankWidth = fm.charWidth(' ');
     final int whiteSpace = this.overrideNoWrap ? RenderState.WS_NOWRAP : renderState.getWhiteSpace();
     final int textTransform = renderState.getTextTransform();
+    final WordWidthCache wordCache = WordWidthCache.getInstance();
     if (whiteSpace != RenderState.WS_PRE) {
       final boolean prevAllowOverflow = this.currentLine.isAllowOverflow();
       final boolean allowOverflow = whiteSpace == RenderState.WS_NOWRAP;
       this.currentLine.setAllowOverflow(allowOverflow);
       try {
-        final StringBuffer word = new StringBuffer(12);
+        int wordStart = -1;
         for (int i = 0; i < length; i++) {
-          char ch = text.charAt(i);
-          if (Character.isWhitespace(ch)) {
-            final int wlen = word.length();
-            if (wlen > 0) {
-              final RWord rword = new RWord(textNode, word.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-              this.addWordToLine(rword);
-              word.delete(0, wlen);
+          if (Character.isWhitespace(text[i])) {
+            if (wordStart != -1) {
+              final Word word = wordCache.getWord(fm, textTransform, text, wordStart, i - wordStart);
+              this.addWordToLine(new RWord(textNode, word, container, fm, descent, ascentPlusLeading, wordHeight));
+              wordStart = -1;
             }
             final RLine line = this.currentLine;
             if (line.width > 0) {
               final RBlank rblank = new RBlank(textNode, fm, container, ascentPlusLeading, blankWidth, wordHeight);
               line.addBlank(rblank);
             }
-            for (i++; i < length; i++) {
-              ch = text.charAt(i);
-              if (!Character.isWhitespace(ch)) {
-                word.append(ch);
-                break;
-              }
+            while (((i + 1) < length) && Character.isWhitespace(text[i + 1])) {
+              i++;
             }
-          } else {
-            word.append(ch);
+          } else if (wordStart == -1) {
+            wordStart = i;
           }
         }
-        if (word.length() > 0) {
-          final RWord rword = new RWord(textNode, word.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-          this.addWordToLine(rword);
+        if (wordStart != -1) {
+          final Word word = wordCache.getWord(fm, textTransform, text, wordStart, length - wordStart);
+          this.addWordToLine(new RWord(textNode, word, container, fm, descent, ascentPlusLeading, wordHeight));
         }
       } finally {
         this.currentLine.setAllowOverflow(prevAllowOverflow);
       }
     } else {
-      boolean lastCharSlashR = false;
-      final StringBuffer line = new StringBuffer();
+      int lineStart = 0;
       for (int i = 0; i < length; i++) {
-        final char ch = text.charAt(i);
-        switch (ch) {
-        case '\r':
-          lastCharSlashR = true;
-          break;
-        case '\n':
-          final RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-          this.addWordToLine(rword);
-          line.delete(0, line.length());
+        final char ch = text[i];
+        if (ch == '\n') {
+          // A \r right before the line break is dropped.
+          final int lineEnd = ((i > lineStart) && (text[i - 1] == '\r')) ? i - 1 : i;
+          final Word word = wordCache.getWord(fm, textTransform, text, lineStart, lineEnd - lineStart);
+          this.addWordToLine(new RWord(textNode, word, container, fm, descent, ascentPlusLeading, wordHeight));
           final RLine prevLine = this.currentLine;
           prevLine.setLineBreak(new LineBreak(LineBreak.NONE));
           this.addLine(textNode, prevLine, prevLine.y + prevLine.height);
-          break;
-        default:
-          if (lastCharSlashR) {
-            line.append('\r');
-            lastCharSlashR = false;
+          lineStart = i + 1;
+        } else if (ch == '\t') {
+          /* Tabs are not recognized as advancing width in FontMetrics. There are two approaches possible:
+             1. Convert to spaces. Simple, but when copying selection spaces are copied.
+             2. Define a new class call RTab, that manages tabs.
+             3. Modify the width calculation logic of RWord to account for tab character.
+          */
+
+          // TODO: The number of spaces is hard-coded right now. But when CSS `tab-size` property is supported, it could be made variable.
+          final int NUM_SPACES = 8;
+
+          // Solution 2.
+          if (i > lineStart) {
+            final Word word = wordCache.getWord(fm, textTransform, text, lineStart, i - lineStart);
+            this.addWordToLine(new RWord(textNode, word, container, fm, descent, ascentPlusLeading, wordHeight));
           }
-          if (ch == '\t') {
-            /* Tabs are not recognized as advancing width in FontMetrics. There are two approaches possible:
-               1. Convert to spaces. Simple, but when copying selection spaces are copied.
-               2. Define a new class call RTab, that manages tabs.
-               3. Modify the width calculation logic of RWord to account for tab character.
-            */
-
-            // TODO: The number of spaces is hard-coded right now. But when CSS `tab-size` property is supported, it could be made variable.
-            final int NUM_SPACES = 8;
-
-            // Solution 1.
-            // line.append("        ");
-
-            // Solution 2.
-            addWordToLine(new RTab(textNode, container, fm, descent, ascentPlusLeading, wordHeight, NUM_SPACES));
-          } else {
-            line.append(ch);
-          }
-          break;
+          addWordToLine(new RTab(textNode, container, fm, descent, ascentPlusLeading, wordHeight, NUM_SPACES));
+          lineStart = i + 1;
         }
       }
-      if (line.length() > 0) {
-        final RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading, wordHeight, textTransform);
-        this.addWordToLine(rword);
+      int lineEnd = length;
+      if ((lineEnd > lineStart) && (text[lineEnd - 1] == '\r')) {
+        lineEnd--;
+      }
+      if (lineEnd > lineStart) {
+        final Word word = wordCache.getWord(fm, textTransform, text, lineStart, lineEnd - lineStart);
+        this.addWordToLine(new RWord(textNode, word, container, fm, descent, ascentPlusLeading, wordHeight));
       }
     }
   }
@@ -1442,25 +1557,24 @@ public class RBlockViewport extends BaseRCollection {
     final ArrayList<BoundableRenderable> sr = this.seqRenderables;
     Iterator<Renderable> baseIterator = null;
     if (sr != null) {
-      final Renderable[] array = sr.toArray(Renderable.EMPTY_ARRAY);
-      final Range range = MarkupUtilities.findRenderables(array, clipBounds, true);
-      baseIterator = ArrayUtilities.iterator(array, range.offset, range.length);
+      final ArrayList<Renderable> seqMatches = new ArrayList<>();
+      this.getSeqIndex(sr).findIntersectingVertically(clipBounds.y, clipBounds.y + clipBounds.height, seqMatches);
+      baseIterator = seqMatches.iterator();
     }
 
     final SortedSet<PositionedRenderable> others = this.positionedRenderables;
     if ((others == null) || (others.size() == 0)) {
       return baseIterator;
     } else {
-      final ArrayList<PositionedRenderable> matches = new ArrayList<>();
+      final ArrayList<PositionedRenderable> candidates = new ArrayList<>();
+      this.getPositionedClipIndex(others).findIntersecting(clipBounds.x, clipBounds.y, clipBounds.x + clipBounds.width,
+          clipBounds.y + clipBounds.height, candidates);
       // ArrayList "matches" keeps the order from "others".
-      final Iterator<PositionedRenderable> i = others.iterator();
-      while (i.hasNext()) {
-        final PositionedRenderable pr = i.next();
-        // if (pr.isFixed() || clipBounds.intersects(pr.renderable.getVisualBounds())) {
+      final ArrayList<PositionedRenderable> matches = new ArrayList<>(candidates.size());
+      for (final PositionedRenderable pr : candidates) {
         if (pr.isFixed() || clipBounds.intersects(pr.getVisualBounds())) {
           matches.add(pr);
         }
-        // matches.add(pr);
       }
       if (matches.size() == 0) {
         return baseIterator;
@@ -1492,63 +1606,55 @@ public class RBlockViewport extends BaseRCollection {
   public Iterator<? extends Renderable> getRenderables(final int pointx, final int pointy) {
     Collection<BoundableRenderable> result = null;
     final SortedSet<PositionedRenderable> others = this.positionedRenderables;
-    final int size = others == null ? 0 : others.size();
-    final PositionedRenderable[] otherArray = size == 0 ? null : others.toArray(PositionedRenderable.EMPTY_ARRAY);
+    List<PositionedRenderable> otherCandidates = null;
+    if ((others != null) && (others.size() != 0)) {
+      // Candidates keep the z-index order of "others".
+      otherCandidates = new ArrayList<>();
+      this.getPositionedPointIndex(others).findContaining(pointx, pointy, otherCandidates);
+    }
     // Try to find in other renderables with z-index >= 0 first.
     int index = 0;
-    if (otherArray != null) {
+    if (otherCandidates != null) {
       // Must go in reverse order
-      for (index = size; --index >= 0;) {
-        final PositionedRenderable pr = otherArray[index];
+      for (index = otherCandidates.size(); --index >= 0;) {
+        final PositionedRenderable pr = otherCandidates.get(index);
         final BoundableRenderable br = pr.renderable;
         if (br.getZIndex() < 0) {
           break;
         }
         if (br.contains(pointx, pointy)) {
           if (result == null) {
-            result = new LinkedList<>();
+            result = new ArrayList<>();
           }
           result.add(br);
         }
       }
     }
 
-    // Now do a "binary" search on sequential renderables.
-    /*
-    final ArrayList<BoundableRenderable> sr = this.seqRenderables;
-    if (sr != null) {
-      final Renderable[] array = sr.toArray(Renderable.EMPTY_ARRAY);
-      final BoundableRenderable found = MarkupUtilities.findRenderable(array, pointx, pointy, true);
-      if (found != null) {
-        if (result == null) {
-          result = new LinkedList<>();
-        }
-        result.add(found);
-      }
-    }*/
-
     /* Get all sequential renderables that contain the point */
     final ArrayList<BoundableRenderable> sr = this.seqRenderables;
     if (sr != null) {
-      final Renderable[] array = sr.toArray(Renderable.EMPTY_ARRAY);
-      final List<BoundableRenderable> found = MarkupUtilities.findRenderables(array, pointx, pointy, true);
-      if (found != null) {
-        if (result == null) {
-          result = new LinkedList<>();
+      final ArrayList<BoundableRenderable> seqCandidates = new ArrayList<>();
+      this.getSeqIndex(sr).findContaining(pointx, pointy, seqCandidates);
+      for (final BoundableRenderable br : seqCandidates) {
+        if ((!br.isDelegated()) && br.contains(pointx, pointy)) {
+          if (result == null) {
+            result = new ArrayList<>();
+          }
+          result.add(br);
         }
-        result.addAll(found);
       }
     }
 
     // Finally, try to find it in renderables with z-index < 0.
-    if (otherArray != null) {
+    if (otherCandidates != null) {
       // Must go in reverse order
       for (; index >= 0; index--) {
-        final PositionedRenderable pr = otherArray[index];
+        final PositionedRenderable pr = otherCandidates.get(index);
         final BoundableRenderable br = pr.renderable;
         if (br.contains(pointx, pointy)) {
           if (result == null) {
-            result = new LinkedList<>();
+            result = new ArrayList<>();
           }
           result.add(br);
         }
@@ -1770,9 +1876,60 @@ public class RBlockViewport extends BaseRCollection {
       this.positionedRenderables = others;
     }
     others.add(pr);
+    this.positionedPointIndex = null;
+    this.positionedClipIndex = null;
     // System.out.println("  total: " + others.size());
   }
 
+  private void invalidateIndexes() {
+    this.seqIndex = null;
+    this.positionedPointIndex = null;
+    this.positionedClipIndex = null;
+  }
+
+  private RenderableIndex<BoundableRenderable> getSeqIndex(final ArrayList<BoundableRenderable> sr) {
+    RenderableIndex<BoundableRenderable> index = this.seqIndex;
+    if ((index == null) || !index.isBuiltFrom(sr)) {
+      index = new RenderableIndex<>(sr, BoundableRenderable::getVisualBounds);
+      this.seqIndex = index;
+    }
+    return index;
+  }
+
+  private RenderableIndex<PositionedRenderable> getPositionedPointIndex(final SortedSet<PositionedRenderable> others) {
+    RenderableIndex<PositionedRenderable> index = this.positionedPointIndex;
+    if ((index == null) || !index.isBuiltFrom(others)) {
+      index = new RenderableIndex<>(others, pr -> pr.renderable.getVisualBounds());
+      this.positionedPointIndex = index;
+    }
+    return index;
+  }
+
+  private RenderableIndex<PositionedRenderable> getPositionedClipIndex(final SortedSet<PositionedRenderable> others) {
+    RenderableIndex<PositionedRenderable> index = this.positionedClipIndex;
+    if ((index == null) || !index.isBuiltFrom(others)) {
+      index = new RenderableIndex<>(others, pr -> pr.hasStableVisualBounds() ? pr.getVisualBounds() : null);
+      this.positionedClipIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Checks whether any positioned renderable of this viewport is fixed, i.e.
+   * doesn't move when the viewport is scrolled.
+   */
+  boolean hasFixedRenderables() {
+    final SortedSet<PositionedRenderable> others = this.positionedRenderables;
+    if (others != null) {
+      for (final PositionedRenderable pr : others) {
+        if (pr.isFixed()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   public int getFirstLineHeight() {
     final ArrayList<BoundableRenderable> renderables = this.seqRenderables;
     if (renderables != null) {
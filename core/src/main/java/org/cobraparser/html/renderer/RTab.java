@@ -23,12 +23,15 @@ package org.cobraparser.html.renderer;
 import java.awt.FontMetrics;
 
 import org.cobraparser.html.domimpl.ModelNode;
+import org.cobraparser.html.style.RenderState;
+import org.cobraparser.html.style.WordWidthCache;
 
 public class RTab extends RWord {
 
   public RTab(final ModelNode me, final RenderableContainer container, final FontMetrics fontMetrics, final int descent, final int ascentPlusLeading,
       final int height, final int numSpaces) {
-    super(me, "\t", container, fontMetrics, descent, ascentPlusLeading, height, 0);
+    super(me, WordWidthCache.getInstance().getWord(fontMetrics, RenderState.TEXTTRANSFORM_NONE, "\t"), container, fontMetrics, descent,
+        ascentPlusLeading, height);
     this.width = fontMetrics.charWidth(' ') * numSpaces;
   }
 
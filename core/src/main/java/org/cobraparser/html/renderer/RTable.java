@@ -162,6 +162,7 @@ class RTable extends BaseBlockyRenderable {
   @Override
   public void invalidateLayoutLocal() {
     super.invalidateLayoutLocal();
+    this.tableMatrix.invalidateStructure();
     this.cachedLayout.clear();
     this.lastLayoutKey = null;
     this.lastLayoutValue = null;
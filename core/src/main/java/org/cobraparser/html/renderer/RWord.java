@@ -30,6 +30,7 @@ import java.awt.event.MouseEvent;
 
 import org.cobraparser.html.domimpl.ModelNode;
 import org.cobraparser.html.style.RenderState;
+import org.cobraparser.html.style.WordWidthCache.Word;
 
 class RWord extends BaseBoundableRenderable {
   final String shownWord;
@@ -37,37 +38,17 @@ class RWord extends BaseBoundableRenderable {
   public final int descent;
   public final int ascentPlusLeading;
 
-  public RWord(final ModelNode me, final String word, final RenderableContainer container, final FontMetrics fontMetrics,
-      final int descent, final int ascentPlusLeading,
-      final int height, final int textTransform) {
+  public RWord(final ModelNode me, final Word word, final RenderableContainer container, final FontMetrics fontMetrics,
+      final int descent, final int ascentPlusLeading, final int height) {
     super(container, me);
-    final String renderedWord = textTransform == RenderState.TEXTTRANSFORM_NONE ? word : transformText(word, textTransform);
-    this.shownWord = renderedWord;
+    this.shownWord = word.text;
     this.fontMetrics = fontMetrics;
     this.descent = descent;
     this.ascentPlusLeading = ascentPlusLeading;
     this.height = height;
     // TODO: In anti-aliasing, stringWidth is said not to be reliable.
     // Dimensions set when constructed.
-    this.width = fontMetrics.stringWidth(renderedWord);
-  }
-
-  private static String transformText(final String word, final int textTransform) {
-    String string;
-    switch (textTransform) {
-    case RenderState.TEXTTRANSFORM_CAPITALIZE:
-      string = Character.toTitleCase(word.charAt(0)) + word.substring(1).toLowerCase();
-      break;
-    case RenderState.TEXTTRANSFORM_LOWERCASE:
-      string = word.toLowerCase();
-      break;
-    case RenderState.TEXTTRANSFORM_UPPERCASE:
-      string = word.toUpperCase();
-      break;
-    default:
-      string = word;
-    }
-    return string;
+    this.width = word.width;
   }
 
   @Override
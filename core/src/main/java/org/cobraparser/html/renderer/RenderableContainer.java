@@ -41,6 +41,26 @@ public interface RenderableContainer {
 
   public void repaint(int x, int y, int width, int height);
 
+  /**
+   * Repaints the given area, knowing that the content in
+   * <code>scrolledArea</code> was just scrolled by the given offset, so that
+   * what was already painted there can be moved rather than painted again.
+   */
+  default public void repaintScrolled(final int x, final int y, final int width, final int height, final Rectangle scrolledArea,
+      final int dx, final int dy) {
+    this.repaint(x, y, width, height);
+  }
+
+  /**
+   * Gets the part of the document that has to be laid out in full, for
+   * containers that only lay out what is near the visible area. Only asked of
+   * the outermost container. Returns <code>null</code> if everything is laid
+   * out.
+   */
+  default public LayoutWindow getLayoutWindow() {
+    return null;
+  }
+
   public void relayout();
 
   public void updateAllWidgetBounds();
@@ -0,0 +1,153 @@
+package org.cobraparser.html.renderer;
+
+import java.awt.Rectangle;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A spatial index over the renderables of a viewport, so that painting a clip
+ * area or hit-testing a point doesn't have to look at every renderable.
+ * <p>
+ * The renderables are kept in their original order and grouped in leaves of a
+ * few consecutive renderables. A balanced tree over the leaves keeps, for each
+ * node, the box enclosing all the renderables below it. Renderables in a
+ * viewport are mostly laid out top to bottom, so nodes far from a query are
+ * skipped as a whole, and queries take logarithmic time plus the number of
+ * matches. Matches are reported in the original order.
+ * <p>
+ * The index is a snapshot of the bounds at the time it was built and has to be
+ * built again when the renderables move. Renderables without stable bounds
+ * can be given <code>null</code> bounds, in which case they match any query
+ * and the caller is expected to check them itself.
+ */
+final class RenderableIndex<R extends Renderable> {
+  private static final int LEAF_SIZE = 8;
+
+  private final Object[] items;
+  private final int[] itemBounds;
+  private final int[] nodeBounds;
+  private final int firstLeaf;
+  private final Collection<? extends R> source;
+  private final int sourceSize;
+
+  /**
+   * @param boundsOf
+   *          gets the bounds of a renderable, or <code>null</code> if it should
+   *          match any query
+   */
+  RenderableIndex(final Collection<? extends R> renderables, final Function<? super R, Rectangle> boundsOf) {
+    this.source = renderables;
+    this.sourceSize = renderables.size();
+    final Object[] items = renderables.toArray();
+    final int size = items.length;
+    final int[] itemBounds = new int[size * 4];
+    for (int i = 0; i < size; i++) {
+      @SuppressWarnings("unchecked")
+      final Rectangle bounds = boundsOf.apply((R) items[i]);
+      if (bounds == null) {
+        setBox(itemBounds, i, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+      } else {
+        setBox(itemBounds, i, bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height);
+      }
+    }
+    final int leafCount = Math.max(1, (size + LEAF_SIZE - 1) / LEAF_SIZE);
+    int firstLeaf = 1;
+    while (firstLeaf < leafCount) {
+      firstLeaf <<= 1;
+    }
+    final int[] nodeBounds = new int[firstLeaf * 2 * 4];
+    for (int leaf = 0; leaf < firstLeaf; leaf++) {
+      final int node = firstLeaf + leaf;
+      setBox(nodeBounds, node, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+      final int end = Math.min(size, (leaf + 1) * LEAF_SIZE);
+      for (int i = leaf * LEAF_SIZE; i < end; i++) {
+        union(nodeBounds, node, itemBounds, i);
+      }
+    }
+    for (int node = firstLeaf - 1; node >= 1; node--) {
+      setBox(nodeBounds, node, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+      union(nodeBounds, node, nodeBounds, node * 2);
+      union(nodeBounds, node, nodeBounds, (node * 2) + 1);
+    }
+    this.items = items;
+    this.itemBounds = itemBounds;
+    this.nodeBounds = nodeBounds;
+    this.firstLeaf = firstLeaf;
+  }
+
+  /**
+   * Checks whether this index was built from the given collection in its
+   * current state. Viewports only ever append renderables to their
+   * collections, or replace them, between layouts.
+   */
+  boolean isBuiltFrom(final Collection<? extends R> renderables) {
+    return (this.source == renderables) && (this.sourceSize == renderables.size());
+  }
+
+  /**
+   * Adds the renderables whose bounds intersect the given area, edges
+   * included, to <code>result</code>, in their original order.
+   */
+  void findIntersecting(final int minX, final int minY, final int maxX, final int maxY, final List<? super R> result) {
+    this.find(1, minX, minY, maxX, maxY, result);
+  }
+
+  /**
+   * Adds the renderables whose bounds intersect the given vertical range, edges
+   * included, to <code>result</code>, in their original order.
+   */
+  void findIntersectingVertically(final int minY, final int maxY, final List<? super R> result) {
+    this.find(1, Integer.MIN_VALUE, minY, Integer.MAX_VALUE, maxY, result);
+  }
+
+  /**
+   * Adds the renderables whose bounds may contain the given point to
+   * <code>result</code>, in their original order. The caller still has to check
+   * containment, as edges are included.
+   */
+  void findContaining(final int x, final int y, final List<? super R> result) {
+    this.find(1, x, y, x, y, result);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void find(final int node, final int minX, final int minY, final int maxX, final int maxY, final List<? super R> result) {
+    if (!intersects(this.nodeBounds, node, minX, minY, maxX, maxY)) {
+      return;
+    }
+    if (node >= this.firstLeaf) {
+      final int leaf = node - this.firstLeaf;
+      final int end = Math.min(this.items.length, (leaf + 1) * LEAF_SIZE);
+      for (int i = leaf * LEAF_SIZE; i < end; i++) {
+        if (intersects(this.itemBounds, i, minX, minY, maxX, maxY)) {
+          result.add((R) this.items[i]);
+        }
+      }
+    } else {
+      this.find(node * 2, minX, minY, maxX, maxY, result);
+      this.find((node * 2) + 1, minX, minY, maxX, maxY, result);
+    }
+  }
+
+  private static boolean intersects(final int[] boxes, final int index, final int minX, final int minY, final int maxX, final int maxY) {
+    final int offset = index * 4;
+    return (boxes[offset] <= maxX) && (boxes[offset + 1] <= maxY) && (boxes[offset + 2] >= minX) && (boxes[offset + 3] >= minY);
+  }
+
+  private static void setBox(final int[] boxes, final int index, final int minX, final int minY, final int maxX, final int maxY) {
+    final int offset = index * 4;
+    boxes[offset] = minX;
+    boxes[offset + 1] = minY;
+    boxes[offset + 2] = maxX;
+    boxes[offset + 3] = maxY;
+  }
+
+  private static void union(final int[] boxes, final int index, final int[] otherBoxes, final int otherIndex) {
+    final int offset = index * 4;
+    final int otherOffset = otherIndex * 4;
+    boxes[offset] = Math.min(boxes[offset], otherBoxes[otherOffset]);
+    boxes[offset + 1] = Math.min(boxes[offset + 1], otherBoxes[otherOffset + 1]);
+    boxes[offset + 2] = Math.max(boxes[offset + 2], otherBoxes[otherOffset + 2]);
+    boxes[offset + 3] = Math.max(boxes[offset + 3], otherBoxes[otherOffset + 3]);
+  }
+}
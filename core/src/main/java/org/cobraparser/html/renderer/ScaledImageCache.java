@@ -0,0 +1,211 @@
+package org.cobraparser.html.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Down-scaled copies of images, so that an image drawn smaller than its
+ * intrinsic size is resampled once rather than on every paint. Copies are
+ * looked up by the identity of the source image and the size in device
+ * pixels, and the least recently used ones are evicted once their pixels take
+ * up more than {@link #MAX_BYTES}.
+ * <p>
+ * Resampling is done on a background thread. Until a copy is ready,
+ * {@link #get(Image, int, int, Runnable)} returns <code>null</code> and the
+ * caller is expected to draw the source image with a cheaper interpolation.
+ * <p>
+ * Only images whose pixels have all been produced are cached. An image that
+ * is still loading, or that is animated, is never complete, so it is drawn
+ * directly on every paint. Observers of an image should call
+ * {@link #remove(Image)} when it reports new pixels.
+ */
+final class ScaledImageCache {
+  private static final long MAX_BYTES = 64L * 1024 * 1024;
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final ScaledImageCache instance = new ScaledImageCache();
+
+  private final Map<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<Key> pending = new HashSet<>();
+  private long totalBytes = 0;
+
+  private final ExecutorService scaler = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+    final Thread t = new Thread(r, "Image Scaler");
+    t.setDaemon(true);
+    t.setPriority(Thread.MIN_PRIORITY);
+    return t;
+  });
+
+  private ScaledImageCache() {
+    ((ThreadPoolExecutor) this.scaler).allowCoreThreadTimeOut(true);
+  }
+
+  static ScaledImageCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the copy of the image scaled to the given size, scheduling it to be
+   * made if there is none yet.
+   *
+   * @param onReady
+   *          called from the background thread once the copy has been made,
+   *          typically to repaint
+   * @return the scaled copy, or <code>null</code> if it isn't ready yet
+   */
+  BufferedImage get(final Image image, final int targetWidth, final int targetHeight, final Runnable onReady) {
+    if ((Toolkit.getDefaultToolkit().checkImage(image, -1, -1, null) & ImageObserver.ALLBITS) == 0) {
+      return null;
+    }
+    final Key key = new Key(image, targetWidth, targetHeight);
+    synchronized (this) {
+      final BufferedImage scaled = this.images.get(key);
+      if ((scaled != null) || !this.pending.add(key)) {
+        return scaled;
+      }
+    }
+    this.scaler.execute(() -> {
+      BufferedImage scaled = null;
+      try {
+        scaled = getScaledInstance(image, targetWidth, targetHeight, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+      } finally {
+        synchronized (this) {
+          // The key is no longer pending if the image changed while it was scaled.
+          if (this.pending.remove(key) && (scaled != null)) {
+            this.put(key, scaled);
+          }
+        }
+      }
+      onReady.run();
+    });
+    return null;
+  }
+
+  /**
+   * Drops the copies of an image, and those being made, because its pixels
+   * changed, as when a frame or the rest of the image has been produced.
+   */
+  synchronized void remove(final Image image) {
+    this.pending.removeIf(key -> key.imageRef.get() == image);
+    final Iterator<Map.Entry<Key, BufferedImage>> i = this.images.entrySet().iterator();
+    while (i.hasNext()) {
+      final Map.Entry<Key, BufferedImage> entry = i.next();
+      if (entry.getKey().imageRef.get() == image) {
+        this.totalBytes -= getBytes(entry.getValue());
+        i.remove();
+      }
+    }
+  }
+
+  // Call holding the lock
+  private void put(final Key key, final BufferedImage scaled) {
+    final long bytes = getBytes(scaled);
+    if (bytes > MAX_BYTES) {
+      return;
+    }
+    final BufferedImage previous = this.images.put(key, scaled);
+    if (previous != null) {
+      this.totalBytes -= getBytes(previous);
+    }
+    this.totalBytes += bytes;
+    final Iterator<Map.Entry<Key, BufferedImage>> i = this.images.entrySet().iterator();
+    while ((this.totalBytes > MAX_BYTES) && i.hasNext()) {
+      final Map.Entry<Key, BufferedImage> eldest = i.next();
+      this.totalBytes -= getBytes(eldest.getValue());
+      i.remove();
+    }
+  }
+
+  private static long getBytes(final BufferedImage image) {
+    return (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+  }
+
+  // Adapted from: https://today.java.net/pub/a/today/2007/04/03/perils-of-image-getscaledinstance.html
+  /**
+   * Convenience method that returns a scaled instance of the provided {@code BufferedImage}.
+   *
+   * @param img the original image to be scaled
+   * @param targetWidth the desired width of the scaled instance, in pixels
+   * @param targetHeight the desired height of the scaled instance, in pixels
+   * @param hint one of the rendering hints that corresponds to {@code RenderingHints.KEY_INTERPOLATION}
+   * @return a scaled version of the original {@code BufferedImage}
+   */
+  private static BufferedImage getScaledInstance(final Image img, final int targetWidth, final int targetHeight, final Object hint) {
+    final int type = BufferedImage.TYPE_INT_ARGB;
+    Image ret = img;
+    int w = img.getWidth(null);
+    int h = img.getHeight(null);
+
+    do {
+      if (w > targetWidth) {
+        w /= 2;
+      }
+      if (w < targetWidth) {
+        w = targetWidth;
+      }
+
+      if (h > targetHeight) {
+        h /= 2;
+      }
+      if (h < targetHeight) {
+        h = targetHeight;
+      }
+
+      BufferedImage tmp = new BufferedImage(w, h, type);
+      Graphics2D g2 = tmp.createGraphics();
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
+      g2.drawImage(ret, 0, 0, w, h, null);
+      g2.dispose();
+
+      ret = tmp;
+    } while (w != targetWidth || h != targetHeight);
+
+    return (BufferedImage) ret;
+  }
+
+  private static final class Key {
+    // Weak, so that the cache doesn't keep the images of closed pages alive.
+    private final WeakReference<Image> imageRef;
+    private final int imageHash;
+    private final int width;
+    private final int height;
+
+    private Key(final Image image, final int width, final int height) {
+      this.imageRef = new WeakReference<>(image);
+      this.imageHash = System.identityHashCode(image);
+      this.width = width;
+      this.height = height;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      final Image image = this.imageRef.get();
+      return (image != null) && (image == other.imageRef.get()) && (this.width == other.width) && (this.height == other.height);
+    }
+
+    @Override
+    public int hashCode() {
+      return (((this.imageHash * 31) + this.width) * 31) + this.height;
+    }
+  }
+}
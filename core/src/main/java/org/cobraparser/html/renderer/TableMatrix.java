@@ -30,6 +30,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
 
 import org.cobraparser.html.HtmlRendererContext;
 import org.cobraparser.html.domimpl.AnonymousNodeImpl;
@@ -47,6 +49,14 @@ import org.cobraparser.html.style.RenderThreadState;
 import org.cobraparser.ua.UserAgentContext;
 
 final class TableMatrix {
+  /**
+   * Whether cells of large tables are pre-laid out concurrently, in the common
+   * fork-join pool. Cells are then laid out outside the GUI thread, which
+   * documents with form controls in tables may not expect.
+   */
+  private static final boolean PARALLEL_CELL_LAYOUT = Boolean.getBoolean("cobra.parallelTableLayout");
+  private static final int PARALLEL_CELL_THRESHOLD = 64;
+
   private final ArrayList<Row> ROWS = new ArrayList<>();
   private final ArrayList<RowGroup> ROW_GROUPS = new ArrayList<>();
   private final ArrayList<RAbstractCell> ALL_CELLS = new ArrayList<>();
@@ -61,6 +71,9 @@ final class TableMatrix {
   private RowSizeInfo[] rowSizes;
   private int tableWidth;
   private int tableHeight;
+  private boolean structureValid = false;
+  private Object[] structureKey;
+  private boolean fixedLayout = false;
 
   /*
    * This is so that we can draw the lines inside the table that appear when a
@@ -123,9 +136,6 @@ final class TableMatrix {
   public void reset(final Insets insets, final int availWidth, final int availHeight) {
     // TODO: Incorporate into build() and calculate
     // sizes properly based on parameters.
-    ROW_GROUPS.clear();
-    ROWS.clear();
-    ALL_CELLS.clear();
     rowGroupSizes = null;
     // TODO: Does it need this old-style border?
     final int border = getBorderAttribute();
@@ -135,10 +145,24 @@ final class TableMatrix {
     this.cellSpacingY = cellSpacing;
 
     this.tableWidthLength = TableMatrix.getWidthLength(this.tableElement, availWidth);
-
-    this.populateRows();
-    this.adjustForCellSpans();
-    this.createSizeArrays();
+    this.fixedLayout = "fixed".equalsIgnoreCase(this.tableElement.getCurrentStyle().getTableLayout());
+
+    final Object[] structureKey = this.structureValid ? this.structureKey : this.getStructureKey();
+    if (sameStructure(structureKey, this.structureKey)) {
+      // Only the available size changed, or something inside a cell. The
+      // cells are kept, and with them the layouts they cached, e.g. for their
+      // content widths. A cell that was invalidated has dropped its own.
+      this.resetSizeArrays();
+    } else {
+      ROW_GROUPS.clear();
+      ROWS.clear();
+      ALL_CELLS.clear();
+      this.populateRows();
+      this.adjustForCellSpans();
+      this.createSizeArrays();
+      this.structureKey = structureKey;
+    }
+    this.structureValid = true;
 
     // Calculate widths of extras
     final ColSizeInfo[] columnSizes = this.columnSizes;
@@ -160,6 +184,72 @@ final class TableMatrix {
     this.hasOldStyleBorder = border > 0 ? 1 : 0;
   }
 
+  /**
+   * Called when the table or anything in it has been invalidated. The next
+   * layout checks whether the rows and cells have to be populated again, see
+   * {@link #getStructureKey()}.
+   */
+  void invalidateStructure() {
+    this.structureValid = false;
+  }
+
+  /**
+   * Lists what the row groups, rows and cells are made of: the nodes that
+   * {@link #populateRows()} turns into them, with their render states, and the
+   * spans of the cells. Rows and cells are populated again only when this
+   * changes, i.e. when a row or cell is inserted or removed, a span changes, or
+   * the style of the table, a row group, a row or a cell changes. Changes
+   * further inside a cell keep the structure.
+   */
+  private Object[] getStructureKey() {
+    final ArrayList<Object> key = new ArrayList<>();
+    key.add(this.tableElement.getRenderState());
+    addStructureKey(this.tableElement, RenderState.DISPLAY_TABLE, key);
+    return key.toArray();
+  }
+
+  private static void addStructureKey(final HTMLElementImpl parent, final int parentDisplay, final ArrayList<Object> key) {
+    final NodeImpl[] children = parent.getChildrenArray();
+    if (children == null) {
+      return;
+    }
+    for (final NodeImpl cn : children) {
+      if (cn instanceof HTMLElementImpl) {
+        final HTMLElementImpl ce = (HTMLElementImpl) cn;
+        final RenderState rs = ce.getRenderState();
+        final int display = rs.getDisplay();
+        key.add(ce);
+        key.add(rs);
+        if (display == RenderState.DISPLAY_TABLE_CELL && parentDisplay != RenderState.DISPLAY_TABLE_ROW_GROUP) {
+          key.add(ce.getAttribute("colspan"));
+          key.add(ce.getAttribute("rowspan"));
+        } else if (display == RenderState.DISPLAY_TABLE_ROW && parentDisplay != RenderState.DISPLAY_TABLE_ROW) {
+          addStructureKey(ce, display, key);
+        } else if ((display == RenderState.DISPLAY_TABLE_ROW_GROUP || display == RenderState.DISPLAY_TABLE_HEADER_GROUP
+            || display == RenderState.DISPLAY_TABLE_FOOTER_GROUP) && parentDisplay == RenderState.DISPLAY_TABLE) {
+          addStructureKey(ce, RenderState.DISPLAY_TABLE_ROW_GROUP, key);
+        }
+      } else if (cn instanceof TextImpl) {
+        key.add(cn);
+        key.add(((TextImpl) cn).isElementContentWhitespace());
+      }
+    }
+  }
+
+  private static boolean sameStructure(final Object[] key, final Object[] otherKey) {
+    if ((key == null) || (otherKey == null) || (key.length != otherKey.length)) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      final Object item = key[i];
+      final Object otherItem = otherKey[i];
+      if ((item != otherItem) && ((item instanceof NodeImpl) || (item instanceof RenderState) || !Objects.equals(item, otherItem))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private int getCellSpacingAttribute() {
     int cellSpacing = 0;
     final String cellSpacingText = this.tableElement.getAttribute("cellspacing");
@@ -753,6 +843,23 @@ final class TableMatrix {
     }
   }
 
+  /**
+   * Clears the sizes computed by the last layout, keeping the declared ones.
+   */
+  private void resetSizeArrays() {
+    for (final ColSizeInfo colSize : this.columnSizes) {
+      colSize.actualSize = 0;
+      colSize.fullActualSize = 0;
+      colSize.layoutSize = 0;
+      colSize.fullLayoutSize = 0;
+      colSize.minSize = 0;
+    }
+    for (final RowSizeInfo rowSize : this.rowSizes) {
+      rowSize.actualSize = 0;
+      rowSize.minSize = 0;
+    }
+  }
+
   /**
    * Determines the size of each column, and the table width. Does the
    * following:
@@ -804,10 +911,18 @@ final class TableMatrix {
 
     determineTentativeSizes(columnSizes, widthsOfExtras, cellAvailWidth, widthKnown);
 
+    if (this.fixedLayout && widthKnown) {
+      // With a fixed table layout, column widths don't depend on the contents
+      // of cells, so cells are only laid out for the heights of rows.
+      distributeFixedWidths(columnSizes, cellAvailWidth);
+      this.preLayout(hasBorder, cellSpacingX, cellSpacingY, false);
+      return;
+    }
+
     // Pre-layout cells. This will give the minimum width of each cell,
     // in addition to the minimum height.
 
-    this.preLayout(hasBorder, cellSpacingX, cellSpacingY, widthKnown);
+    this.preLayout(hasBorder, cellSpacingX, cellSpacingY, true);
 
     // Increases column widths if they are less than minimums of each cell.
 
@@ -932,6 +1047,35 @@ final class TableMatrix {
     }
   }
 
+  /**
+   * Shares the width not used by columns with a declared width equally among
+   * the other columns.
+   */
+  private static void distributeFixedWidths(final ColSizeInfo[] columnSizes, final int cellAvailWidth) {
+    int widthUsed = 0;
+    int numNoWidthColumns = 0;
+    for (final ColSizeInfo colSizeInfo : columnSizes) {
+      if (colSizeInfo.htmlLength == null) {
+        numNoWidthColumns++;
+      } else {
+        widthUsed += colSizeInfo.actualSize;
+      }
+    }
+    final int remainingWidth = cellAvailWidth - widthUsed;
+    if ((remainingWidth > 0) && (numNoWidthColumns > 0)) {
+      int noWidthCount = 0;
+      int widthGiven = 0;
+      for (final ColSizeInfo colSizeInfo : columnSizes) {
+        if (colSizeInfo.htmlLength == null) {
+          // The last one gets what's left after rounding.
+          final int size = (++noWidthCount == numNoWidthColumns) ? remainingWidth - widthGiven : remainingWidth / numNoWidthColumns;
+          colSizeInfo.actualSize = size;
+          widthGiven += size;
+        }
+      }
+    }
+  }
+
   /**
    * Expands column sizes according to layout sizes.
    */
@@ -1181,7 +1325,7 @@ final class TableMatrix {
    * This method renders each cell using already set actual column widths. It
    * sets minimum row heights based on this.
    */
-  private final void preLayout(final int hasBorder, final int cellSpacingX, final int cellSpacingY, final boolean tableWidthKnown) {
+  private final void preLayout(final int hasBorder, final int cellSpacingX, final int cellSpacingY, final boolean noWrapUndeclared) {
     // TODO: Fix for table without width that has a subtable with width=100%.
     // TODO: Maybe it can be addressed when NOWRAP is implemented.
     // TODO: Maybe it's possible to eliminate this pre-layout altogether.
@@ -1202,50 +1346,39 @@ final class TableMatrix {
       colSizes[i].fullLayoutSize = 0;
     }
 
-    for (RAbstractCell cell: this.ALL_CELLS) {
-      final int col = cell.getVirtualColumn();
-      final int colSpan = cell.getColSpan();
-      int cellsTotalWidth;
-      int cellsUsedWidth;
-      boolean widthDeclared = false;
-      if (colSpan > 1) {
-        cellsUsedWidth = 0;
-        for (int x = 0; x < colSpan; x++) {
-          final ColSizeInfo colSize = colSizes[col + x];
-          if (colSize.htmlLength != null) {
-            widthDeclared = true;
-          }
-          cellsUsedWidth += colSize.actualSize;
-        }
-        cellsTotalWidth = cellsUsedWidth + ((colSpan - 1) * (cellSpacingX + (2 * hasBorder)));
-      } else {
-        final ColSizeInfo colSize = colSizes[col];
-        if (colSize.htmlLength != null) {
-          widthDeclared = true;
-        }
-        cellsUsedWidth = cellsTotalWidth = colSize.actualSize;
+    // Cells only depend on the column widths, which don't change until all of
+    // them are laid out, so they can be laid out in any order.
+
+    final ArrayList<RAbstractCell> cells = this.ALL_CELLS;
+    final int numCells = cells.size();
+    final Dimension[] sizes = new Dimension[numCells];
+    final boolean outerNoWrap = RenderThreadState.getState().overrideNoWrap;
+    if (PARALLEL_CELL_LAYOUT && (numCells >= PARALLEL_CELL_THRESHOLD)) {
+      IntStream.range(0, numCells).parallel().forEach(i -> {
+        sizes[i] = this.preLayoutCell(cells.get(i), hasBorder, cellSpacingX, outerNoWrap, noWrapUndeclared);
+      });
+    } else {
+      for (int i = 0; i < numCells; i++) {
+        sizes[i] = this.preLayoutCell(cells.get(i), hasBorder, cellSpacingX, outerNoWrap, noWrapUndeclared);
       }
+    }
 
-      // TODO: A tentative height could be used here: Height of
-      // table divided by number of rows.
+    for (int i = 0; i < numCells; i++) {
+      final RAbstractCell cell = cells.get(i);
+      final Dimension size = sizes[i];
+      final int col = cell.getVirtualColumn();
+      final int colSpan = cell.getColSpan();
 
-      Dimension size;
-      final RenderThreadState state = RenderThreadState.getState();
-      final boolean prevOverrideNoWrap = state.overrideNoWrap;
-      try {
-        if (!prevOverrideNoWrap) {
-          state.overrideNoWrap = !widthDeclared;
-        }
-        size = cell.doCellLayout(cellsTotalWidth, 0, true, true, true);
-      } finally {
-        state.overrideNoWrap = prevOverrideNoWrap;
-      }
       // Set render widths
       final int cellLayoutWidth = size.width;
       Insets cbi = cell.getBorderInsets();
       final int cellFullLayoutWidth = size.width + cbi.left + cbi.right;
       if (colSpan > 1) {
         // TODO: set fullLayoutSize
+        int cellsUsedWidth = 0;
+        for (int x = 0; x < colSpan; x++) {
+          cellsUsedWidth += colSizes[col + x].actualSize;
+        }
         if (cellsUsedWidth > 0) {
           final double ratio = (double) cellLayoutWidth / cellsUsedWidth;
           for (int x = 0; x < colSpan; x++) {
@@ -1293,6 +1426,52 @@ final class TableMatrix {
     }
   }
 
+  /**
+   * Lays out a cell, for its size only, in the width of the columns it spans.
+   * Unless <code>noWrapUndeclared</code> is false, cells in columns without a
+   * declared width are laid out without wrapping, which gives their widest
+   * width.
+   */
+  private Dimension preLayoutCell(final RAbstractCell cell, final int hasBorder, final int cellSpacingX, final boolean outerNoWrap,
+      final boolean noWrapUndeclared) {
+    final ColSizeInfo[] colSizes = this.columnSizes;
+    final int col = cell.getVirtualColumn();
+    final int colSpan = cell.getColSpan();
+    int cellsTotalWidth;
+    boolean widthDeclared = false;
+    if (colSpan > 1) {
+      int cellsUsedWidth = 0;
+      for (int x = 0; x < colSpan; x++) {
+        final ColSizeInfo colSize = colSizes[col + x];
+        if (colSize.htmlLength != null) {
+          widthDeclared = true;
+        }
+        cellsUsedWidth += colSize.actualSize;
+      }
+      cellsTotalWidth = cellsUsedWidth + ((colSpan - 1) * (cellSpacingX + (2 * hasBorder)));
+    } else {
+      final ColSizeInfo colSize = colSizes[col];
+      if (colSize.htmlLength != null) {
+        widthDeclared = true;
+      }
+      cellsTotalWidth = colSize.actualSize;
+    }
+
+    // TODO: A tentative height could be used here: Height of
+    // table divided by number of rows.
+
+    // The state is per thread, so the override of an enclosing table is
+    // passed explicitly.
+    final RenderThreadState state = RenderThreadState.getState();
+    final boolean prevOverrideNoWrap = state.overrideNoWrap;
+    try {
+      state.overrideNoWrap = outerNoWrap || (noWrapUndeclared && !widthDeclared);
+      return cell.doCellLayout(cellsTotalWidth, 0, true, true, true);
+    } finally {
+      state.overrideNoWrap = prevOverrideNoWrap;
+    }
+  }
+
   private void determineRowSizes(final int hasBorder, final int cellSpacing, final int availHeight, final boolean sizeOnly) {
     final HtmlLength tableHeightLength = TableMatrix.getHeightLength(this.tableElement, availHeight);
     int tableHeight;
@@ -97,20 +97,24 @@ public class CSSUtilities {
   public static StyleSheet jParse(final org.w3c.dom.Node ownerNode, final String href, final HTMLDocumentImpl doc, final String baseUri,
       final boolean considerDoubleSlashComments) throws MalformedURLException {
     final UserAgentContext bcontext = doc.getUserAgentContext();
-    final NetworkRequest request = bcontext.createHttpRequest();
     final URL baseURL = new URL(baseUri);
     final URL cssURL = Urls.createURL(baseURL, href);
     final String cssURI = cssURL.toExternalForm();
-    // Perform a synchronous request
-    SecurityUtil.doPrivileged(() -> {
-      try {
-        request.open("GET", cssURI, false);
-        request.send(null, new Request(cssURL, RequestKind.CSS));
-      } catch (final IOException thrown) {
-        logger.warn("parse()", thrown);
-      }
-      return getEmptyStyleSheet();
-    });
+    NetworkRequest request = doc.takePreloadedResource(cssURL, RequestKind.CSS);
+    if (request == null) {
+      // Perform a synchronous request
+      final NetworkRequest syncRequest = bcontext.createHttpRequest();
+      SecurityUtil.doPrivileged(() -> {
+        try {
+          syncRequest.open("GET", cssURI, false);
+          syncRequest.send(null, new Request(cssURL, RequestKind.CSS));
+        } catch (final IOException thrown) {
+          logger.warn("parse()", thrown);
+        }
+        return getEmptyStyleSheet();
+      });
+      request = syncRequest;
+    }
     final int status = request.getStatus();
     if ((status != 200) && (status != 0)) {
       logger.warn("Unable to parse CSS. URI=[" + cssURI + "]. Response status was " + status + ".");
@@ -32,6 +32,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.function.Function;
+
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermLength;
+import cz.vutbr.web.css.TermLengthOrPercent;
+import cz.vutbr.web.css.TermPercent;
 
 public class HtmlValues {
   static final String BORDER_THIN_SIZE = "1px";
@@ -82,27 +88,19 @@ public class HtmlValues {
 
   public static HtmlInsets getMarginInsets(final CSS2Properties cssProperties, final RenderState renderState) {
     HtmlInsets insets = null;
-    final String topText = cssProperties.getMarginTop();
-    insets = updateInset(insets, topText, renderState, topUpdater);
-    final String leftText = cssProperties.getMarginLeft();
-    insets = updateInset(insets, leftText, renderState, leftUpdater);
-    final String bottomText = cssProperties.getMarginBottom();
-    insets = updateInset(insets, bottomText, renderState, bottomUpdater);
-    final String rightText = cssProperties.getMarginRight();
-    insets = updateInset(insets, rightText, renderState, rightUpdater);
+    insets = updateInset(insets, cssProperties, "margin-top", CSS2Properties::getMarginTop, renderState, topUpdater);
+    insets = updateInset(insets, cssProperties, "margin-left", CSS2Properties::getMarginLeft, renderState, leftUpdater);
+    insets = updateInset(insets, cssProperties, "margin-bottom", CSS2Properties::getMarginBottom, renderState, bottomUpdater);
+    insets = updateInset(insets, cssProperties, "margin-right", CSS2Properties::getMarginRight, renderState, rightUpdater);
     return insets;
   }
 
   public static HtmlInsets getPaddingInsets(final CSS2Properties cssProperties, final RenderState renderState) {
     HtmlInsets insets = null;
-    final String topText = cssProperties.getPaddingTop();
-    insets = updateInset(insets, topText, renderState, topUpdater);
-    final String leftText = cssProperties.getPaddingLeft();
-    insets = updateInset(insets, leftText, renderState, leftUpdater);
-    final String bottomText = cssProperties.getPaddingBottom();
-    insets = updateInset(insets, bottomText, renderState, bottomUpdater);
-    final String rightText = cssProperties.getPaddingRight();
-    insets = updateInset(insets, rightText, renderState, rightUpdater);
+    insets = updateInset(insets, cssProperties, "padding-top", CSS2Properties::getPaddingTop, renderState, topUpdater);
+    insets = updateInset(insets, cssProperties, "padding-left", CSS2Properties::getPaddingLeft, renderState, leftUpdater);
+    insets = updateInset(insets, cssProperties, "padding-bottom", CSS2Properties::getPaddingBottom, renderState, bottomUpdater);
+    insets = updateInset(insets, cssProperties, "padding-right", CSS2Properties::getPaddingRight, renderState, rightUpdater);
     return insets;
   }
 
@@ -119,20 +117,20 @@ public class HtmlValues {
   public static void populateBorderInsets(final BorderInfo binfo, final CSS2Properties cssProperties, final RenderState renderState) {
     HtmlInsets insets = null;
     if (binfo.topStyle != HtmlValues.BORDER_STYLE_NONE && binfo.topStyle != HtmlValues.BORDER_STYLE_HIDDEN) {
-      final String topText = cssProperties.getBorderTopWidth();
-      insets = updateBorderInset(insets, topText, renderState, topUpdater, binfo.topStyle);
+      insets = updateBorderInset(insets, cssProperties, "border-top-width", CSS2Properties::getBorderTopWidth, renderState,
+          topUpdater, binfo.topStyle);
     }
     if (binfo.leftStyle != HtmlValues.BORDER_STYLE_NONE && binfo.leftStyle != HtmlValues.BORDER_STYLE_HIDDEN) {
-      final String leftText = cssProperties.getBorderLeftWidth();
-      insets = updateBorderInset(insets, leftText, renderState, leftUpdater, binfo.leftStyle);
+      insets = updateBorderInset(insets, cssProperties, "border-left-width", CSS2Properties::getBorderLeftWidth, renderState,
+          leftUpdater, binfo.leftStyle);
     }
     if (binfo.bottomStyle != HtmlValues.BORDER_STYLE_NONE && binfo.bottomStyle != HtmlValues.BORDER_STYLE_HIDDEN) {
-      final String bottomText = cssProperties.getBorderBottomWidth();
-      insets = updateBorderInset(insets, bottomText, renderState, bottomUpdater, binfo.bottomStyle);
+      insets = updateBorderInset(insets, cssProperties, "border-bottom-width", CSS2Properties::getBorderBottomWidth, renderState,
+          bottomUpdater, binfo.bottomStyle);
     }
     if (binfo.rightStyle != HtmlValues.BORDER_STYLE_NONE && binfo.rightStyle != HtmlValues.BORDER_STYLE_HIDDEN) {
-      final String rightText = cssProperties.getBorderRightWidth();
-      insets = updateBorderInset(insets, rightText, renderState, rightUpdater, binfo.rightStyle);
+      insets = updateBorderInset(insets, cssProperties, "border-right-width", CSS2Properties::getBorderRightWidth, renderState,
+          rightUpdater, binfo.rightStyle);
     }
     binfo.insets = insets;
   }
@@ -221,6 +219,43 @@ public class HtmlValues {
     return insets;
   }
 
+  /**
+   * Updates an inset from the parsed value of the property when it is a
+   * length or a percentage, and from the text of the property otherwise.
+   */
+  private static HtmlInsets updateInset(final HtmlInsets insets, final CSS2Properties cssProperties, final String propertyName,
+      final Function<CSS2Properties, String> text, final RenderState renderState, final InsetUpdater updater) {
+    final Term<?> term = getValueTerm(cssProperties, propertyName);
+    if (term instanceof TermLength) {
+      return updateInset(insets, HtmlInsets.TYPE_PIXELS, getPixelSize((TermLength) term, renderState, 0), updater);
+    } else if (term instanceof TermPercent) {
+      return updateInset(insets, HtmlInsets.TYPE_PERCENT, ((TermPercent) term).getValue().intValue(), updater);
+    }
+    return updateInset(insets, text.apply(cssProperties), renderState, updater);
+  }
+
+  private static HtmlInsets updateBorderInset(final HtmlInsets insets, final CSS2Properties cssProperties, final String propertyName,
+      final Function<CSS2Properties, String> text, final RenderState renderState, final InsetUpdater updater, final int borderStyle) {
+    final Term<?> term = getValueTerm(cssProperties, propertyName);
+    if (term instanceof TermLength) {
+      return updateInset(insets, HtmlInsets.TYPE_PIXELS, getPixelSize((TermLength) term, renderState, 0), updater);
+    }
+    return updateBorderInset(insets, text.apply(cssProperties), renderState, updater, borderStyle);
+  }
+
+  private static HtmlInsets updateInset(HtmlInsets insets, final int type, final int value, final InsetUpdater updater) {
+    if (insets == null) {
+      insets = new HtmlInsets();
+    }
+    updater.updateType(insets, type);
+    updater.updateValue(insets, value);
+    return insets;
+  }
+
+  private static Term<?> getValueTerm(final CSS2Properties cssProperties, final String propertyName) {
+    return cssProperties instanceof JStyleProperties ? ((JStyleProperties) cssProperties).getValueTerm(propertyName) : null;
+  }
+
   private static HtmlInsets updateBorderInset(HtmlInsets insets, String sizeText, final RenderState renderState, final InsetUpdater updater, final int borderStyle) {
     if (sizeText == null) {
       if (borderStyle != BORDER_STYLE_NONE) {
@@ -367,6 +402,34 @@ public class HtmlValues {
     return Math.max(MINIMUM_FONT_SIZE_PIXELS, specifiedFontSize);
   }
 
+  /**
+   * Gets the font size for a parsed length or percentage, like
+   * {@link #getFontSize(String, RenderState)} does for its text.
+   */
+  public static final float getFontSize(final TermLengthOrPercent size, final RenderState parentRenderState) {
+    final float specifiedFontSize = getFontSizeImpl(size, parentRenderState);
+    if (specifiedFontSize == 0f) {
+      return specifiedFontSize;
+    }
+    return Math.max(MINIMUM_FONT_SIZE_PIXELS, specifiedFontSize);
+  }
+
+  private static final float getFontSizeImpl(final TermLengthOrPercent size, final RenderState parentRenderState) {
+    final double value = size.getValue().doubleValue();
+    if (size instanceof TermPercent) {
+      final double parentFontSize = parentRenderState == null ? 14.0 : parentRenderState.getFont().getSize();
+      return (float) ((parentFontSize * value) / 100.0);
+    }
+    final TermLength length = (TermLength) size;
+    if (length.getUnit() == TermLength.Unit.em) {
+      if (parentRenderState == null) {
+        return DEFAULT_FONT_SIZE;
+      }
+      return (int) Math.round(parentRenderState.getFont().getSize() * value);
+    }
+    return getPixelSize(length, parentRenderState, DEFAULT_FONT_SIZE_INT);
+  }
+
   private static final float getFontSizeImpl(final String spec, final RenderState parentRenderState) {
     final String specTL = spec.toLowerCase();
     if (specTL.endsWith("em")) {
@@ -544,6 +607,47 @@ public class HtmlValues {
     }
   }
 
+  /**
+   * Converts a parsed length to pixels, like
+   * {@link #getPixelSize(String, RenderState, int)} does for its text. Units it
+   * doesn't know are converted from the text of the length.
+   */
+  public static final int getPixelSize(final TermLength length, final RenderState renderState, final int errorValue) {
+    final TermLength.Unit unit = length.getUnit();
+    final Float value = length.getValue();
+    if ((unit == null) || (value == null)) {
+      return getPixelSize(length.toString().trim(), renderState, errorValue);
+    }
+    final double val = value.doubleValue();
+    switch (unit) {
+    case px:
+      return (int) Math.round(getDpi() * (val / 96));
+    case em:
+      if (renderState == null) {
+        break;
+      }
+      return (int) Math.round(renderState.getFont().getSize2D() * val);
+    case pt:
+      return (int) Math.round(getDpi() * (val / 72));
+    case in:
+      return (int) Math.round(getDpi() * val);
+    case pc:
+      return (int) Math.round(getDpi() * (val / 6));
+    case cm:
+      return (int) Math.round(getDpi() * (val / 2.54));
+    case mm:
+      return (int) Math.round(getDpi() * (val / 25.4));
+    case ex:
+      if (renderState == null) {
+        break;
+      }
+      return (int) Math.round(renderState.getFontXHeight() * val);
+    default:
+      break;
+    }
+    return getPixelSize(length.toString().trim(), renderState, errorValue);
+  }
+
   private static int getDpi() {
     if (GraphicsEnvironment.isHeadless()) {
       // TODO: Why is this 72? The CSS native resolution seems to be 96, so we could use that instead.
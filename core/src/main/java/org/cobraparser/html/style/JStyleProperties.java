@@ -67,6 +67,15 @@ abstract public class JStyleProperties extends AbstractScriptableDelegate implem
 
     @Override
     public String getBackgroundImage() {
+        final URL url = getBackgroundImageURL();
+        return url == null ? null : "url(" + url + ")";
+    }
+
+    /**
+     * Gets the URL of the background image, which {@link #getBackgroundImage()}
+     * gives as CSS text.
+     */
+    final URL getBackgroundImageURL() {
         Term<?> term = getNodeData().getValue("background-image", false);
 
         TermURI termURI = null;
@@ -85,18 +94,16 @@ abstract public class JStyleProperties extends AbstractScriptableDelegate implem
         // TODO
         // need to check if upstream can provide the absolute url of
         //  the image so that it can directly be passed.
-        String quotedUri = null;
+        URL finalUrl = null;
         if (termURI != null) {
-            URL finalUrl = null;
             try {
                 finalUrl = Urls.createURL(termURI.getBase(), termURI.getValue());
             }
             catch (final MalformedURLException e) {
                 e.printStackTrace();
             }
-            quotedUri = finalUrl == null ? null : finalUrl.toString();
         }
-        return quotedUri == null ? null : "url(" + quotedUri + ")";
+        return finalUrl;
     }
 
     @Override
@@ -786,6 +793,16 @@ abstract public class JStyleProperties extends AbstractScriptableDelegate implem
 
     abstract protected NodeData getNodeData();
 
+    /**
+     * Gets the computed value of a property as parsed, so that lengths can be
+     * read without formatting them as text and parsing them back. Returns
+     * <code>null</code> if the value is a keyword or is absent.
+     */
+    final Term<?> getValueTerm(final String propertyName) {
+        final NodeData nodeData = getNodeData();
+        return nodeData == null ? null : nodeData.getValue(propertyName, true);
+    }
+
     private String helperGetValue(final String propertyName) {
         final NodeData nodeData = getNodeData();
         if (nodeData != null) {
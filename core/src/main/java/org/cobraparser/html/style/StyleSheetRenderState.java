@@ -46,6 +46,10 @@ import org.w3c.dom.css.CSS2Properties;
 import org.w3c.dom.html.HTMLElement;
 
 import cz.vutbr.web.css.CSSProperty;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermLength;
+import cz.vutbr.web.css.TermLengthOrPercent;
+import cz.vutbr.web.css.TermPercent;
 
 /**
  * @author J. H. S.
@@ -166,10 +170,6 @@ public class StyleSheetRenderState implements RenderState {
   }
 
   public void invalidate() {
-    final Map<String, WordInfo> map = this.iWordInfoMap;
-    if (map != null) {
-      map.clear();
-    }
     this.iFont = null;
     this.iFontMetrics = null;
     this.iColor = null;
@@ -213,7 +213,11 @@ public class StyleSheetRenderState implements RenderState {
     String fontWeight = null;
     String fontFamily = null;
 
-    final String newFontSize = style.getFontSize();
+    // Lengths are read as parsed, without a round trip through their text.
+    final Term<?> fontSizeTerm = style.getValueTerm("font-size");
+    final TermLengthOrPercent fontSizeLength = (fontSizeTerm instanceof TermLength) || (fontSizeTerm instanceof TermPercent)
+        ? (TermLengthOrPercent) fontSizeTerm : null;
+    final String newFontSize = fontSizeLength == null ? style.getFontSize() : null;
     final String newFontFamily = style.getFontFamily();
     final String newFontStyle = style.getFontStyle();
     final String newFontVariant = style.getFontVariant();
@@ -221,7 +225,7 @@ public class StyleSheetRenderState implements RenderState {
     final String verticalAlign = style.getVerticalAlign();
     final boolean isSuper = (verticalAlign != null) && verticalAlign.equalsIgnoreCase("super");
     final boolean isSub = (verticalAlign != null) && verticalAlign.equalsIgnoreCase("sub");
-    if ((newFontSize == null) && (newFontWeight == null) && (newFontStyle == null) && (newFontFamily == null) && (newFontVariant == null)) {
+    if ((fontSizeLength == null) && (newFontSize == null) && (newFontWeight == null) && (newFontStyle == null) && (newFontFamily == null) && (newFontVariant == null)) {
       if (!isSuper && !isSub) {
         if (prs != null) {
           return prs.getFont();
@@ -232,7 +236,9 @@ public class StyleSheetRenderState implements RenderState {
         }
       }
     }
-    if (newFontSize != null) {
+    if (fontSizeLength != null) {
+      fontSize = Float.valueOf(HtmlValues.getFontSize(fontSizeLength, prs));
+    } else if (newFontSize != null) {
       try {
         fontSize = new Float(HtmlValues.getFontSize(newFontSize, prs));
       } catch (final Exception err) {
@@ -426,28 +432,15 @@ public class StyleSheetRenderState implements RenderState {
     this.iHighlight = highlight;
   }
 
-  Map<String, WordInfo> iWordInfoMap = null;
-
   public final WordInfo getWordInfo(final String word) {
-    // Expected to be called only in the GUI (rendering) thread.
-    // No synchronization necessary.
-    Map<String, WordInfo> map = this.iWordInfoMap;
-    if (map == null) {
-      map = new HashMap<>(1);
-      this.iWordInfoMap = map;
-    }
-    WordInfo wi = map.get(word);
-    if (wi != null) {
-      return wi;
-    }
-    wi = new WordInfo();
+    // Widths are kept in the shared cache, which survives invalidate().
+    final WordInfo wi = new WordInfo();
     final FontMetrics fm = this.getFontMetrics();
     wi.fontMetrics = fm;
     wi.ascentPlusLeading = fm.getAscent() + fm.getLeading();
     wi.descent = fm.getDescent();
     wi.height = fm.getHeight();
-    wi.width = fm.stringWidth(word);
-    map.put(word, wi);
+    wi.width = WordWidthCache.getInstance().getWord(fm, TEXTTRANSFORM_NONE, word).width;
     return wi;
   }
 
@@ -569,15 +562,12 @@ public class StyleSheetRenderState implements RenderState {
         binfo = new BackgroundInfo();
         binfo.backgroundColor = ColorFactory.getInstance().getColor(backgroundColorText);
       }
-      final String backgroundImageText = props.getBackgroundImage();
-      if ((backgroundImageText != null) && (backgroundImageText.length() > 0)) {
-        final java.net.URL backgroundImage = HtmlValues.getURIFromStyleValue(backgroundImageText);
-        if (backgroundImage != null) {
-          if (binfo == null) {
-            binfo = new BackgroundInfo();
-          }
-          binfo.backgroundImage = backgroundImage;
+      final java.net.URL backgroundImage = props.getBackgroundImageURL();
+      if (backgroundImage != null) {
+        if (binfo == null) {
+          binfo = new BackgroundInfo();
         }
+        binfo.backgroundImage = backgroundImage;
       }
       final String backgroundRepeatText = props.getBackgroundRepeat();
       if (backgroundRepeatText != null) {
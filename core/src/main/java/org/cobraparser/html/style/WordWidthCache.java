@@ -0,0 +1,150 @@
+package org.cobraparser.html.style;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Advance widths of words, shared by all render states, so that laying out
+ * text again, e.g. after the window is resized, doesn't measure every word
+ * again. Words are looked up by font, text transform and characters, without
+ * making a string of them first, and the entry keeps the transformed word so
+ * that repeated words also share their string.
+ * <p>
+ * The cache is safe to use from several threads. It is bounded by keeping two
+ * generations of entries: when the current generation is full it becomes the
+ * old one, and the previous old one is dropped. Entries found in the old
+ * generation are moved to the current one, so words that keep being used stay
+ * cached.
+ */
+public final class WordWidthCache {
+  private static final int MAX_GENERATION_SIZE = 32 * 1024;
+  private static final WordWidthCache instance = new WordWidthCache();
+
+  private volatile Map<Key, Word> current = new ConcurrentHashMap<>();
+  private volatile Map<Key, Word> old = new ConcurrentHashMap<>();
+
+  private WordWidthCache() {
+  }
+
+  public static WordWidthCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the given characters with the text transform applied, and their
+   * width in the font of the given metrics.
+   */
+  public Word getWord(final FontMetrics fontMetrics, final int textTransform, final char[] chars, final int offset, final int length) {
+    final Key probe = new Key(fontMetrics, textTransform, chars, offset, length);
+    Word word = this.current.get(probe);
+    if (word != null) {
+      return word;
+    }
+    word = this.old.get(probe);
+    if (word == null) {
+      final String text = transformText(new String(chars, offset, length), textTransform);
+      word = new Word(text, fontMetrics.stringWidth(text));
+    }
+    this.put(probe.copy(), word);
+    return word;
+  }
+
+  public Word getWord(final FontMetrics fontMetrics, final int textTransform, final String text) {
+    return this.getWord(fontMetrics, textTransform, text.toCharArray(), 0, text.length());
+  }
+
+  private void put(final Key key, final Word word) {
+    final Map<Key, Word> map = this.current;
+    map.put(key, word);
+    if (map.size() > MAX_GENERATION_SIZE) {
+      synchronized (this) {
+        if (this.current == map) {
+          this.old = map;
+          this.current = new ConcurrentHashMap<>();
+        }
+      }
+    }
+  }
+
+  private static String transformText(final String word, final int textTransform) {
+    switch (textTransform) {
+    case RenderState.TEXTTRANSFORM_CAPITALIZE:
+      return word.isEmpty() ? word : Character.toTitleCase(word.charAt(0)) + word.substring(1).toLowerCase();
+    case RenderState.TEXTTRANSFORM_LOWERCASE:
+      return word.toLowerCase();
+    case RenderState.TEXTTRANSFORM_UPPERCASE:
+      return word.toUpperCase();
+    default:
+      return word;
+    }
+  }
+
+  public static final class Word {
+    /** The word with the text transform applied. */
+    public final String text;
+    public final int width;
+
+    private Word(final String text, final int width) {
+      this.text = text;
+      this.width = width;
+    }
+  }
+
+  private static final class Key {
+    private final Font font;
+    private final FontRenderContext fontRenderContext;
+    private final int textTransform;
+    private final char[] chars;
+    private final int offset;
+    private final int length;
+    private final int hash;
+
+    private Key(final FontMetrics fontMetrics, final int textTransform, final char[] chars, final int offset, final int length) {
+      this(fontMetrics.getFont(), fontMetrics.getFontRenderContext(), textTransform, chars, offset, length);
+    }
+
+    private Key(final Font font, final FontRenderContext fontRenderContext, final int textTransform, final char[] chars,
+        final int offset, final int length) {
+      this.font = font;
+      this.fontRenderContext = fontRenderContext;
+      this.textTransform = textTransform;
+      this.chars = chars;
+      this.offset = offset;
+      this.length = length;
+      int h = (font.hashCode() * 31) + textTransform;
+      for (int i = offset; i < offset + length; i++) {
+        h = (h * 31) + chars[i];
+      }
+      this.hash = h;
+    }
+
+    /**
+     * Makes a key that owns a copy of its characters, for storing in the map.
+     */
+    private Key copy() {
+      final char[] copied = Arrays.copyOfRange(this.chars, this.offset, this.offset + this.length);
+      return new Key(this.font, this.fontRenderContext, this.textTransform, copied, 0, this.length);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return (this.hash == other.hash) && (this.textTransform == other.textTransform)
+          && Arrays.equals(this.chars, this.offset, this.offset + this.length, other.chars, other.offset, other.offset + other.length)
+          && this.font.equals(other.font) && Objects.equals(this.fontRenderContext, other.fontRenderContext);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+}
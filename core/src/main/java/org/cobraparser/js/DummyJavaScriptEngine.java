@@ -46,6 +46,11 @@ class DummyJavaScriptEngine implements JavaScriptEngine {
             return false;
         }
 
+        @Override
+        public boolean hasEventListeners(NodeImpl node, String type) {
+            return false;
+        }
+
         @Override
         public void removeEventListener(NodeImpl node, String type, EventListener listener, boolean useCapture) {
 
@@ -0,0 +1,565 @@
+package org.cobraparser.ua;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.cobraparser.ua.ImageResponse.State;
+import org.cobraparser.ua.UserAgentContext.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * A {@link NetworkRequest} that loads HTTP and HTTPS URLs with a
+ * <code>java.net.http.HttpClient</code>, for user agents to return from
+ * {@link UserAgentContext#createHttpRequest()}.
+ * <p>
+ * All requests share one client and its connection pool. Responses are read
+ * with non-blocking I/O, so an asynchronous request in flight doesn't hold a
+ * thread. The body is delivered as it arrives: listeners are told of the
+ * {@link #STATE_INTERACTIVE} state for every chunk received, and the response
+ * text and bytes read at that point are what was received so far. Other URLs,
+ * such as files, are read with a <code>URLConnection</code>.
+ */
+public class HttpNetworkRequest implements NetworkRequest {
+  private static final Logger logger = LoggerFactory.getLogger(HttpNetworkRequest.class.getName());
+  private static final HttpClient client = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .connectTimeout(Duration.ofSeconds(30))
+      .build();
+  private static final byte[] NO_BYTES = new byte[0];
+  private static final int DECODE_BUFFER_SIZE = 8192;
+
+  private final UserAgentContext context;
+  private final List<NetworkRequestListener> listeners = new CopyOnWriteArrayList<>();
+  private final Map<String, String> requestHeaders = new LinkedHashMap<>();
+
+  private volatile int readyState = STATE_UNINITIALIZED;
+  private String method;
+  private URL url;
+  private boolean async;
+  private String userName;
+  private String password;
+  /**
+   * The exchange of the request in flight. Cancelling it stops the download.
+   */
+  private CompletableFuture<?> pending;
+  /**
+   * Counts the times the request was opened, so that a response to an earlier
+   * opening is ignored.
+   */
+  private int generation;
+
+  private int status;
+  private HttpHeaders responseHeaders;
+  private byte[] body = NO_BYTES;
+  private int bodyLength;
+  /**
+   * The text decoded so far. Bytes are decoded once, as the text is read, and
+   * those of a character that was only partly received are left for the next
+   * read.
+   */
+  private StringBuilder textBuilder = new StringBuilder();
+  private CharsetDecoder decoder;
+  private int decodedLength;
+  private boolean textComplete;
+  private String text;
+  private Document responseXML;
+  private ImageResponse responseImage;
+
+  public HttpNetworkRequest(final UserAgentContext context) {
+    this.context = context;
+  }
+
+  public int getReadyState() {
+    return this.readyState;
+  }
+
+  public synchronized String getResponseText() {
+    this.decodeText();
+    String text = this.text;
+    if ((text == null) || (text.length() != this.textBuilder.length())) {
+      text = this.textBuilder.toString();
+      this.text = text;
+    }
+    return text;
+  }
+
+  /**
+   * Decodes the bytes received since the text was last read. Once the response
+   * is complete, a character left incomplete at the end is decoded as a
+   * replacement character.
+   */
+  private void decodeText() {
+    if (this.textComplete) {
+      return;
+    }
+    final boolean endOfInput = this.readyState == STATE_COMPLETE;
+    if ((this.decodedLength == this.bodyLength) && !endOfInput) {
+      return;
+    }
+    CharsetDecoder decoder = this.decoder;
+    if (decoder == null) {
+      decoder = this.getCharset().newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      this.decoder = decoder;
+    }
+    final ByteBuffer in = ByteBuffer.wrap(this.body, this.decodedLength, this.bodyLength - this.decodedLength);
+    final CharBuffer out = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+    CoderResult result;
+    do {
+      result = decoder.decode(in, out, endOfInput);
+      this.appendDecoded(out);
+    } while (result.isOverflow());
+    this.decodedLength = in.position();
+    if (endOfInput) {
+      do {
+        result = decoder.flush(out);
+        this.appendDecoded(out);
+      } while (result.isOverflow());
+      this.textComplete = true;
+    }
+  }
+
+  private void appendDecoded(final CharBuffer out) {
+    out.flip();
+    this.textBuilder.append(out);
+    out.clear();
+  }
+
+  public synchronized Document getResponseXML() {
+    if ((this.responseXML == null) && (this.readyState == STATE_COMPLETE) && (this.bodyLength > 0)) {
+      try {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        this.responseXML = factory.newDocumentBuilder().parse(new ByteArrayInputStream(this.body, 0, this.bodyLength));
+      } catch (final Exception err) {
+        logger.info("getResponseXML(): Response from " + this.url + " is not XML: " + err);
+      }
+    }
+    return this.responseXML;
+  }
+
+  public synchronized ImageResponse getResponseImage() {
+    if (this.readyState != STATE_COMPLETE) {
+      return new ImageResponse();
+    }
+    if (this.responseImage == null) {
+      if (this.bodyLength == 0) {
+        this.responseImage = new ImageResponse(State.error, null);
+      } else {
+        final Image img = Toolkit.getDefaultToolkit().createImage(this.body, 0, this.bodyLength);
+        this.responseImage = new ImageResponse(State.loaded, img);
+      }
+    }
+    return this.responseImage;
+  }
+
+  public synchronized byte[] getResponseBytes() {
+    final byte[] body = this.body;
+    return this.bodyLength == body.length ? body : Arrays.copyOf(body, this.bodyLength);
+  }
+
+  /**
+   * Gets a read-only view of the bytes received so far, without copying them.
+   */
+  @Override
+  public synchronized ByteBuffer getResponseBuffer() {
+    return ByteBuffer.wrap(this.body, 0, this.bodyLength).asReadOnlyBuffer();
+  }
+
+  public synchronized int getStatus() {
+    return this.status;
+  }
+
+  public synchronized String getStatusText() {
+    switch (this.status) {
+    case 200:
+      return "OK";
+    case 201:
+      return "Created";
+    case 204:
+      return "No Content";
+    case 206:
+      return "Partial Content";
+    case 304:
+      return "Not Modified";
+    case 400:
+      return "Bad Request";
+    case 401:
+      return "Unauthorized";
+    case 403:
+      return "Forbidden";
+    case 404:
+      return "Not Found";
+    case 500:
+      return "Internal Server Error";
+    case 503:
+      return "Service Unavailable";
+    default:
+      return "";
+    }
+  }
+
+  public void abort() {
+    final CompletableFuture<?> pending;
+    synchronized (this) {
+      pending = this.pending;
+      this.pending = null;
+      this.generation++;
+    }
+    if (pending != null) {
+      pending.cancel(true);
+    }
+    this.changeState(STATE_ABORTED);
+  }
+
+  public synchronized String getAllResponseHeaders(final List<String> excludedHeadersLowerCase) {
+    final HttpHeaders headers = this.responseHeaders;
+    if (headers == null) {
+      return null;
+    }
+    final StringBuilder buffer = new StringBuilder();
+    headers.map().forEach((name, values) -> {
+      if (!excludedHeadersLowerCase.contains(name.toLowerCase(Locale.ROOT))) {
+        for (final String value : values) {
+          buffer.append(name).append(": ").append(value).append("\r\n");
+        }
+      }
+    });
+    return buffer.toString();
+  }
+
+  public synchronized String getResponseHeader(final String headerName) {
+    final HttpHeaders headers = this.responseHeaders;
+    if (headers == null) {
+      return null;
+    }
+    final List<String> values = headers.allValues(headerName);
+    return values.isEmpty() ? null : String.join(", ", values);
+  }
+
+  public void open(final String method, final String url) throws IOException {
+    this.open(method, new URL(url), true);
+  }
+
+  public void open(final String method, final URL url) throws IOException {
+    this.open(method, url, true);
+  }
+
+  public void open(final String method, final URL url, final boolean asyncFlag) throws IOException {
+    this.open(method, url, asyncFlag, null, null);
+  }
+
+  public void open(final String method, final String url, final boolean asyncFlag) throws IOException {
+    this.open(method, new URL(url), asyncFlag);
+  }
+
+  public void open(final String method, final URL url, final boolean asyncFlag, final String userName) throws IOException {
+    this.open(method, url, asyncFlag, userName, null);
+  }
+
+  public void open(final String method, final URL url, final boolean asyncFlag, final String userName, final String password)
+      throws IOException {
+    final CompletableFuture<?> pending;
+    synchronized (this) {
+      pending = this.pending;
+      this.pending = null;
+      this.generation++;
+      this.method = method;
+      this.url = url;
+      this.async = asyncFlag;
+      this.userName = userName;
+      this.password = password;
+      this.requestHeaders.clear();
+      this.status = 0;
+      this.responseHeaders = null;
+      this.body = NO_BYTES;
+      this.bodyLength = 0;
+      this.textBuilder = new StringBuilder();
+      this.decoder = null;
+      this.decodedLength = 0;
+      this.textComplete = false;
+      this.text = null;
+      this.responseXML = null;
+      this.responseImage = null;
+    }
+    if (pending != null) {
+      pending.cancel(true);
+    }
+    this.changeState(STATE_LOADING);
+  }
+
+  public void send(final String content, final Request requestType) throws IOException {
+    final URL url;
+    final int generation;
+    synchronized (this) {
+      url = this.url;
+      generation = this.generation;
+    }
+    if (url == null) {
+      throw new IllegalStateException("The request was not opened.");
+    }
+    if ((requestType != null) && !this.context.isRequestPermitted(requestType)) {
+      logger.info("send(): Request not permitted: " + requestType);
+      this.abort();
+      return;
+    }
+    final String protocol = url.getProtocol();
+    final CompletableFuture<?> exchange;
+    if ("http".equals(protocol) || "https".equals(protocol)) {
+      exchange = client.sendAsync(this.createHttpRequest(url, content), info -> this.handleResponse(url, generation, info));
+    } else {
+      // Reading local resources blocks, but only briefly.
+      exchange = CompletableFuture.runAsync(() -> this.readConnection(url, generation));
+    }
+    final CompletableFuture<?> done = exchange.whenComplete((result, err) -> this.complete(generation, err));
+    final boolean stale;
+    synchronized (this) {
+      stale = generation != this.generation;
+      if (!stale) {
+        this.pending = exchange;
+      }
+    }
+    if (stale) {
+      // Aborted or opened again while the exchange was being started.
+      exchange.cancel(true);
+    }
+    if (!this.async) {
+      try {
+        done.join();
+      } catch (final CompletionException ce) {
+        final Throwable cause = ce.getCause();
+        if (!(cause instanceof CancellationException)) {
+          throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+      } catch (final CancellationException ce) {
+        // Aborted.
+      }
+    }
+  }
+
+  private HttpRequest createHttpRequest(final URL url, final String content) throws IOException {
+    final HttpRequest.Builder builder;
+    try {
+      builder = HttpRequest.newBuilder(url.toURI());
+    } catch (final URISyntaxException e) {
+      throw new MalformedURLException(e.getMessage());
+    }
+    synchronized (this) {
+      builder.method(this.method, content == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(content));
+      this.requestHeaders.forEach(builder::header);
+      if (this.userName != null) {
+        final String credentials = this.userName + ":" + (this.password == null ? "" : this.password);
+        builder.header("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+      }
+    }
+    final String userAgent = this.context.getUserAgent();
+    if (userAgent != null) {
+      builder.header("User-Agent", userAgent);
+    }
+    if (this.context.isCookieEnabled()) {
+      final String cookie = this.context.getCookie(url);
+      if ((cookie != null) && (cookie.length() > 0)) {
+        builder.header("Cookie", cookie);
+      }
+    }
+    return builder.build();
+  }
+
+  private HttpResponse.BodySubscriber<Void> handleResponse(final URL url, final int generation, final HttpResponse.ResponseInfo info) {
+    if (this.context.isCookieEnabled()) {
+      for (final String cookieSpec : info.headers().allValues("Set-Cookie")) {
+        this.context.setCookie(url, cookieSpec);
+      }
+    }
+    final boolean stale;
+    synchronized (this) {
+      stale = generation != this.generation;
+      if (!stale) {
+        this.status = info.statusCode();
+        this.responseHeaders = info.headers();
+      }
+    }
+    if (!stale) {
+      this.changeState(STATE_LOADED);
+    }
+    return HttpResponse.BodySubscribers.fromSubscriber(new BodySubscriber(generation));
+  }
+
+  /**
+   * Receives the body as it arrives. It stops the download once the request is
+   * aborted or opened again.
+   */
+  private final class BodySubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+    private final int generation;
+    private Flow.Subscription subscription;
+
+    private BodySubscriber(final int generation) {
+      this.generation = generation;
+    }
+
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (isGeneration(this.generation)) {
+        subscription.request(Long.MAX_VALUE);
+      } else {
+        subscription.cancel();
+      }
+    }
+
+    public void onNext(final List<ByteBuffer> chunk) {
+      if (append(this.generation, chunk)) {
+        changeState(STATE_INTERACTIVE);
+      } else {
+        this.subscription.cancel();
+      }
+    }
+
+    public void onError(final Throwable throwable) {
+      // Reported by the response future.
+    }
+
+    public void onComplete() {
+    }
+  }
+
+  private void readConnection(final URL url, final int generation) {
+    try {
+      final URLConnection connection = url.openConnection();
+      try (final InputStream in = connection.getInputStream()) {
+        this.changeState(STATE_LOADED);
+        final byte[] buffer = new byte[8192];
+        int numRead;
+        while ((numRead = in.read(buffer)) != -1) {
+          if (!this.append(generation, List.of(ByteBuffer.wrap(buffer, 0, numRead)))) {
+            return;
+          }
+          this.changeState(STATE_INTERACTIVE);
+        }
+      }
+    } catch (final IOException err) {
+      throw new CompletionException(err);
+    }
+  }
+
+  private synchronized boolean isGeneration(final int generation) {
+    return generation == this.generation;
+  }
+
+  /**
+   * Appends received bytes to the body, unless the request was opened again.
+   */
+  private synchronized boolean append(final int generation, final List<ByteBuffer> buffers) {
+    if (generation != this.generation) {
+      return false;
+    }
+    for (final ByteBuffer buffer : buffers) {
+      final int count = buffer.remaining();
+      final int length = this.bodyLength;
+      if ((length + count) > this.body.length) {
+        this.body = Arrays.copyOf(this.body, Math.max(length + count, Math.max(8192, this.body.length * 2)));
+      }
+      buffer.get(this.body, length, count);
+      this.bodyLength = length + count;
+    }
+    return true;
+  }
+
+  private void complete(final int generation, final Throwable err) {
+    synchronized (this) {
+      if ((generation != this.generation) || (this.readyState == STATE_ABORTED)) {
+        return;
+      }
+      this.pending = null;
+      if (err != null) {
+        logger.info("Request to " + this.url + " failed: " + err);
+        this.status = 0;
+      }
+    }
+    this.changeState(STATE_COMPLETE);
+  }
+
+  private Charset getCharset() {
+    final HttpHeaders headers = this.responseHeaders;
+    if (headers != null) {
+      final Optional<String> contentType = headers.firstValue("Content-Type");
+      if (contentType.isPresent()) {
+        for (final String param : contentType.get().split(";")) {
+          final String trimmed = param.trim();
+          if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+            try {
+              return Charset.forName(trimmed.substring(8).replace("\"", ""));
+            } catch (final IllegalArgumentException iae) {
+              break;
+            }
+          }
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  private void changeState(final int newState) {
+    this.readyState = newState;
+    final NetworkRequestEvent event = new NetworkRequestEvent(this, newState);
+    for (final NetworkRequestListener listener : this.listeners) {
+      try {
+        listener.readyStateChanged(event);
+      } catch (final Exception err) {
+        logger.warn("changeState(): Listener failed.", err);
+      }
+    }
+  }
+
+  public void addNetworkRequestListener(final NetworkRequestListener listener) {
+    this.listeners.add(listener);
+  }
+
+  public synchronized Optional<URL> getURL() {
+    return Optional.ofNullable(this.url);
+  }
+
+  public synchronized boolean isAsnyc() {
+    return this.async;
+  }
+
+  public synchronized void addRequestedHeader(final String header, final String value) {
+    final String previous = this.requestHeaders.get(header);
+    this.requestHeaders.put(header, previous == null ? value : previous + ", " + value);
+  }
+}
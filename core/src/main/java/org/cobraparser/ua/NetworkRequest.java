@@ -24,6 +24,7 @@
 package org.cobraparser.ua;
 
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 
@@ -100,6 +101,16 @@ public interface NetworkRequest {
    */
   public byte[] getResponseBytes();
 
+  /**
+   * Gets the request response bytes as a read-only buffer. Implementations
+   * that keep the response in a larger array can return a view of it instead
+   * of a copy.
+   */
+  default public ByteBuffer getResponseBuffer() {
+    final byte[] bytes = this.getResponseBytes();
+    return bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
   /**
    * Gets the status of the response. Note that this can be 0 for file requests
    * in addition to 200 for successful HTTP requests.
@@ -54,6 +54,7 @@ public interface UserAgentContext {
    * Creates an instance of {@link org.cobraparser.html.HttpRequest} which can
    * be used by the renderer to load images, scripts, external style sheets, and
    * implement the Javascript XMLHttpRequest class (AJAX).
+   * {@link HttpNetworkRequest} is an implementation that can be returned.
    */
   public NetworkRequest createHttpRequest();
 
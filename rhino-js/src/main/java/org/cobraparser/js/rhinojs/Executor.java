@@ -23,8 +23,6 @@ package org.cobraparser.js.rhinojs;
 import org.cobraparser.html.domimpl.HTMLDocumentImpl;
 import org.cobraparser.html.domimpl.NodeImpl;
 import org.cobraparser.ua.UserAgentContext;
-import org.cobraparser.ua.UserAgentContext.Request;
-import org.cobraparser.ua.UserAgentContext.RequestKind;
 import org.mozilla.javascript.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +32,9 @@ public class Executor {
   private static final Logger logger = LoggerFactory.getLogger(Executor.class.getName());
 
   /**
-   * This method should be invoked instead of <code>Context.enter</code>.
+   * This method should be invoked instead of <code>Context.enter</code>. In a
+   * JS task, the window's scheduler has already entered a context for the
+   * thread, which is returned as it is.
    *
    * @param codeSource
    * @param ucontext
@@ -73,12 +73,12 @@ public class Executor {
       throw new IllegalStateException("Element does not belong to a document.");
     }
 
-    final UserAgentContext uaContext = element.getUserAgentContext();
-    if (uaContext.isRequestPermitted(new Request(element.getDocumentURL(), RequestKind.JavaScript))) {
+    final RhinoWindow window = (RhinoWindow) ((HTMLDocumentImpl) doc).getWindow();
+    if (window.isScriptingPermitted(element.getDocumentURL())) {
       final Context ctx = createContext(element.getDocumentURL(), element.getUserAgentContext(), contextFactory);
       // ctx.setGenerateObserverCount(true);
       try {
-        final Scriptable scope = ((RhinoWindow) ((HTMLDocumentImpl) doc).getWindow()).getWindowScope();
+        final Scriptable scope = window.getWindowScope();
         if (scope == null) {
           throw new IllegalStateException("Scriptable (scope) instance is null");
         }
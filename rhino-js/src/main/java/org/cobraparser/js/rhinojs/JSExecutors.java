@@ -0,0 +1,96 @@
+package org.cobraparser.js.rhinojs;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by all windows for running their JS tasks and timers.
+ * <p>
+ * Each window queues its tasks on its own scheduler, which runs them one at a
+ * time, in order, on the task executor. A window that has nothing queued
+ * doesn't hold a thread. All <code>setTimeout</code> and
+ * <code>setInterval</code> timers share a single timer thread, which only
+ * queues the timer's task with its window when it fires.
+ * <p>
+ * By default, tasks run on a pool of daemon threads that are released when
+ * idle. Setting the system property <code>cobra.js.virtualThreads</code> to
+ * <code>true</code> runs them on virtual threads instead, and
+ * {@link #setTaskExecutor(Executor)} can plug in any other executor.
+ */
+public final class JSExecutors {
+  private static final ScheduledExecutorService timers = createTimers();
+  private static volatile Executor taskExecutor = createDefaultTaskExecutor();
+  private static final AtomicInteger queuedTaskCount = new AtomicInteger(0);
+
+  private JSExecutors() {
+  }
+
+  private static ScheduledExecutorService createTimers() {
+    final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("JS Timers"));
+    // Cleared timers are common (e.g. debouncing), so don't let them pile up.
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  private static Executor createDefaultTaskExecutor() {
+    if (Boolean.getBoolean("cobra.js.virtualThreads")) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("JS Scheduler ", 0).factory());
+    }
+    return Executors.newCachedThreadPool(new DaemonThreadFactory("JS Scheduler"));
+  }
+
+  /**
+   * Sets the executor that runs the windows' JS tasks. Windows already running
+   * a batch of tasks finish it on the previous executor. The previous executor
+   * is not shut down.
+   */
+  public static void setTaskExecutor(final Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor is null");
+    }
+    taskExecutor = executor;
+  }
+
+  /**
+   * Gets the number of JS tasks queued by all windows and not yet started.
+   */
+  public static int getQueuedTaskCount() {
+    return queuedTaskCount.get();
+  }
+
+  static Executor getTaskExecutor() {
+    return taskExecutor;
+  }
+
+  static ScheduledExecutorService getTimers() {
+    return timers;
+  }
+
+  static void tasksQueued(final int count) {
+    queuedTaskCount.addAndGet(count);
+  }
+
+  static void tasksDequeued(final int count) {
+    queuedTaskCount.addAndGet(-count);
+  }
+
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+
+    private DaemonThreadFactory(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread thread = new Thread(r, this.name + " " + this.threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
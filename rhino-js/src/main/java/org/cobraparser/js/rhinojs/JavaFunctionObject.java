@@ -31,13 +31,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JavaFunctionObject extends ScriptableObject implements Function {
   private static final long serialVersionUID = 3716471130167741876L;
   private static final Logger logger = LoggerFactory.getLogger(JavaFunctionObject.class.getName());
   private final String methodName;
   private final String className;
-  private final ArrayList<Method> methods = new ArrayList<>();
+  private final ArrayList<MethodInvoker> methods = new ArrayList<>();
 
   public JavaFunctionObject(final String name, final String className) {
     super();
@@ -61,7 +63,8 @@ public class JavaFunctionObject extends ScriptableObject implements Function {
   }
 
   public void addMethod(final Method m) {
-    this.methods.add(m);
+    this.methods.add(new MethodInvoker(m));
+    this.resolutions.clear();
   }
 
   @Override
@@ -75,16 +78,18 @@ public class JavaFunctionObject extends ScriptableObject implements Function {
   }*/
 
   private final static class MethodAndArguments {
+    private final MethodInvoker invoker;
     private final Method method;
     private final Object[] args;
 
-    public MethodAndArguments(final Method method, final Object[] args) {
-      this.method = method;
+    public MethodAndArguments(final MethodInvoker invoker, final Object[] args) {
+      this.invoker = invoker;
+      this.method = invoker.getMethod();
       this.args = args;
     }
 
     public Object invoke(final Object javaObject) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-      return method.invoke(javaObject, args);
+      return invoker.invoke(javaObject, args);
     }
 
     @Override
@@ -93,64 +98,99 @@ public class JavaFunctionObject extends ScriptableObject implements Function {
     }
   }
 
-  private MethodAndArguments getExactMethod(final Object[] args) {
-    final ArrayList<Method> methods = this.methods;
-    final int size = methods.size();
-    for (int i = 0; i < size; i++) {
-      final Method m = methods.get(i);
-      final Class<?>[] parameterTypes = m.getParameterTypes();
-      if (args == null) {
-        if ((parameterTypes == null) || (parameterTypes.length == 0)) {
-          return new MethodAndArguments(m, null);
-        }
-      } else if (parameterTypes != null) {
-        if (args.length == parameterTypes.length) {
-          if (Objects.areSameTo(args, parameterTypes)) {
-            return new MethodAndArguments(m, args);
-          }
-        } else if ((parameterTypes.length == 1) && parameterTypes[0].isArray()) {
-          final Class<?> arrayType = parameterTypes[0].getComponentType();
-          final boolean allSame = true;
-          for (int j = 0; j < args.length; j++) {
-            if (!Objects.isSameOrBox(args[j], arrayType)) {
-              break;
-            }
-          }
-          if (allSame) {
-            final Object[] argsInArray = (Object[]) Array.newInstance(arrayType, args.length);
-            for (int j = 0; j < args.length; j++) {
-              argsInArray[j] = args[j];
-            }
-            return new MethodAndArguments(m, new Object[] { argsInArray });
-          }
+  /**
+   * The overload chosen for a list of argument classes, and how the arguments
+   * are passed to it. Which overload matches only depends on the classes of the
+   * arguments, so it is looked up once per signature the function is called
+   * with.
+   */
+  private final static class Resolution {
+    private static final int EXACT = 0;
+    private static final int SPREAD = 1;
+    private static final int CONVERTED = 2;
 
+    private final MethodInvoker invoker;
+    private final int kind;
+    private final Class<?> arrayType;
+    private final int numConvert;
+
+    private Resolution(final MethodInvoker invoker, final int kind, final Class<?> arrayType, final int numConvert) {
+      this.invoker = invoker;
+      this.kind = kind;
+      this.arrayType = arrayType;
+      this.numConvert = numConvert;
+    }
+
+    private MethodAndArguments bind(final Object[] args) {
+      switch (kind) {
+      case EXACT:
+        return new MethodAndArguments(invoker, args);
+      case SPREAD:
+        final Object[] argsInArray = (Object[]) Array.newInstance(arrayType, args.length);
+        for (int j = 0; j < args.length; j++) {
+          argsInArray[j] = args[j];
         }
+        return new MethodAndArguments(invoker, new Object[] { argsInArray });
+      default:
+        return new MethodAndArguments(invoker, convertArgs(args, numConvert, invoker.getParameterTypes()));
       }
     }
-    return null;
+  }
+
+  private static final int MAX_RESOLUTIONS = 32;
+  private static final Object NO_ARGS_KEY = new Object();
+  private static final Resolution NO_RESOLUTION = new Resolution(null, -1, null, 0);
+  private final Map<Object, Resolution> resolutions = new ConcurrentHashMap<>();
+
+  private static Object getSignatureKey(final Object[] args) {
+    if (args == null) {
+      return NO_ARGS_KEY;
+    }
+    final Class<?>[] argClasses = new Class<?>[args.length];
+    for (int i = 0; i < args.length; i++) {
+      argClasses[i] = args[i] == null ? null : args[i].getClass();
+    }
+    return Arrays.asList(argClasses);
   }
 
   private MethodAndArguments getBestMethod(final Object[] args) {
-    final MethodAndArguments exactMethod = getExactMethod(args);
+    if (this.methods.size() == 0) {
+      throw new IllegalStateException("zero methods");
+    }
+    final Object key = getSignatureKey(args);
+    Resolution resolution = this.resolutions.get(key);
+    if (resolution == null) {
+      resolution = this.resolve(args);
+      if (resolution == null) {
+        resolution = NO_RESOLUTION;
+      }
+      if (this.resolutions.size() < MAX_RESOLUTIONS) {
+        this.resolutions.put(key, resolution);
+      }
+    }
+    return resolution == NO_RESOLUTION ? null : resolution.bind(args);
+  }
+
+  private Resolution resolve(final Object[] args) {
+    final Resolution exactMethod = resolveExact(args);
     if (exactMethod != null) {
       return exactMethod;
     }
 
-    final ArrayList<Method> methods = this.methods;
+    final ArrayList<MethodInvoker> methods = this.methods;
     final int size = methods.size();
     int matchingNumParams = 0;
-    Method matchingMethod = null;
+    MethodInvoker matchingMethod = null;
     for (int i = 0; i < size; i++) {
-      final Method m = methods.get(i);
+      final MethodInvoker m = methods.get(i);
       final Class<?>[] parameterTypes = m.getParameterTypes();
       if (args == null) {
-        if ((parameterTypes == null) || (parameterTypes.length == 0)) {
-          return new MethodAndArguments(m, new Object[0]);
+        if (parameterTypes.length == 0) {
+          return new Resolution(m, Resolution.CONVERTED, null, 0);
         }
-      } else if ((parameterTypes != null) && (args.length >= parameterTypes.length)) {
+      } else if (args.length >= parameterTypes.length) {
         if (Objects.areAssignableTo(args, parameterTypes)) {
-          final Object[] actualArgs = convertArgs(args, parameterTypes.length, parameterTypes);
-          return new MethodAndArguments(m, actualArgs);
+          return new Resolution(m, Resolution.CONVERTED, null, parameterTypes.length);
         }
         if ((matchingMethod == null) || (parameterTypes.length > matchingNumParams)) {
           matchingNumParams = parameterTypes.length;
@@ -158,18 +198,34 @@ public class JavaFunctionObject extends ScriptableObject implements Function {
         }
       }
     }
-    if (size == 0) {
-      throw new IllegalStateException("zero methods");
-    }
     if (matchingMethod == null) {
       return null;
     } else {
-      final Class<?>[] actualArgTypes = matchingMethod.getParameterTypes();
-      final Object[] actualArgs = convertArgs(args, matchingNumParams, actualArgTypes);
-      return new MethodAndArguments(matchingMethod, actualArgs);
+      return new Resolution(matchingMethod, Resolution.CONVERTED, null, matchingNumParams);
     }
   }
 
+  private Resolution resolveExact(final Object[] args) {
+    final ArrayList<MethodInvoker> methods = this.methods;
+    final int size = methods.size();
+    for (int i = 0; i < size; i++) {
+      final MethodInvoker m = methods.get(i);
+      final Class<?>[] parameterTypes = m.getParameterTypes();
+      if (args == null) {
+        if (parameterTypes.length == 0) {
+          return new Resolution(m, Resolution.EXACT, null, 0);
+        }
+      } else if (args.length == parameterTypes.length) {
+        if (Objects.areSameTo(args, parameterTypes)) {
+          return new Resolution(m, Resolution.EXACT, null, 0);
+        }
+      } else if ((parameterTypes.length == 1) && parameterTypes[0].isArray()) {
+        return new Resolution(m, Resolution.SPREAD, parameterTypes[0].getComponentType(), 0);
+      }
+    }
+    return null;
+  }
+
   private static Object[] convertArgs(final Object[] args, final int numConvert, final Class<?>[] actualArgTypes) {
     final RhinoJavaScript manager = RhinoJavaScript.getInstance();
     final Object[] actualArgs = args == null ? new Object[0] : new Object[numConvert];
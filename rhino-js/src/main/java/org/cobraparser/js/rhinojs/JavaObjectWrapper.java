@@ -25,7 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
@@ -82,7 +81,7 @@ public class JavaObjectWrapper extends ScriptableObject {
           try {
             // TODO: Some length() methods are returning integer while others return length. A good test case is http://web-platform.test:8000/dom/nodes/Element-classlist.html
             //       Check if length() methods can be converted to return a single type.
-            final Object lengthObj = classWrapper.getProperty("length").getGetter().invoke(delegate, (Object[]) null);
+            final Object lengthObj = classWrapper.getProperty("length").getGetterInvoker().invoke(delegate, (Object[]) null);
             if (lengthObj instanceof Long) {
 
               final long lengthLong = (long) lengthObj;
@@ -112,7 +111,7 @@ public class JavaObjectWrapper extends ScriptableObject {
           }
           try {
             final Object result = RhinoJavaScript.getInstance().getJavascriptObject(
-                integerIndexer.getGetter().invoke(delegate, new Object[] { index }), null);
+                integerIndexer.getGetterInvoker().invoke(delegate, new Object[] { index }), null);
             return result;
           } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
             throw new RuntimeException("Error accessing a indexed element");
@@ -187,7 +186,7 @@ public class JavaObjectWrapper extends ScriptableObject {
   public Object get(final String name, final Scriptable start) {
     final PropertyInfo pinfo = this.classWrapper.getProperty(name);
     if (pinfo != null) {
-      final Method getter = pinfo.getGetter();
+      final MethodInvoker getter = pinfo.getGetterInvoker();
       if (getter == null) {
         throw new EvaluatorException("Property '" + name + "' is not readable");
       }
@@ -221,7 +220,7 @@ public class JavaObjectWrapper extends ScriptableObject {
         }
         final PropertyInfo ni = this.classWrapper.getNameIndexer();
         if (ni != null) {
-          final Method getter = ni.getGetter();
+          final MethodInvoker getter = ni.getGetterInvoker();
           if (getter != null) {
             // Cannot retain delegate with a strong reference.
             final Object javaObject = this.getJavaObject();
@@ -253,13 +252,13 @@ public class JavaObjectWrapper extends ScriptableObject {
       super.put(index, start, value);
     } else {
       try {
-        final Method setter = pinfo.getSetter();
+        final MethodInvoker setter = pinfo.getSetterInvoker();
         if (setter == null) {
           throw new EvaluatorException("Indexer is read-only");
         }
         Object actualValue;
         actualValue = RhinoJavaScript.getInstance().getJavaObject(value, pinfo.getPropertyType());
-        setter.invoke(this.getJavaObject(), new Object[] { new Integer(index), actualValue });
+        setter.invoke(this.getJavaObject(), new Object[] { index, actualValue });
       } catch (final Exception err) {
         throw new WrappedException(err);
       }
@@ -273,7 +272,7 @@ public class JavaObjectWrapper extends ScriptableObject {
     } else {
       final PropertyInfo pinfo = this.classWrapper.getProperty(name);
       if (pinfo != null) {
-        final Method setter = pinfo.getSetter();
+        final MethodInvoker setter = pinfo.getSetterInvoker();
         if (setter == null) {
           throw new EvaluatorException("Property '" + name + "' is not settable in " + this.classWrapper.getClassName() + ".");
         }
@@ -291,7 +290,7 @@ public class JavaObjectWrapper extends ScriptableObject {
       } else {
         final PropertyInfo ni = this.classWrapper.getNameIndexer();
         if (ni != null) {
-          final Method setter = ni.getSetter();
+          final MethodInvoker setter = ni.getSetterInvoker();
           if (setter != null) {
             try {
               Object actualValue;
@@ -0,0 +1,104 @@
+package org.cobraparser.js.rhinojs;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Calls a Java method through a method handle looked up once, instead of going
+ * through reflection on every call. It has the contract of
+ * {@link Method#invoke(Object, Object...)}: exceptions thrown by the method
+ * are wrapped in an <code>InvocationTargetException</code>.
+ * <p>
+ * The handle is only used when the arguments match the parameter types
+ * exactly, boxed primitives included. Calls that rely on the conversions
+ * reflection does, such as widening an <code>Integer</code> to a
+ * <code>double</code>, and methods that can't be looked up publicly are
+ * still invoked reflectively.
+ */
+final class MethodInvoker {
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private final Method method;
+  private final Class<?>[] parameterTypes;
+  private final Class<?>[] argumentTypes;
+  private final boolean isStatic;
+  private final MethodHandle handle;
+
+  MethodInvoker(final Method method) {
+    this.method = method;
+    this.parameterTypes = method.getParameterTypes();
+    this.argumentTypes = MethodType.methodType(void.class, this.parameterTypes).wrap().parameterArray();
+    this.isStatic = Modifier.isStatic(method.getModifiers());
+    this.handle = createHandle(method, this.isStatic, this.parameterTypes.length);
+  }
+
+  /**
+   * Makes a handle of type <code>(Object, Object[])Object</code>, taking the
+   * target and the arguments.
+   */
+  private static MethodHandle createHandle(final Method method, final boolean isStatic, final int parameterCount) {
+    MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(method);
+    } catch (final IllegalAccessException | SecurityException e) {
+      return null;
+    }
+    if (isStatic) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class);
+    }
+    return handle.asType(MethodType.genericMethodType(parameterCount + 1)).asSpreader(Object[].class, parameterCount);
+  }
+
+  Method getMethod() {
+    return this.method;
+  }
+
+  Class<?>[] getParameterTypes() {
+    return this.parameterTypes;
+  }
+
+  Object invoke(final Object target, final Object[] args) throws IllegalAccessException, InvocationTargetException {
+    final MethodHandle handle = this.handle;
+    if ((handle == null) || !this.acceptsExactly(target, args)) {
+      return this.method.invoke(target, args);
+    }
+    try {
+      return handle.invokeExact(target, args == null ? NO_ARGS : args);
+    } catch (final Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  private boolean acceptsExactly(final Object target, final Object[] args) {
+    if (!this.isStatic && !this.method.getDeclaringClass().isInstance(target)) {
+      return false;
+    }
+    final Class<?>[] argumentTypes = this.argumentTypes;
+    if (args == null) {
+      return argumentTypes.length == 0;
+    }
+    if (args.length != argumentTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < args.length; i++) {
+      final Object arg = args[i];
+      if (arg == null) {
+        if (this.parameterTypes[i].isPrimitive()) {
+          return false;
+        }
+      } else if (this.parameterTypes[i].isPrimitive() ? (arg.getClass() != argumentTypes[i]) : !argumentTypes[i].isInstance(arg)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return this.method.toString();
+  }
+}
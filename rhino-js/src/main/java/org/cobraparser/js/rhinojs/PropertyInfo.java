@@ -26,6 +26,7 @@ public class PropertyInfo {
   private final String name;
   private final Class<?> propertyType;
   private Method getter, setter;
+  private MethodInvoker getterInvoker, setterInvoker;
 
   public PropertyInfo(final String name, final Class<?> propType) {
     super();
@@ -39,6 +40,11 @@ public class PropertyInfo {
 
   public void setGetter(final Method getter) {
     this.getter = getter;
+    this.getterInvoker = getter == null ? null : new MethodInvoker(getter);
+  }
+
+  MethodInvoker getGetterInvoker() {
+    return getterInvoker;
   }
 
   public Method getSetter() {
@@ -47,6 +53,11 @@ public class PropertyInfo {
 
   public void setSetter(final Method setter) {
     this.setter = setter;
+    this.setterInvoker = setter == null ? null : new MethodInvoker(setter);
+  }
+
+  MethodInvoker getSetterInvoker() {
+    return setterInvoker;
   }
 
   public String getName() {
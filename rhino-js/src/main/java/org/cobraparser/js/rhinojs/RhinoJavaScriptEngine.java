@@ -86,7 +86,7 @@ public class RhinoJavaScriptEngine implements JavaScriptEngine {
                             throw new IllegalStateException("Scriptable (scope) instance was null");
                         }
                         try {
-                            ctx.evaluateString(scope, text, scriptURI, baseLineNumber, null);
+                            ScriptCache.getInstance().getScript(ctx, text, scriptURI, baseLineNumber, scriptElement.getDocumentURL()).exec(ctx, scope);
                             // Why catch this?
                             // } catch (final EcmaError ecmaError) {
                             // logger.log(Level.WARNING,
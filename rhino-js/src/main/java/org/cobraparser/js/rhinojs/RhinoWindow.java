@@ -45,18 +45,19 @@ import org.w3c.dom.html.HTMLCollection;
 import org.w3c.dom.html.HTMLElement;
 import org.w3c.dom.views.DocumentView;
 
-import javax.swing.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -123,6 +124,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
             jsScheduler.stopAndWindUp(true);
             jsScheduler = new JSScheduler(this);
             eventTargetManager.reset();
+            scriptingPermissions.clear();
             this.onWindowLoadHandler = null;
 
             this.forgetAllTasks();
@@ -190,10 +192,19 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         return this.document;
     }
 
-    private static final int JS_SCHED_POLL_INTERVAL_MILLIS = 100;
-    private static final int JS_SCHED_JOIN_INTERVAL_MILLIS = JS_SCHED_POLL_INTERVAL_MILLIS * 2;
+    private static final int JS_SCHED_JOIN_INTERVAL_MILLIS = 200;
 
-    private static final class JSScheduler extends Thread {
+    /**
+     * Runs the JS tasks of a window one at a time, in priority order. The tasks
+     * run on the shared {@link JSExecutors#getTaskExecutor() task executor}; a
+     * batch is submitted when the first task is queued, and runs until the queue
+     * is empty, so the scheduler doesn't hold a thread while the window is idle.
+     * <p>
+     * A script context is entered once for the whole batch. Tasks that call
+     * {@link Executor#createContext} get that context back without setting it up
+     * again, so handlers and timers don't pay for a new context each.
+     */
+    private static final class JSScheduler implements Runnable {
         private static final class ScheduledTask implements Comparable<ScheduledTask> {
             final int id;
             final JSTask task;
@@ -225,80 +236,112 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
 
         private final PriorityBlockingQueue<ScheduledTask> jsQueue = new PriorityBlockingQueue<>();
         private final AtomicBoolean running = new AtomicBoolean(false);
+        private final AtomicBoolean batchSubmitted = new AtomicBoolean(false);
 
+        private volatile boolean started = false;
         private volatile boolean windowClosing = false;
+        private volatile Thread batchThread = null;
 
         // TODO: This is not water tight for one reason, Windows are reused for different documents.
         // If they are always freshly created, the taskIdCounter will be more reliable.
         private volatile AtomicInteger taskIdCounter = new AtomicInteger(0);
 
         private String name;
+        private final RhinoWindow window;
 
         public JSScheduler(final RhinoWindow window) {
-            super("JS Scheduler");
+            this.window = window;
             this.name = "JS Sched " + (window.document == null ? "" : "" + window.document.getBaseURI());
         }
 
+        public void start() {
+            started = true;
+            submitBatch();
+        }
+
+        private void submitBatch() {
+            if (started && !windowClosing && !jsQueue.isEmpty() && batchSubmitted.compareAndSet(false, true)) {
+                JSExecutors.getTaskExecutor().execute(this);
+            }
+        }
+
         @Override
         public void run() {
-            setName(name);
-            while (!windowClosing) {
+            final Thread thread = Thread.currentThread();
+            final String threadName = thread.getName();
+            thread.setName(name);
+            batchThread = thread;
+            final Document doc = window.document;
+            final URL codeSource = doc instanceof HTMLDocumentImpl ? ((HTMLDocumentImpl) doc).getDocumentURL() : null;
+            try {
                 try {
-                    ScheduledTask scheduledTask;
-                    // TODO: uncomment if synchronization is necessary with the add methods
-                    // synchronized (this) {
-                    scheduledTask = jsQueue.poll(JS_SCHED_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
-                    if (scheduledTask != null) {
-                        // System.out.println("In " + window.document.getBaseURI() + "\n  Running task: " + scheduledTask);
-                        // System.out.println("In " + name + "\n  Running task: " + scheduledTask);
+                    Executor.createContext(codeSource, window.uaContext, window.windowContextFactory);
+                }
+                catch (final RuntimeException e) {
+                    // The tasks stay queued; the next one scheduled tries again.
+                    logger.warn("run(): could not create a script context", e);
+                    return;
+                }
+                ScheduledTask scheduledTask;
+                while (!windowClosing && ((scheduledTask = jsQueue.poll()) != null)) {
+                    JSExecutors.tasksDequeued(1);
+                    try {
                         running.set(true);
                         scheduledTask.task.run();
-                        // System.out.println("Done task: " + scheduledTask);
-                        // System.out.println("  Remaining tasks: " + jsQueue.size());
                     }
-                }
-                catch (final InterruptedException e) {
-                    final int queueSize = jsQueue.size();
-                    if (queueSize > 0) {
-                        System.err.println("JS Scheduler was interrupted. Tasks remaining: " + jsQueue.size());
+                    catch (final Exception e) {
+                        logger.warn("run(): task failed: " + scheduledTask.task, e);
+                    }
+                    catch (final WindowClosingError wce) {
+                        // Javascript context detected a request for closing and bailed out.
+                        assert (windowClosing);
+                    }
+                    finally {
+                        running.set(false);
                     }
                 }
-                catch (final Exception e) {
-                    e.printStackTrace();
-                }
-                catch (final WindowClosingError wce) {
-                    // Javascript context detected a request for closing and bailed out.
-                    assert (windowClosing);
+            }
+            finally {
+                // Setting up the context can fail after it was entered, or before.
+                if (Context.getCurrentContext() != null) {
+                    Context.exit();
                 }
-                finally {
-                    running.set(false);
+                synchronized (this) {
+                    batchThread = null;
+                    this.notifyAll();
                 }
+                thread.setName(threadName);
+                batchSubmitted.set(false);
             }
-            // System.out.println("Exiting loop\n\n");
+            // A task may have been queued after the queue was found empty, but before the batch was marked as over.
+            submitBatch();
         }
 
         public void stopAndWindUp(final boolean blocking) {
             // System.out.println("Going to stop JS scheduler");
             windowClosing = true;
 
-            /* TODO: If the thread refuses to join(), perhaps the thread could be interrupted and stopped in
-             * the catch block of join() below. This could be done immediately, or scheduled for a stopping
-             * in a separate collector Thread
-             * */
-            // this.interrupt();
+            final ArrayList<ScheduledTask> dropped = new ArrayList<>();
+            jsQueue.drainTo(dropped);
+            JSExecutors.tasksDequeued(dropped.size());
 
-            if (blocking) {
-                try {
-                    this.join(JS_SCHED_JOIN_INTERVAL_MILLIS);
-                }
-                catch (final InterruptedException e) {
-                    e.printStackTrace();
+            if (blocking && (batchThread != Thread.currentThread())) {
+                // Give the task that is running a chance to finish.
+                final long deadline = System.currentTimeMillis() + JS_SCHED_JOIN_INTERVAL_MILLIS;
+                synchronized (this) {
+                    long remaining;
+                    while ((batchThread != null) && ((remaining = deadline - System.currentTimeMillis()) > 0)) {
+                        try {
+                            this.wait(remaining);
+                        }
+                        catch (final InterruptedException e) {
+                            logger.warn("stopAndWindUp(): interrupted while waiting for the running task", e);
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
                 }
             }
-
-      /*
-      this.stop();
-      */
         }
 
         public boolean isWindowClosing() {
@@ -306,29 +349,33 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
 
         public void addJSTask(final JSTask task) {
-            // synchronized (this) {
+            if (windowClosing) {
+                // The window has moved on; the task would never run.
+                return;
+            }
             jsQueue.add(new ScheduledTask(0, task));
-            // }
+            JSExecutors.tasksQueued(1);
+            submitBatch();
         }
 
         public int addUniqueJSTask(final int oldId, final JSTask task) {
-            // synchronized (this) {
             if (oldId != -1) {
                 if (jsQueue.contains(oldId)) {
                     return oldId;
                 }
-        /*
-        for (ScheduledTask t : jsQueue) {
-          if (t.id == oldId) {
-            // Task found
-            return oldId;
-          }
-        }*/
+            }
+            if (windowClosing) {
+                return oldId;
             }
             final int newId = taskIdCounter.addAndGet(1);
             jsQueue.add(new ScheduledTask(newId, task));
+            JSExecutors.tasksQueued(1);
+            submitBatch();
             return newId;
-            // }
+        }
+
+        public int getQueueDepth() {
+            return jsQueue.size();
         }
 
         public boolean hasPendingTasks() {
@@ -347,6 +394,21 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
 
     private volatile JSScheduler jsScheduler = new JSScheduler(this);
 
+    /**
+     * Whether scripts from each code source may run, as answered by the user
+     * agent. Cleared when the window's document changes.
+     */
+    private final Map<String, Boolean> scriptingPermissions = new ConcurrentHashMap<>();
+
+    boolean isScriptingPermitted(final URL codeSource) {
+        if (codeSource == null) {
+            return uaContext.isRequestPermitted(new Request(codeSource, RequestKind.JavaScript));
+        }
+        // Keyed by the URL's text, since URL.equals() may resolve host names.
+        return scriptingPermissions.computeIfAbsent(codeSource.toExternalForm(),
+            k -> uaContext.isRequestPermitted(new Request(codeSource, RequestKind.JavaScript)));
+    }
+
     @Override
     @HideFromJS
     public void addJSTask(final JSTask task) {
@@ -360,7 +422,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
       }*/
         final URL urlContext = getCurrURL();
         if (urlContext != null) {
-            if (uaContext.isRequestPermitted(new Request(urlContext, RequestKind.JavaScript))) {
+            if (isScriptingPermitted(urlContext)) {
                 // System.out.println("Adding task: " + task);
                 synchronized (this) {
                     jsScheduler.addJSTask(task);
@@ -403,7 +465,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
     }
 
-    private void putAndStartTask(final Integer timeoutID, final Timer timer, final Object retained) {
+    private void putAndStartTask(final Integer timeoutID, final Runnable task, final int delayMillis, final boolean repeats, final Object retained) {
         TaskWrapper oldTaskWrapper = null;
         synchronized (this) {
             Map<Integer, TaskWrapper> taskMap = this.taskMap;
@@ -414,13 +476,16 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
             else {
                 oldTaskWrapper = taskMap.get(timeoutID);
             }
+            // Scheduled while holding the lock, so that a one-shot timer firing right away can't forget the task before it is put.
+            final ScheduledExecutorService timers = JSExecutors.getTimers();
+            final ScheduledFuture<?> timer = repeats ? timers.scheduleWithFixedDelay(task, delayMillis, delayMillis, TimeUnit.MILLISECONDS)
+                : timers.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
             taskMap.put(timeoutID, new TaskWrapper(timer, retained));
         }
         // Do this outside synchronized block, just in case.
         if (oldTaskWrapper != null) {
-            oldTaskWrapper.timer.stop();
+            oldTaskWrapper.timer.cancel(false);
         }
-        timer.start();
     }
 
     private void forgetTask(final Integer timeoutID, final boolean cancel) {
@@ -432,7 +497,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
             }
         }
         if ((oldTimer != null) && cancel) {
-            oldTimer.timer.stop();
+            oldTimer.timer.cancel(false);
         }
     }
 
@@ -447,7 +512,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
         if (oldTaskWrappers != null) {
             for (final TaskWrapper taskWrapper : oldTaskWrappers) {
-                taskWrapper.timer.stop();
+                taskWrapper.timer.cancel(false);
             }
         }
     }
@@ -480,14 +545,12 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         final int timeID = generateTimerID();
         System.out.println("Created interval timer: " + timeID);
         final Integer timeIDInt = new Integer(timeID);
-        final ActionListener task = new FunctionTimerTask(this, timeIDInt, aFunction, false);
+        final Runnable task = new FunctionTimerTask(this, timeIDInt, aFunction, false);
         int t = (int) aTimeInMs;
         if (t < 1) {
             t = 1;
         }
-        final Timer timer = new Timer(t, task);
-        timer.setRepeats(true); // The only difference with setTimeout
-        this.putAndStartTask(timeIDInt, timer, aFunction);
+        this.putAndStartTask(timeIDInt, task, t, true, aFunction); // Repeating is the only difference with setTimeout
         return timeID;
     }
 
@@ -507,14 +570,12 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
         final int timeID = generateTimerID();
         final Integer timeIDInt = new Integer(timeID);
-        final ActionListener task = new ExpressionTimerTask(this, timeIDInt, aExpression, false);
+        final Runnable task = new ExpressionTimerTask(this, timeIDInt, aExpression, false);
         int t = (int) aTimeInMs;
         if (t < 1) {
             t = 1;
         }
-        final Timer timer = new Timer(t, task);
-        timer.setRepeats(false); // The only difference with setTimeout
-        this.putAndStartTask(timeIDInt, timer, null);
+        this.putAndStartTask(timeIDInt, task, t, false, null); // The only difference with setTimeout
         return timeID;
     }
 
@@ -973,14 +1034,12 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
         final int timeID = generateTimerID();
         final Integer timeIDInt = new Integer(timeID);
-        final ActionListener task = new ExpressionTimerTask(this, timeIDInt, expr, true);
+        final Runnable task = new ExpressionTimerTask(this, timeIDInt, expr, true);
         int t = (int) millis;
         if (t < 1) {
             t = 1;
         }
-        final Timer timer = new Timer(t, task);
-        timer.setRepeats(false);
-        this.putAndStartTask(timeIDInt, timer, null);
+        this.putAndStartTask(timeIDInt, task, t, false, null);
         return timeID;
     }
 
@@ -992,14 +1051,12 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         final int timeID = generateTimerID();
         System.out.println("Creating timer with id: " + timeID + " in " + document.getBaseURI());
         final Integer timeIDInt = new Integer(timeID);
-        final ActionListener task = new FunctionTimerTask(this, timeIDInt, function, true);
+        final Runnable task = new FunctionTimerTask(this, timeIDInt, function, true);
         int t = (int) millis;
         if (t < 1) {
             t = 1;
         }
-        final Timer timer = new Timer(t, task);
-        timer.setRepeats(false);
-        this.putAndStartTask(timeIDInt, timer, function);
+        this.putAndStartTask(timeIDInt, task, t, false, function);
         return timeID;
     }
 
@@ -1254,7 +1311,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         return null;
     }
 
-    private static abstract class WeakWindowTask implements ActionListener {
+    private static abstract class WeakWindowTask implements Runnable {
         private final WeakReference<RhinoWindow> windowRef;
 
         public WeakWindowTask(final RhinoWindow window) {
@@ -1283,14 +1340,14 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
 
         @Override
-        public void actionPerformed(final ActionEvent e) {
+        public void run() {
             System.out.println("Timer ID fired: " + timeIDInt + ", oneshot: " + removeTask);
-            // This executes in the GUI thread and that's good.
+            // This executes in the shared timer thread, and only queues the JS task.
             try {
                 final RhinoWindow window = this.getWindow();
                 if (window == null) {
                     if (logger.isDebugEnabled()) {
-                        logger.debug("actionPerformed(): Window is no longer available.");
+                        logger.debug("run(): Window is no longer available.");
                     }
                     return;
                 }
@@ -1312,7 +1369,7 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
                 // Executor.executeFunction(window.getWindowScope(), function, doc.getDocumentURL(), window.getUserAgentContext(), window.windowFactory);
             }
             catch (final Exception err) {
-                logger.warn("actionPerformed()", err);
+                logger.warn("run()", err);
             }
         }
     }
@@ -1333,13 +1390,13 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
         }
 
         @Override
-        public void actionPerformed(final ActionEvent e) {
-            // This executes in the GUI thread and that's good.
+        public void run() {
+            // This executes in the shared timer thread, and only queues the JS task.
             try {
                 final RhinoWindow window = this.getWindow();
                 if (window == null) {
                     if (logger.isDebugEnabled()) {
-                        logger.debug("actionPerformed(): Window is no longer available.");
+                        logger.debug("run(): Window is no longer available.");
                     }
                     return;
                 }
@@ -1356,19 +1413,19 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
                 // window.evalInScope(this.expression);
             }
             catch (final Exception err) {
-                logger.warn("actionPerformed()", err);
+                logger.warn("run()", err);
             }
         }
     }
 
     private static class TaskWrapper {
-        public final Timer timer;
+        public final ScheduledFuture<?> timer;
         // TODO: The retained object seems to be required to keep timer callback functions from being garbage collected.
         //       The FunctionTimerTask only keeps a weak reference. Need to review this design.
         @SuppressWarnings("unused")
         private final Object retained;
 
-        public TaskWrapper(final Timer timer, final Object retained) {
+        public TaskWrapper(final ScheduledFuture<?> timer, final Object retained) {
             super();
             this.timer = timer;
             this.retained = retained;
@@ -1512,4 +1569,13 @@ public class RhinoWindow extends AbstractScriptableDelegate implements Window {
     public boolean hasPendingTasks() {
         return (!jobsOver.get()) || jsScheduler.hasPendingTasks();
     }
+
+    /**
+     * Gets the number of JS tasks queued by this window and not yet started.
+     */
+    @HideFromJS
+    public int getJSQueueDepth() {
+        final JSScheduler jsSchedulerLocal = jsScheduler;
+        return jsSchedulerLocal == null ? 0 : jsSchedulerLocal.getQueueDepth();
+    }
 }
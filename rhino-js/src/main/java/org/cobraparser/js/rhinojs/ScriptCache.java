@@ -0,0 +1,128 @@
+package org.cobraparser.js.rhinojs;
+
+import org.cobraparser.util.LRUCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled scripts, shared by all windows, so that a script that is loaded
+ * again, e.g. the same library on another page, isn't parsed and compiled
+ * again. Scripts are looked up by their URI, a hash of their text, their first
+ * line number and the optimization level they were compiled with. The cache is
+ * bounded by the total length of the cached scripts' text.
+ * <p>
+ * Compiled classes are defined with the code source of the document that
+ * loaded the script (see {@link SecurityControllerImpl}), so scripts compiled
+ * to bytecode are only shared between documents with the same URL. Interpreted
+ * scripts don't carry a code source and are shared regardless.
+ */
+public final class ScriptCache {
+  private static final int MAX_SOURCE_LENGTH = 16 * 1024 * 1024;
+  private static final ScriptCache instance = new ScriptCache(MAX_SOURCE_LENGTH);
+
+  private final LRUCache cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  ScriptCache(final int maxSourceLength) {
+    this.cache = new LRUCache(maxSourceLength);
+  }
+
+  public static ScriptCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the compiled form of the given script, compiling it with the given
+   * context if it isn't cached yet.
+   *
+   * @param codeSource
+   *          the URL of the document the script runs in
+   */
+  Script getScript(final Context ctx, final String text, final String scriptURI, final int baseLineNumber, final URL codeSource) {
+    final int optimizationLevel = ctx.getOptimizationLevel();
+    final Key key = new Key(scriptURI, digest(text), baseLineNumber, optimizationLevel, optimizationLevel < 0 ? null : codeSource);
+    synchronized (this.cache) {
+      final Script script = (Script) this.cache.get(key);
+      if (script != null) {
+        this.hits.incrementAndGet();
+        return script;
+      }
+    }
+    this.misses.incrementAndGet();
+    final Script script = ctx.compileString(text, scriptURI, baseLineNumber, null);
+    synchronized (this.cache) {
+      this.cache.put(key, script, text.length());
+    }
+    return script;
+  }
+
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  public int getEntryCount() {
+    synchronized (this.cache) {
+      return this.cache.getNumEntries();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ScriptCache[hits=" + this.getHitCount() + ",misses=" + this.getMissCount() + ",entries=" + this.getEntryCount() + "]";
+  }
+
+  private static byte[] digest(final String text) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Key {
+    private final String scriptURI;
+    private final byte[] textDigest;
+    private final int baseLineNumber;
+    private final int optimizationLevel;
+    private final String codeSource;
+
+    private Key(final String scriptURI, final byte[] textDigest, final int baseLineNumber, final int optimizationLevel, final URL codeSource) {
+      this.scriptURI = scriptURI;
+      this.textDigest = textDigest;
+      this.baseLineNumber = baseLineNumber;
+      this.optimizationLevel = optimizationLevel;
+      // URL.equals() may resolve host names, so compare the external form.
+      this.codeSource = codeSource == null ? null : codeSource.toExternalForm();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return (this.baseLineNumber == other.baseLineNumber) && (this.optimizationLevel == other.optimizationLevel)
+          && Arrays.equals(this.textDigest, other.textDigest) && Objects.equals(this.scriptURI, other.scriptURI)
+          && Objects.equals(this.codeSource, other.codeSource);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(this.textDigest) ^ Objects.hashCode(this.scriptURI);
+    }
+  }
+}
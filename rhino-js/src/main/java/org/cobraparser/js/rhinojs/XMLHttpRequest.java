@@ -14,6 +14,8 @@ import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.typedarrays.NativeArrayBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
@@ -22,6 +24,7 @@ import org.w3c.dom.Document;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -87,6 +90,59 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
     return request.getResponseText();
   }
 
+  private String responseType = "";
+  private Object arrayBuffer;
+
+  public String getResponseType() {
+    synchronized (this) {
+      return this.responseType;
+    }
+  }
+
+  /**
+   * Sets the type of {@link #getResponse()}. Only <code>"arraybuffer"</code>
+   * and text are supported; other types get the response text.
+   */
+  public void setResponseType(final String value) {
+    synchronized (this) {
+      this.responseType = value == null ? "" : value;
+      this.arrayBuffer = null;
+    }
+  }
+
+  public Object getResponse() {
+    if (!"arraybuffer".equals(this.getResponseType())) {
+      return request.getResponseText();
+    }
+    if (request.getReadyState() != NetworkRequest.STATE_COMPLETE) {
+      return null;
+    }
+    synchronized (this) {
+      if (this.arrayBuffer == null) {
+        this.arrayBuffer = this.createArrayBuffer();
+      }
+      return this.arrayBuffer;
+    }
+  }
+
+  /**
+   * Copies the response into a script <code>ArrayBuffer</code>, straight from
+   * the request's buffer. Falls back to the response bytes where the scope
+   * doesn't have typed arrays.
+   */
+  private Object createArrayBuffer() {
+    final ByteBuffer body = request.getResponseBuffer();
+    final Context ctx = Context.getCurrentContext();
+    final Scriptable topScope = ScriptableObject.getTopLevelScope(this.scope);
+    if ((body == null) || (ctx == null) || !ScriptableObject.hasProperty(topScope, NativeArrayBuffer.CLASS_NAME)) {
+      return request.getResponseBytes();
+    }
+    final NativeArrayBuffer arrayBuffer = (NativeArrayBuffer) ctx.newObject(topScope, NativeArrayBuffer.CLASS_NAME,
+        new Object[] { body.remaining() });
+    body.get(arrayBuffer.getBuffer());
+    return arrayBuffer;
+  }
+
   public Document getResponseXML() {
     return request.getResponseXML();
   }
@@ -107,12 +163,19 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
       throws IOException {
     final String adjustedMethod = checkAndAdjustMethod(method);
     try {
+      this.resetResponse();
       request.open(adjustedMethod, this.getFullURL(url), asyncFlag, userName, password);
     } catch (final MalformedURLException mfe) {
       throw ScriptRuntime.typeError("url malformed");
     }
   }
 
+  private void resetResponse() {
+    synchronized (this) {
+      this.arrayBuffer = null;
+    }
+  }
+
   private static String[] prohibitedMethods = {
       "CONNECT", "TRACE", "TRACK"
   };
@@ -139,16 +202,19 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 
   public void open(final String method, final String url, final boolean asyncFlag, final String userName) throws IOException {
     final String adjustedMethod = checkAndAdjustMethod(method);
+    this.resetResponse();
     request.open(adjustedMethod, this.getFullURL(url), asyncFlag, userName);
   }
 
   public void open(final String method, final String url, final boolean asyncFlag) throws IOException {
     final String adjustedMethod = checkAndAdjustMethod(method);
+    this.resetResponse();
     request.open(adjustedMethod, this.getFullURL(url), asyncFlag);
   }
 
   public void open(final String method, final String url) throws IOException {
     final String adjustedMethod = checkAndAdjustMethod(method);
+    this.resetResponse();
     request.open(adjustedMethod, this.getFullURL(url));
   }
 
@@ -217,6 +283,18 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
     }
   }
 
+  private Function onProgress;
+
+  public void setOnprogress(final Function value) {
+    synchronized (this) {
+      this.onProgress = value;
+      if ((value != null) && !this.listenerAdded) {
+        this.request.addNetworkRequestListener(netEvent -> executeReadyStateChange());
+        this.listenerAdded = true;
+      }
+    }
+  }
+
   private Function onLoad;
   // private boolean listenerAddedLoad;
 
@@ -250,6 +328,25 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
       Executor.logJSException(err);
     }
 
+    if (request.getReadyState() == NetworkRequest.STATE_INTERACTIVE) {
+      final Function f;
+      synchronized (this) {
+        f = this.onProgress;
+      }
+      if (f != null) {
+        // The response text read by the handler is what was received so far.
+        window.addJSTask(new JSRunnableTask(0, "xhr progress", () -> {
+          final Context ctx = Executor.createContext(this.codeSource, this.pcontext, ((RhinoWindow) window).getContextFactory());
+          try {
+            final Scriptable newScope = (Scriptable) RhinoJavaScript.getInstance().getJavascriptObject(XMLHttpRequest.this, this.scope);
+            f.call(ctx, newScope, newScope, new Object[0]);
+          } finally {
+            Context.exit();
+          }
+        }));
+      }
+    }
+
     if (request.getReadyState() == NetworkRequest.STATE_COMPLETE) {
       try {
         final Function f = this.onLoad;
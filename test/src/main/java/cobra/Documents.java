@@ -0,0 +1,136 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.parser.DocumentBuilderImpl;
+import org.cobraparser.html.parser.InputSourceImpl;
+import org.cobraparser.ua.NetworkRequest;
+import org.cobraparser.ua.UserAgentContext;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.security.Policy;
+
+/**
+ * Parses documents for the checks in this module, without scripting or
+ * network access.
+ */
+final class Documents {
+    static final UserAgentContext USER_AGENT_CONTEXT = new UserAgentContext() {
+        @Override
+        public boolean isRequestPermitted(Request request) {
+            return false;
+        }
+
+        @Override
+        public NetworkRequest createHttpRequest() {
+            return null;
+        }
+
+        @Override
+        public String getAppCodeName() {
+            return "consulo";
+        }
+
+        @Override
+        public String getAppName() {
+            return "consulo";
+        }
+
+        @Override
+        public String getAppVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public String getAppMinorVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public String getBrowserLanguage() {
+            return "en";
+        }
+
+        @Override
+        public boolean isCookieEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isScriptingEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isExternalCSSEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean isInternalCSSEnabled() {
+            return true;
+        }
+
+        @Override
+        public String getPlatform() {
+            return null;
+        }
+
+        @Override
+        public String getUserAgent() {
+            return "Consulo";
+        }
+
+        @Override
+        public String getCookie(URL url) {
+            return null;
+        }
+
+        @Override
+        public void setCookie(URL url, String cookieSpec) {
+
+        }
+
+        @Override
+        public Policy getSecurityPolicy() {
+            return null;
+        }
+
+        @Override
+        public int getScriptingOptimizationLevel() {
+            return 0;
+        }
+
+        @Override
+        public boolean isMedia(String mediaName) {
+            return "screen".equalsIgnoreCase(mediaName);
+        }
+
+        @Override
+        public String getVendor() {
+            return "consulo";
+        }
+
+        @Override
+        public String getProduct() {
+            return "Consulo";
+        }
+    };
+
+    private Documents() {
+    }
+
+    static HTMLDocumentImpl parse(String html) throws Exception {
+        final DocumentBuilderImpl builder = new DocumentBuilderImpl(USER_AGENT_CONTEXT);
+        try (Reader reader = new StringReader(html)) {
+            return (HTMLDocumentImpl) builder.parse(new InputSourceImpl(reader, "http://localhost/"));
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
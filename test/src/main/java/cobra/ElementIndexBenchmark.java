@@ -0,0 +1,260 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static cobra.Documents.check;
+
+/**
+ * Checks that the id, class, tag and name indexes of a document stay in step
+ * with the tree through attribute churn, inserts, removals and subtree moves,
+ * and times mutations, lookups and the two interleaved.
+ * <p>
+ * Arguments: the number of mutations (default 20000) and of lookups (default
+ * 6000).
+ */
+public class ElementIndexBenchmark {
+    private static final int IDS = 50;
+    private static final int NAMES = 10;
+    private static final String[] CLASSES = {"a", "b", "c"};
+    private static final String[] TAGS = {"div", "p", "span"};
+
+    private final HTMLDocumentImpl document;
+    private final Element body;
+    private final Random random = new Random(42);
+    private final List<Element> attached = new ArrayList<>();
+    private final List<Element> detached = new ArrayList<>();
+
+    private ElementIndexBenchmark(HTMLDocumentImpl document) {
+        this.document = document;
+        this.body = (Element) document.getElementsByTagName("body").item(0);
+        collect(body, attached);
+        attached.remove(body);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int mutations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 6000;
+
+        final ElementIndexBenchmark benchmark = new ElementIndexBenchmark(Documents.parse(page()));
+        benchmark.verify();
+
+        long start = System.nanoTime();
+        for (int i = 1; i <= mutations; i++) {
+            benchmark.mutate();
+            if (i % 2000 == 0) {
+                benchmark.verify();
+            }
+        }
+        System.out.printf("%d mutations: %d ms%n", mutations, elapsed(start));
+        benchmark.verify();
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            benchmark.lookup(i);
+        }
+        System.out.printf("%d lookups: %d ms%n", lookups, elapsed(start));
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups / 3; i++) {
+            benchmark.lookup(i);
+            benchmark.changeClass();
+        }
+        System.out.printf("%d alternating lookups and class changes: %d ms%n", lookups / 3, elapsed(start));
+        benchmark.verify();
+
+        System.out.println("ElementIndexBenchmark passed");
+    }
+
+    /**
+     * Generates a page of about 2000 elements, with ids, classes and names
+     * spread over them.
+     */
+    private static String page() {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        int n = 0;
+        for (int i = 0; i < 100; i++) {
+            html.append("<div class='").append(CLASSES[i % 3]).append("'>");
+            for (int j = 0; j < 6; j++) {
+                html.append("<p id='id").append(n % IDS).append("' class='").append(CLASSES[n % 3]).append(' ')
+                    .append(CLASSES[(n + 1) % 3]).append("'>")
+                    .append("<span name='name").append(n % NAMES).append("'>x</span>")
+                    .append("<div><span class='").append(CLASSES[n % 2]).append("'>y</span></div></p>");
+                n++;
+            }
+            html.append("</div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private void mutate() {
+        final int kind = random.nextInt(6);
+        if (kind == 0) {
+            changeClass();
+        } else if (kind == 1) {
+            final Element element = pick();
+            if (random.nextInt(4) == 0) {
+                element.removeAttribute("id");
+            } else {
+                element.setAttribute("id", "id" + random.nextInt(IDS));
+            }
+        } else if (kind == 2) {
+            pick().setAttribute("name", "name" + random.nextInt(NAMES));
+        } else if (kind == 3) {
+            insert();
+        } else if (kind == 4) {
+            move();
+        } else {
+            remove();
+        }
+    }
+
+    private void changeClass() {
+        final Element element = pick();
+        if (random.nextInt(5) == 0) {
+            element.removeAttribute("class");
+        } else {
+            element.setAttribute("class", CLASSES[random.nextInt(3)] + ' ' + CLASSES[random.nextInt(3)]);
+        }
+    }
+
+    private void insert() {
+        final Element element;
+        if (!detached.isEmpty() && random.nextBoolean()) {
+            element = detached.remove(detached.size() - 1);
+        } else {
+            element = document.createElement(TAGS[random.nextInt(TAGS.length)]);
+            element.setAttribute("class", CLASSES[random.nextInt(3)]);
+            if (random.nextBoolean()) {
+                element.setAttribute("id", "id" + random.nextInt(IDS));
+            }
+        }
+        place(element);
+        collect(element, attached);
+    }
+
+    private void move() {
+        final Element element = pick();
+        final Element target = pick();
+        if (isAncestor(element, target)) {
+            return;
+        }
+        element.getParentNode().removeChild(element);
+        insertInto(target, element);
+    }
+
+    private void remove() {
+        if (attached.size() < 1000) {
+            return;
+        }
+        final Element element = pick();
+        element.getParentNode().removeChild(element);
+        final List<Element> subtree = new ArrayList<>();
+        collect(element, subtree);
+        attached.removeAll(subtree);
+        detached.add(element);
+    }
+
+    private void place(Element element) {
+        insertInto(random.nextInt(10) == 0 ? body : pick(), element);
+    }
+
+    private void insertInto(Element parent, Element element) {
+        final NodeList children = parent.getChildNodes();
+        if (children.getLength() == 0 || random.nextBoolean()) {
+            parent.appendChild(element);
+        } else {
+            parent.insertBefore(element, children.item(random.nextInt(children.getLength())));
+        }
+    }
+
+    private Element pick() {
+        return attached.get(random.nextInt(attached.size()));
+    }
+
+    private void lookup(int i) {
+        switch (i % 3) {
+            case 0:
+                document.getElementsByTagName(TAGS[i % TAGS.length]).getLength();
+                break;
+            case 1:
+                document.getElementsByClassName(CLASSES[i % CLASSES.length]).getLength();
+                break;
+            default:
+                document.getElementById("id" + (i % IDS));
+                break;
+        }
+    }
+
+    /**
+     * Compares every index lookup with a walk of the tree.
+     */
+    private void verify() {
+        final List<Element> all = new ArrayList<>();
+        collect(body, all);
+        for (int i = 0; i < IDS; i++) {
+            final String id = "id" + i;
+            final Element expected = all.stream().filter(e -> id.equals(e.getAttribute("id"))).findFirst().orElse(null);
+            check(document.getElementById(id) == expected, "getElementById(" + id + ")");
+        }
+        for (final String className : CLASSES) {
+            final List<Element> expected = new ArrayList<>();
+            for (final Element element : all) {
+                final String classes = element.getAttribute("class");
+                if (classes != null && Arrays.asList(classes.split(" ")).contains(className)) {
+                    expected.add(element);
+                }
+            }
+            check(expected.equals(list(document.getElementsByClassName(className))), "getElementsByClassName(" + className + ")");
+            check(expected.equals(list(document.querySelectorAll("." + className))), "querySelectorAll(." + className + ")");
+        }
+        for (final String tag : TAGS) {
+            final List<Element> expected = all.stream().filter(e -> tag.equalsIgnoreCase(e.getTagName())).toList();
+            check(expected.equals(list(document.getElementsByTagName(tag))), "getElementsByTagName(" + tag + ")");
+        }
+        for (int i = 0; i < NAMES; i++) {
+            final String name = "name" + i;
+            final List<Element> expected = all.stream().filter(e -> name.equals(e.getAttribute("name"))).toList();
+            check(expected.equals(list(document.getElementsByName(name))), "getElementsByName(" + name + ")");
+        }
+    }
+
+    private static List<Element> list(NodeList nodes) {
+        final List<Element> elements = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    private static void collect(Element element, List<Element> elements) {
+        elements.add(element);
+        final NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node child = children.item(i);
+            if (child instanceof Element) {
+                collect((Element) child, elements);
+            }
+        }
+    }
+
+    private static boolean isAncestor(Element ancestor, Node node) {
+        for (Node n = node; n != null; n = n.getParentNode()) {
+            if (n == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
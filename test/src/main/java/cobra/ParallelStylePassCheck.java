@@ -0,0 +1,59 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.domimpl.HTMLElementImpl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static cobra.Documents.check;
+
+/**
+ * Checks that the parallel style pass finishes when selectors look at
+ * siblings, and that it computes the same styles as the sequential pass.
+ */
+public class ParallelStylePassCheck {
+    private static final String STYLE = "li + li { color: red } h2 ~ p { color: blue } li:first-child { color: green }"
+        + " tr:nth-child(even) td { color: #123456 } div > span:last-child { color: #654321 }";
+
+    public static void main(String[] args) throws Exception {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            body.append("<div><h2>t</h2><p id='p").append(i).append("'>p</p><ul>");
+            for (int j = 0; j < 5; j++) {
+                body.append("<li id='li").append(i).append('_').append(j).append("'>x</li>");
+            }
+            body.append("</ul><table><tr><td id='td").append(i).append("_0'>a</td></tr><tr><td id='td").append(i)
+                .append("_1'>b</td></tr></table><span>a</span><span id='s").append(i).append("'>b</span></div>");
+        }
+        final String html = "<html><head><style>" + STYLE + "</style></head><body>" + body + "</body></html>";
+
+        final HTMLDocumentImpl sequential = Documents.parse(html);
+        sequential.primeNodeData();
+
+        final HTMLDocumentImpl parallel = Documents.parse(html);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final Thread pass = new Thread(() -> parallel.primeNodeData(pool), "parallel style pass");
+        pass.setDaemon(true);
+        pass.start();
+        pass.join(TimeUnit.SECONDS.toMillis(30));
+        check(!pass.isAlive(), "parallel style pass didn't finish");
+        pool.shutdown();
+
+        for (int i = 0; i < 50; i++) {
+            final String[] ids = {"p" + i, "li" + i + "_0", "li" + i + "_3", "td" + i + "_1", "s" + i};
+            for (final String id : ids) {
+                final String expected = color(sequential, id);
+                check(expected != null, id + " has a color");
+                check(expected.equals(color(parallel, id)), id + " has the same color in both passes");
+            }
+            check(color(parallel, "td" + i + "_0") == null, "td" + i + "_0 has no color");
+        }
+
+        System.out.println("ParallelStylePassCheck passed");
+    }
+
+    private static String color(HTMLDocumentImpl document, String id) {
+        return ((HTMLElementImpl) document.getElementById(id)).getCurrentStyle().getColor();
+    }
+}
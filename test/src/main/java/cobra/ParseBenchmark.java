@@ -0,0 +1,57 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how fast a large generated table report is parsed into a DOM,
+ * end to end. Run it on two revisions to compare parser throughput.
+ * <p>
+ * Arguments: the number of rows (default 60000) and of timed runs (default 5).
+ */
+public class ParseBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 60000;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final String html = report(rows);
+        final double megabytes = html.getBytes(StandardCharsets.UTF_8).length / (1024.0 * 1024.0);
+        System.out.printf("%d rows, %.1f MB%n", rows, megabytes);
+
+        // Warm up the parser before timing it.
+        for (int i = 0; i < 2; i++) {
+            Documents.parse(html);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            final long start = System.nanoTime();
+            final HTMLDocumentImpl document = Documents.parse(html);
+            final long elapsed = System.nanoTime() - start;
+            Documents.check(document.getElementsByTagName("tr").getLength() == rows + 1, "all rows are parsed");
+            best = Math.min(best, elapsed);
+            System.out.printf("run %d: %d ms%n", i + 1, elapsed / 1000000);
+        }
+        System.out.printf("best: %d ms, %.1f MB/s%n", best / 1000000, megabytes / (best / 1e9));
+    }
+
+    /**
+     * Generates a report-like page: a heading, a summary paragraph and one
+     * table with a header row and the given number of data rows.
+     */
+    static String report(int rows) {
+        final StringBuilder html = new StringBuilder(rows * 180);
+        html.append("<html><head><title>Report</title></head><body>\n");
+        html.append("<h1>Build report</h1>\n<p class='summary'>Generated report with ").append(rows)
+            .append(" rows &amp; totals.</p>\n");
+        html.append("<table class='report'>\n<tr><th>#</th><th>Name</th><th>Status</th><th>Time</th><th>Notes</th></tr>\n");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr class='").append(i % 2 == 0 ? "even" : "odd").append("'><td>").append(i)
+                .append("</td><td><a href='item").append(i).append(".html'>item-").append(i)
+                .append("</a></td><td class='status'>").append(i % 7 == 0 ? "FAILED" : "OK")
+                .append("</td><td>").append(i % 1000).append(" ms</td><td>line one<br>line two</td></tr>\n");
+        }
+        html.append("</table>\n</body></html>\n");
+        return html.toString();
+    }
+}
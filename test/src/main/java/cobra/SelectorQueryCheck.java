@@ -0,0 +1,27 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.domimpl.NodeImpl;
+
+import static cobra.Documents.check;
+
+/**
+ * Checks selector queries scoped to an element, whose ancestors are tracked
+ * while the subtree is walked.
+ */
+public class SelectorQueryCheck {
+    public static void main(String[] args) throws Exception {
+        final HTMLDocumentImpl document = Documents.parse(
+            "<html><body><h2>Title</h2><div><span>a</span></div><p><span>b</span></p></body></html>");
+        final NodeImpl body = (NodeImpl) document.getElementsByTagName("body").item(0);
+
+        check(document.querySelectorAll("h2 + div span").getLength() == 1, "document: h2 + div span");
+        check(document.querySelectorAll("h2 ~ p span").getLength() == 1, "document: h2 ~ p span");
+        check(body.querySelectorAll("h2 + div span").getLength() == 1, "body: h2 + div span");
+        check(body.querySelectorAll("h2 ~ p > span").getLength() == 1, "body: h2 ~ p > span");
+        check(body.querySelectorAll("body div span").getLength() == 1, "body: body div span");
+        check(body.querySelectorAll("h2 + p span").getLength() == 0, "body: h2 + p span");
+
+        System.out.println("SelectorQueryCheck passed");
+    }
+}
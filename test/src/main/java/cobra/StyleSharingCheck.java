@@ -0,0 +1,92 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.cobraparser.html.domimpl.HTMLElementImpl;
+import org.cobraparser.html.style.JStyleProperties;
+
+import java.lang.reflect.Field;
+
+import static cobra.Documents.check;
+
+/**
+ * Checks that elements only share the style of a sibling or cousin when the
+ * same rules really match both of them.
+ */
+public class StyleSharingCheck {
+    public static void main(String[] args) throws Exception {
+        final HTMLDocumentImpl document = Documents.parse("<html><head><style>"
+            + "li + li { color: red } tr:nth-child(even) td { color: blue } input[type=checkbox] { display: none }"
+            + " span.a { color: green } p.a { color: blue }"
+            + "</style></head><body>"
+            + "<ul><li id='li1'>a</li><li id='li2'>b</li></ul>"
+            + "<table><tr><td id='td1'>a</td></tr><tr><td id='td2'>b</td></tr></table>"
+            + "<input id='text' type='text'><input id='checkbox' type='checkbox'>"
+            + "<div><span id='s1' class='a'>a</span><span id='s2' class='b'>b</span><span id='s3' class='a'>c</span></div>"
+            + "<div><span id='s4' class='a'>a</span><p id='p1' class='a'>b</p></div>"
+            + "</body></html>");
+        document.primeNodeData();
+
+        check(!"#ff0000".equals(color(document, "li1")), "li1 is not red");
+        check("#ff0000".equals(color(document, "li2")), "li + li is red");
+        check(!"#0000ff".equals(color(document, "td1")), "td1 is not blue");
+        check("#0000ff".equals(color(document, "td2")), "tr:nth-child(even) td is blue");
+        check(!"none".equals(style(document, "text").getDisplay()), "text input is displayed");
+        check("none".equals(style(document, "checkbox").getDisplay()), "input[type=checkbox] is not displayed");
+        check("#008000".equals(color(document, "s1")), "span.a is green");
+        check(!"#008000".equals(color(document, "s2")), "span.b is not green");
+        check("#008000".equals(color(document, "s3")), "second span.a is green");
+        check("#0000ff".equals(color(document, "p1")), "p.a is blue");
+
+        checkTableSharing();
+
+        System.out.println("StyleSharingCheck passed");
+    }
+
+    /**
+     * Checks that cells styled by descendant and structural selectors still
+     * share their styles when the same rules match them.
+     */
+    private static void checkTableSharing() throws Exception {
+        final StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            rows.append("<tr>");
+            for (int j = 0; j < 3; j++) {
+                rows.append("<td id='td").append(i).append('_').append(j).append("'>x</td>");
+            }
+            rows.append("</tr>");
+        }
+        final HTMLDocumentImpl document = Documents.parse("<html><head><style>"
+            + "table td { color: red } tr:nth-child(even) td { color: blue } td + td { font-weight: bold }"
+            + "</style></head><body><table>" + rows + "</table></body></html>");
+        document.primeNodeData();
+
+        check("#ff0000".equals(color(document, "td0_0")), "odd row cell is red");
+        check("#0000ff".equals(color(document, "td1_0")), "even row cell is blue");
+        check("bold".equals(style(document, "td0_1").getFontWeight()), "td + td is bold");
+        check(!"bold".equals(style(document, "td0_0").getFontWeight()), "first cell is not bold");
+
+        check(nodeData(document, "td0_1") == nodeData(document, "td0_2"), "cells of a row share their style");
+        check(nodeData(document, "td0_1") == nodeData(document, "td2_1"), "cells of odd rows share their style");
+        check(nodeData(document, "td1_1") == nodeData(document, "td3_2"), "cells of even rows share their style");
+        check(nodeData(document, "td0_0") != nodeData(document, "td0_1"), "first cell doesn't share with the next");
+        check(nodeData(document, "td0_1") != nodeData(document, "td1_1"), "odd and even rows don't share");
+    }
+
+    private static Object nodeData(HTMLDocumentImpl document, String id) throws ReflectiveOperationException {
+        final Field field = HTMLElementImpl.class.getDeclaredField("cachedNodeData");
+        field.setAccessible(true);
+        return field.get(element(document, id));
+    }
+
+    private static HTMLElementImpl element(HTMLDocumentImpl document, String id) {
+        return (HTMLElementImpl) document.getElementById(id);
+    }
+
+    private static JStyleProperties style(HTMLDocumentImpl document, String id) {
+        return element(document, id).getCurrentStyle();
+    }
+
+    private static String color(HTMLDocumentImpl document, String id) {
+        return style(document, id).getColor();
+    }
+}
@@ -0,0 +1,113 @@
+package cobra;
+
+import org.cobraparser.html.domimpl.HTMLDocumentImpl;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Measures the heap taken by a parsed report-like page, and how much of it is
+ * saved by the parser sharing the strings of text nodes.
+ * <p>
+ * For each node type it prints the number of nodes and the bytes taken by
+ * their strings as parsed, where equal texts share one string, and as they
+ * would be with a string per node, as before the parser pooled them. It also
+ * prints the heap retained by the whole document; run it on the revisions
+ * before and after the pool to compare that figure directly.
+ * <p>
+ * Argument: the number of table rows (default 20000).
+ */
+public class TextFootprintBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final String html = ParseBenchmark.report(rows);
+
+        final long before = usedHeap();
+        final HTMLDocumentImpl document = Documents.parse(html);
+        final long retained = usedHeap() - before;
+
+        final Map<String, Footprint> footprints = new TreeMap<>();
+        count(document, footprints, Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        System.out.printf("%d rows, document retains about %d KB%n", rows, retained / 1024);
+        System.out.printf("%-10s %10s %16s %16s%n", "node type", "nodes", "shared text KB", "unshared text KB");
+        long shared = 0;
+        long unshared = 0;
+        for (final Map.Entry<String, Footprint> entry : footprints.entrySet()) {
+            final Footprint footprint = entry.getValue();
+            System.out.printf("%-10s %10d %16d %16d%n", entry.getKey(), footprint.nodes, footprint.sharedBytes / 1024,
+                footprint.unsharedBytes / 1024);
+            shared += footprint.sharedBytes;
+            unshared += footprint.unsharedBytes;
+        }
+        System.out.printf("text strings: %d KB shared, %d KB unshared, %d KB saved%n", shared / 1024, unshared / 1024,
+            (unshared - shared) / 1024);
+        Documents.check(document.getElementsByTagName("tr").getLength() == rows + 1, "all rows are parsed");
+    }
+
+    private static void count(Node node, Map<String, Footprint> footprints, Set<String> seen) {
+        final Footprint footprint = footprints.computeIfAbsent(typeName(node.getNodeType()), k -> new Footprint());
+        footprint.nodes++;
+        if (node instanceof CharacterData) {
+            final String data = ((CharacterData) node).getData();
+            final long bytes = stringBytes(data);
+            footprint.unsharedBytes += bytes;
+            if (seen.add(data)) {
+                footprint.sharedBytes += bytes;
+            }
+        }
+        final NodeList children = node.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            count(children.item(i), footprints, seen);
+        }
+    }
+
+    /**
+     * Estimates the size of a string with compressed oops: the object, and its
+     * byte array with one byte per character if the text is Latin-1, else two.
+     */
+    private static long stringBytes(String text) {
+        boolean latin1 = true;
+        for (int i = 0; i < text.length() && latin1; i++) {
+            latin1 = text.charAt(i) < 256;
+        }
+        final long arrayBytes = 16 + (long) text.length() * (latin1 ? 1 : 2);
+        return 24 + ((arrayBytes + 7) & ~7L);
+    }
+
+    private static String typeName(short nodeType) {
+        switch (nodeType) {
+            case Node.ELEMENT_NODE:
+                return "element";
+            case Node.TEXT_NODE:
+                return "text";
+            case Node.COMMENT_NODE:
+                return "comment";
+            case Node.DOCUMENT_NODE:
+                return "document";
+            default:
+                return "other";
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class Footprint {
+        long nodes;
+        long sharedBytes;
+        long unsharedBytes;
+    }
+}